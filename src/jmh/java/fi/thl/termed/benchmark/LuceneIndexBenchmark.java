@@ -0,0 +1,93 @@
+package fi.thl.termed.benchmark;
+
+import static fi.thl.termed.util.Converter.newConverter;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.service.node.internal.DocumentToNode;
+import fi.thl.termed.service.node.internal.NodeDocumentFormat;
+import fi.thl.termed.service.node.internal.NodeToDocument;
+import fi.thl.termed.service.node.specification.NodeSpecificationParser;
+import fi.thl.termed.util.index.lucene.LuceneIndex;
+import fi.thl.termed.util.query.SortRelevance;
+import fi.thl.termed.util.query.Specification;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Searching and loading nodes from an in-memory index populated with the synthetic vocabulary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LuceneIndexBenchmark {
+
+  @Param({"JSON", "BINARY"})
+  public NodeDocumentFormat format;
+
+  @Param({"10000"})
+  public int size;
+
+  private LuceneIndex<NodeId, Node> index;
+
+  private Specification<NodeId, Node> matchAll;
+  private Specification<NodeId, Node> prefixQuery;
+
+  @Setup
+  public void setUp() {
+    index = new LuceneIndex<>("",
+        newConverter(NodeId::toString, NodeId::fromString),
+        newConverter(new NodeToDocument(format), new DocumentToNode()));
+
+    new SyntheticVocabulary(size).getNodes().forEach(node -> index.index(node.identifier(), node));
+    index.refreshBlocking();
+
+    NodeSpecificationParser parser = new NodeSpecificationParser();
+    matchAll = parser.apply("type.id:Concept");
+    prefixQuery = parser.apply("type.id:Concept AND props.prefLabel.en:alpha*");
+  }
+
+  @TearDown
+  public void tearDown() {
+    index.close();
+  }
+
+  @Benchmark
+  public void searchKeys(Blackhole blackhole) {
+    try (Stream<NodeId> keys = index.getKeys(prefixQuery, ImmutableList.of(), -1)) {
+      keys.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  public void searchAndLoadFirstPage(Blackhole blackhole) {
+    try (Stream<Node> values = index.get(prefixQuery, ImmutableList.of(new SortRelevance()), 50)) {
+      values.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  public void loadAll(Blackhole blackhole) {
+    try (Stream<Node> values = index.get(matchAll, ImmutableList.of(), -1)) {
+      values.forEach(blackhole::consume);
+    }
+  }
+
+}
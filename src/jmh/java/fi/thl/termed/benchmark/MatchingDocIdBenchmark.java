@@ -0,0 +1,135 @@
+package fi.thl.termed.benchmark;
+
+import fi.thl.termed.util.index.lucene.MatchingDocIdIterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Resolving ids of all documents matching a query, i.e. the phase before any documents are loaded
+ * in unsorted and unlimited index reads. Compares collecting boxed ids into a list before reading
+ * (as done before {@link MatchingDocIdIterator}) with lazy iteration. See allocation per operation
+ * ({@code gc.alloc.rate.norm}) reported by the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingDocIdBenchmark {
+
+  private static final int TYPE_COUNT = 4;
+
+  @Param({"1000000"})
+  public int size;
+
+  @Param({"MATCH_ALL", "TYPE"})
+  public QueryKind queryKind;
+
+  private Directory directory;
+  private DirectoryReader reader;
+  private IndexSearcher searcher;
+  private Query query;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+
+    try (IndexWriter writer = new IndexWriter(directory,
+        new IndexWriterConfig(new KeywordAnalyzer()))) {
+      for (int i = 0; i < size; i++) {
+        Document doc = new Document();
+        doc.add(new StringField("id", String.valueOf(i), Store.YES));
+        doc.add(new StringField("type.id", "Type" + i % TYPE_COUNT, Store.NO));
+        writer.addDocument(doc);
+      }
+    }
+
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+    query = queryKind == QueryKind.MATCH_ALL
+        ? new MatchAllDocsQuery()
+        : new TermQuery(new Term("type.id", "Type0"));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Benchmark
+  public void collectBoxedDocIds(Blackhole blackhole) throws IOException {
+    BoxingCollector collector = new BoxingCollector();
+    searcher.search(query, collector);
+    collector.docs.forEach(blackhole::consume);
+  }
+
+  @Benchmark
+  public void iterateDocIds(Blackhole blackhole) throws IOException {
+    PrimitiveIterator.OfInt docs = new MatchingDocIdIterator(searcher, query);
+    while (docs.hasNext()) {
+      blackhole.consume(docs.nextInt());
+    }
+  }
+
+  public enum QueryKind {
+    MATCH_ALL, TYPE
+  }
+
+  private static class BoxingCollector extends SimpleCollector {
+
+    private final List<Integer> docs = new ArrayList<>();
+    private int docBase;
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) {
+      docBase = context.docBase;
+    }
+
+    @Override
+    public void collect(int doc) {
+      docs.add(docBase + doc);
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+      return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+  }
+
+}
@@ -0,0 +1,83 @@
+package fi.thl.termed.benchmark;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.service.node.internal.DocumentToNode;
+import fi.thl.termed.service.node.internal.NodeDocumentFormat;
+import fi.thl.termed.service.node.internal.NodeToDocument;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Converting nodes to Lucene documents (indexing) and stored documents back to nodes (loading
+ * search hits).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeDocumentBenchmark {
+
+  @Param({"JSON", "BINARY"})
+  public NodeDocumentFormat format;
+
+  @Param({"1000"})
+  public int size;
+
+  private ImmutableList<Node> nodes;
+  private ImmutableList<Document> storedDocuments;
+
+  private NodeToDocument nodeToDocument;
+  private DocumentToNode documentToNode;
+
+  @Setup
+  public void setUp() {
+    nodes = new SyntheticVocabulary(size).getNodes();
+    nodeToDocument = new NodeToDocument(format);
+    documentToNode = new DocumentToNode();
+    storedDocuments = nodes.stream()
+        .map(nodeToDocument)
+        .map(NodeDocumentBenchmark::storedFieldsOf)
+        .collect(toImmutableList());
+  }
+
+  // documents loaded from the index contain only stored fields
+  private static Document storedFieldsOf(Document document) {
+    Document stored = new Document();
+    document.getFields().stream()
+        .filter(field -> field.fieldType().stored())
+        .forEach(stored::add);
+    return stored;
+  }
+
+  @Benchmark
+  public void nodeToDocument(Blackhole blackhole) {
+    for (Node node : nodes) {
+      blackhole.consume(nodeToDocument.apply(node));
+    }
+  }
+
+  @Benchmark
+  public void documentToNode(Blackhole blackhole) {
+    for (Document document : storedDocuments) {
+      blackhole.consume(documentToNode.apply(document));
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package fi.thl.termed.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.service.node.select.NodeSelects;
+import fi.thl.termed.service.node.specification.NodeSpecificationParser;
+import fi.thl.termed.util.query.Select;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing node queries and qualifying selects, done for every node API request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeQueryBenchmark {
+
+  private static final String SIMPLE_QUERY = "type.id:Concept";
+
+  private static final String COMPLEX_QUERY =
+      "type.id:Concept AND (props.prefLabel.en:alpha* OR props.altLabel:\"bravo 1\") "
+          + "AND NOT references.broader.id:00000000-0000-0000-0000-000000000000 "
+          + "AND references.related.props.prefLabel:charlie*";
+
+  private NodeSpecificationParser parser;
+
+  private List<Type> types;
+  private List<Select> selects;
+
+  @Setup
+  public void setUp() {
+    parser = new NodeSpecificationParser();
+    types = new SyntheticVocabulary(1).getTypes();
+    selects = NodeSelects.parse(ImmutableList.of(
+        "id", "type", "code", "uri", "properties.*", "references.broader:2",
+        "referrers.broader:1"));
+  }
+
+  @Benchmark
+  public Object parseSimpleQuery() {
+    return parser.apply(SIMPLE_QUERY);
+  }
+
+  @Benchmark
+  public Object parseComplexQuery() {
+    return parser.apply(COMPLEX_QUERY);
+  }
+
+  @Benchmark
+  public void qualifySelects(Blackhole blackhole) {
+    blackhole.consume(NodeSelects.qualify(types, types, selects));
+  }
+
+}
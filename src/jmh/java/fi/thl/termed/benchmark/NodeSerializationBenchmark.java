@@ -0,0 +1,160 @@
+package fi.thl.termed.benchmark;
+
+import static fi.thl.termed.service.node.select.NodeSelects.toReferenceSelectsWithDepths;
+import static fi.thl.termed.service.node.select.NodeSelects.toReferrerSelectsWithDepths;
+import static java.util.function.Function.identity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.DepthLimitedNodeTree;
+import fi.thl.termed.domain.LazyLoadingNodeTree;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.service.node.select.NodeSelects;
+import fi.thl.termed.service.node.util.CsvToNodes;
+import fi.thl.termed.service.node.util.NodeTreeToJsonStream;
+import fi.thl.termed.service.node.util.NodesToCsv;
+import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.json.JsonStream;
+import fi.thl.termed.util.json.JsonWriters;
+import fi.thl.termed.util.query.Select;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writing and reading node JSON and CSV, as done by node-trees, export and import APIs. Each
+ * invocation processes the whole vocabulary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeSerializationBenchmark {
+
+  @Param({"1000"})
+  public int size;
+
+  private Gson gson;
+  private ImmutableList<Node> nodes;
+  private ImmutableMap<NodeId, Node> nodesById;
+
+  private List<Type> types;
+  private List<Select> treeSelects;
+  private List<Select> csvSelects;
+  private List<String> csvColumns;
+  private CsvOptions csvOptions;
+
+  private NodesToCsv nodesToCsv;
+  private CsvToNodes csvToNodes;
+
+  private byte[] csv;
+  private byte[] json;
+
+  @Setup
+  public void setUp() {
+    SyntheticVocabulary vocabulary = new SyntheticVocabulary(size);
+
+    gson = new Application().gson();
+    nodes = vocabulary.getNodes();
+    nodesById = nodes.stream().collect(ImmutableMap.toImmutableMap(Node::identifier, identity()));
+    types = vocabulary.getTypes();
+
+    treeSelects = NodeSelects.qualify(types, types, NodeSelects.parse(ImmutableList.of(
+        "id", "type", "code", "uri", "properties.*", "references.broader:2",
+        "referrers.broader:1")));
+
+    csvSelects = NodeSelects.parse(ImmutableList.of(
+        "id", "type", "code", "number", "properties.*", "references.*"));
+    csvOptions = CsvOptions.builder().build();
+    nodesToCsv = new NodesToCsv();
+    csvToNodes = new CsvToNodes();
+    csvColumns = nodesToCsv.columns(types, NodeSelects.qualify(types, types, csvSelects),
+        ImmutableList.of("", "en", "fi"));
+
+    ByteArrayOutputStream csvOut = new ByteArrayOutputStream();
+    nodesToCsv.writeAsCsv(nodes.stream(), csvSelects, csvOptions, csvOut);
+    csv = csvOut.toByteArray();
+
+    ByteArrayOutputStream jsonOut = new ByteArrayOutputStream();
+    JsonStream.writeArray(jsonOut, gson, nodes.stream(), Node.class);
+    json = jsonOut.toByteArray();
+  }
+
+  private ImmutableList<Node> references(Node node, String attribute) {
+    return node.getReferences().get(attribute).stream()
+        .map(nodesById::get)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private ImmutableList<Node> referrers(Node node, String attribute) {
+    return node.getReferrers().get(attribute).stream()
+        .map(nodesById::get)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  @Benchmark
+  public void nodeTreesToJson() throws IOException {
+    Stream<NodeTree> trees = nodes.stream()
+        .map(node -> new DepthLimitedNodeTree(
+            new LazyLoadingNodeTree(node, this::references, this::referrers),
+            toReferenceSelectsWithDepths(treeSelects),
+            toReferrerSelectsWithDepths(treeSelects)));
+
+    try (JsonWriter writer = JsonWriters.from(ByteStreams.nullOutputStream(), false, false)) {
+      NodeTreeToJsonStream.toJson(trees.iterator(), writer);
+    }
+  }
+
+  @Benchmark
+  public void nodesToCsv() {
+    nodesToCsv.writeAsCsv(nodes.stream(), csvSelects, csvOptions,
+        ByteStreams.nullOutputStream());
+  }
+
+  @Benchmark
+  public void nodesToCsvStreaming() {
+    nodesToCsv.writeAsCsv(nodes.stream(), csvColumns, csvSelects, csvOptions,
+        ByteStreams.nullOutputStream());
+  }
+
+  @Benchmark
+  public void csvToNodes(Blackhole blackhole) {
+    try (Stream<Node> parsed = csvToNodes
+        .parseNodesFromCsv(csvOptions, new ByteArrayInputStream(csv))) {
+      parsed.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  public void readJsonArray(Blackhole blackhole) {
+    try (Stream<Node> parsed = JsonStream
+        .readArray(gson, Node.class, new ByteArrayInputStream(json))) {
+      parsed.forEach(blackhole::consume);
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package fi.thl.termed.benchmark;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a deterministic thesaurus like vocabulary of given size. Each concept has labels in
+ * two languages, a definition, a broader concept (forming a tree with ten children per concept)
+ * and a few related concepts. Referrers (narrower concepts) are populated as they would be when
+ * loaded from the repository.
+ */
+public class SyntheticVocabulary {
+
+  private static final String[] WORDS = {
+      "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india",
+      "juliet", "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo"};
+
+  private final UUID graphId = UUID.nameUUIDFromBytes("benchmark".getBytes());
+  private final TypeId conceptTypeId = TypeId.of("Concept", graphId);
+
+  private final Type conceptType;
+  private final ImmutableList<Node> nodes;
+
+  public SyntheticVocabulary(int size) {
+    this.conceptType = Type.builder().id(conceptTypeId)
+        .textAttributes(
+            TextAttribute.builder().id("prefLabel", conceptTypeId).regex("^.*$").build(),
+            TextAttribute.builder().id("altLabel", conceptTypeId).regex("^.*$").build(),
+            TextAttribute.builder().id("definition", conceptTypeId).regex("^.*$").build())
+        .referenceAttributes(
+            ReferenceAttribute.builder().id("broader", conceptTypeId)
+                .range(conceptTypeId).build(),
+            ReferenceAttribute.builder().id("related", conceptTypeId)
+                .range(conceptTypeId).build())
+        .build();
+    this.nodes = generate(size);
+  }
+
+  private ImmutableList<Node> generate(int size) {
+    Random random = new Random(size);
+
+    List<NodeId> ids = IntStream.range(0, size)
+        .mapToObj(i -> NodeId.of(new UUID(graphId.getMostSignificantBits(), i), conceptTypeId))
+        .collect(toImmutableList());
+
+    ListMultimap<Integer, NodeId> narrower = ArrayListMultimap.create();
+    for (int i = 1; i < size; i++) {
+      narrower.put((i - 1) / 10, ids.get(i));
+    }
+
+    LocalDateTime date = LocalDateTime.of(2019, 1, 1, 12, 0);
+
+    return IntStream.range(0, size).mapToObj(i -> {
+      String word = WORDS[i % WORDS.length];
+
+      Node.Builder builder = Node.builder().id(ids.get(i))
+          .code("concept-" + i)
+          .uri("http://example.org/concept/" + i)
+          .number((long) i)
+          .createdBy("admin")
+          .createdDate(date)
+          .lastModifiedBy("admin")
+          .lastModifiedDate(date)
+          .addProperty("prefLabel", "en", word + " concept " + i)
+          .addProperty("prefLabel", "fi", word + " käsite " + i)
+          .addProperty("altLabel", "en", word + " " + i)
+          .addProperty("definition", "en",
+              "Definition of " + word + " concept " + i + " used in benchmarks");
+
+      if (i > 0) {
+        builder.addReference("broader", ids.get((i - 1) / 10));
+      }
+      for (int j = 0; j < 3; j++) {
+        builder.addReference("related", ids.get(random.nextInt(size)));
+      }
+      if (narrower.containsKey(i)) {
+        builder.addReferrer("broader", narrower.get(i));
+      }
+
+      return builder.build();
+    }).collect(toImmutableList());
+  }
+
+  public UUID getGraphId() {
+    return graphId;
+  }
+
+  public Type getConceptType() {
+    return conceptType;
+  }
+
+  public List<Type> getTypes() {
+    return ImmutableList.of(conceptType);
+  }
+
+  public ImmutableList<Node> getNodes() {
+    return nodes;
+  }
+
+}
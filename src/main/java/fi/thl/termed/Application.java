@@ -4,6 +4,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import fi.thl.termed.util.concurrent.StreamTimer;
+import fi.thl.termed.util.concurrent.StreamTimerMetrics;
 import fi.thl.termed.util.json.FastUUIDTypeAdapter;
 import fi.thl.termed.util.json.ImmutableListDeserializer;
 import fi.thl.termed.util.json.ImmutableMultimapTypeAdapterFactory;
@@ -44,6 +46,11 @@ public class Application extends SpringBootServletInitializer {
     return new EventBus();
   }
 
+  @Bean
+  public StreamTimerMetrics streamTimerMetrics() {
+    return new StreamTimerMetrics(StreamTimer.shared());
+  }
+
   @Bean
   @ConfigurationProperties(prefix = "fi.thl.termed.nsprefixes")
   public Map<String, String> defaultNamespacePrefixes() {
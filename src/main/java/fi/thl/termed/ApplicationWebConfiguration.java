@@ -35,6 +35,7 @@ public class ApplicationWebConfiguration implements WebMvcConfigurer {
         .mediaType("json", MediaType.APPLICATION_JSON_UTF8)
         .mediaType("xml", MediaTypes.TEXT_XML)
         .mediaType("csv", MediaTypes.TEXT_CSV)
+        .mediaType("ndjson", MediaTypes.APPLICATION_NDJSON)
         .mediaType("jsonld", RdfMediaTypes.LD_JSON)
         .mediaType("rdf", RdfMediaTypes.RDF_XML)
         .mediaType("ttl", RdfMediaTypes.TURTLE)
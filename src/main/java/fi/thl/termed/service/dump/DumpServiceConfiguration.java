@@ -11,10 +11,12 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.service.MetricsService;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteLoggingService;
 import fi.thl.termed.util.service.WritePreAuthorizingService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,6 +33,9 @@ public class DumpServiceConfiguration {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @Bean
   public Service<DumpId, Dump> dumpService() {
     Service<DumpId, Dump> service =
@@ -43,6 +48,7 @@ public class DumpServiceConfiguration {
         getClass().getPackage().getName() + ".WriteLoggingService");
     service = new ProfilingService<>(service,
         getClass().getPackage().getName() + ".ProfilingService", 0);
+    service = new MetricsService<>(service, meterRegistry, "dump", "service");
 
     return service;
   }
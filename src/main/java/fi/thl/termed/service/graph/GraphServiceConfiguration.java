@@ -25,11 +25,13 @@ import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.service.MetricsService;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -48,6 +50,9 @@ public class GraphServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   private SystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao;
 
   @Bean
@@ -59,6 +64,7 @@ public class GraphServiceConfiguration {
         getClass().getPackage().getName() + ".WriteLoggingService");
     service = new ProfilingService<>(service,
         getClass().getPackage().getName() + ".ProfilingService", 500);
+    service = new MetricsService<>(service, meterRegistry, "graph", "service");
     service = new InitializingGraphService(service);
     service = new ReadWriteSynchronizedService<>(service);
 
@@ -76,7 +82,8 @@ public class GraphServiceConfiguration {
         graphDao(),
         graphRoleDao(),
         graphPermissionDao(),
-        graphPropertyDao());
+        graphPropertyDao(),
+        -1);
   }
 
   private Dao<GraphId, Graph> graphDao() {
@@ -1,11 +1,13 @@
 package fi.thl.termed.service.graph.internal;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static fi.thl.termed.util.collect.MapUtils.leftValues;
 import static fi.thl.termed.util.collect.MultimapUtils.toImmutableMultimap;
 import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
 import static fi.thl.termed.util.collect.Tuple.tuplesToMap;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -24,6 +26,7 @@ import fi.thl.termed.domain.transform.PropertyValueDtoToModel;
 import fi.thl.termed.domain.transform.RolePermissionsDtoToModel;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.Dao;
+import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.service.AbstractRepository;
@@ -31,6 +34,7 @@ import fi.thl.termed.util.service.WriteOptions;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public class GraphRepository extends AbstractRepository<GraphId, Graph> {
@@ -43,7 +47,9 @@ public class GraphRepository extends AbstractRepository<GraphId, Graph> {
   public GraphRepository(Dao<GraphId, Graph> graphDao,
       Dao<GraphRole, Empty> graphRoleDao,
       Dao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionDao,
-      Dao<PropertyValueId<GraphId>, LangValue> graphPropertyDao) {
+      Dao<PropertyValueId<GraphId>, LangValue> graphPropertyDao,
+      int batchSize) {
+    super(batchSize);
     this.graphDao = graphDao;
     this.graphRoleDao = graphRoleDao;
     this.graphPermissionDao = graphPermissionDao;
@@ -154,6 +160,15 @@ public class GraphRepository extends AbstractRepository<GraphId, Graph> {
     return graphDao.exists(id, user);
   }
 
+  // all keys are read with one (cached) query, there are typically only a few of them
+  @Override
+  protected Set<GraphId> existingKeys(List<GraphId> ids, User user) {
+    try (Stream<GraphId> keys = graphDao.keys(new MatchAll<>(), user)) {
+      Set<GraphId> requested = ImmutableSet.copyOf(ids);
+      return keys.filter(requested::contains).collect(toImmutableSet());
+    }
+  }
+
   @Override
   public Stream<Graph> values(Query<GraphId, Graph> query, User user) {
     return graphDao.values(query.getWhere(), user).map(graph -> populateValue(graph, user));
@@ -44,6 +44,7 @@ import fi.thl.termed.service.node.internal.JdbcPostgresNodeReferenceAttributeVal
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeRevisionDao;
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeTextAttributeValueDao;
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeTextAttributeValueRevisionDao;
+import fi.thl.termed.service.node.internal.NodeDocumentFormat;
 import fi.thl.termed.service.node.internal.NodeMetadataInitializingService;
 import fi.thl.termed.service.node.internal.NodeRepository;
 import fi.thl.termed.service.node.internal.NodeRevisionRepository;
@@ -51,33 +52,39 @@ import fi.thl.termed.service.node.internal.NodeToDocument;
 import fi.thl.termed.service.node.internal.NodeWriteEventPostingService;
 import fi.thl.termed.service.node.internal.ReadAuthorizedNodeService;
 import fi.thl.termed.service.node.internal.RevisionInitializingNodeService;
+import fi.thl.termed.service.node.util.NodeRdfGraphStore;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.JdbcSystemSequenceDao;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.dao.SystemSequenceDao;
 import fi.thl.termed.util.dao.TransactionalSystemDao;
-import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.index.IndexingProgress;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
+import fi.thl.termed.util.index.lucene.LuceneIndexMetrics;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
-import fi.thl.termed.util.service.CachedNamedSequenceService;
 import fi.thl.termed.util.service.DaoNamedSequenceService;
 import fi.thl.termed.util.service.ForwardingNamedSequenceService;
+import fi.thl.termed.util.service.MetricsService;
 import fi.thl.termed.util.service.NamedSequenceService;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
-import fi.thl.termed.util.service.SynchronizedNamedSequenceService;
+import fi.thl.termed.util.service.StripedNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 @Configuration
 public class NodeServiceConfiguration {
@@ -109,23 +116,57 @@ public class NodeServiceConfiguration {
 
   @Value("${fi.thl.termed.index:}")
   private String indexPath;
+  @Value("${fi.thl.termed.index.threads:0}")
+  private int indexingThreads;
+  @Value("${fi.thl.termed.index.batchSize:1000}")
+  private int indexingBatchSize;
+  @Value("${fi.thl.termed.index.async:false}")
+  private boolean asyncIndexing;
+  @Value("${fi.thl.termed.index.awaitWrites:true}")
+  private boolean awaitIndexedWrites;
+  @Value("${fi.thl.termed.index.awaitWritesTimeout:10000}")
+  private long awaitIndexedWritesTimeoutMillis;
+  @Value("${fi.thl.termed.index.documentFormat:JSON}")
+  private NodeDocumentFormat indexDocumentFormat;
+  @Value("${fi.thl.termed.index.queryCacheSize:100000}")
+  private long indexQueryCacheSize;
 
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   private String packageName = getClass().getPackage().getName();
 
   @Bean
   public Service<NodeId, Node> nodeService() {
     Service<NodeId, Node> service = nodeRepository();
+    service = new MetricsService<>(service, meterRegistry, "node", "repository");
     service = new TransactionalService<>(service, transactionManager);
 
-    service = new IndexedNodeService(service,
-        nodeIndex(),
+    LuceneIndex<NodeId, Node> index = nodeIndex();
+    new LuceneIndexMetrics(index, "node").bindTo(meterRegistry);
+
+    IndexedNodeService indexedService = new IndexedNodeService(service,
+        index,
         nodeIndexingQueueSequenceDao(),
         nodeIndexingQueueDao(),
-        nodeIndexingQueueItemDao());
-    eventBus.register(service);
+        nodeIndexingQueueItemDao(),
+        nodeIndexingProgress(),
+        indexingThreads > 0 ? indexingThreads : Runtime.getRuntime().availableProcessors(),
+        indexingBatchSize,
+        asyncIndexing,
+        awaitIndexedWrites,
+        awaitIndexedWritesTimeoutMillis);
+    eventBus.register(indexedService);
+    Gauge.builder("termed.index.queue.depth", indexedService,
+        IndexedNodeService::indexingQueueDepth)
+        .description("Number of node indexing queues waiting to be indexed")
+        .tag("index", "node")
+        .register(meterRegistry);
+
+    service = new MetricsService<>(indexedService, meterRegistry, "node", "index");
 
     service = new ReadAuthorizedNodeService(service,
         typeEvaluator, textAttributeEvaluator, referenceAttributeEvaluator);
@@ -138,12 +179,26 @@ public class NodeServiceConfiguration {
         nodeNamespaceSequenceService(), typeService::get, graphService::get, ns);
     service = new AttributeValueInitializingNodeService(service, typeService::get);
     service = new ProfilingService<>(service, packageName + ".ProfilingService", 500);
+    service = new MetricsService<>(service, meterRegistry, "node", "service");
 
     service = new IdInitializingNodeService(service);
 
     return service;
   }
 
+  @Bean
+  public NodeRdfGraphStore nodeRdfGraphStore() {
+    NodeRdfGraphStore store = new NodeRdfGraphStore(ns, nodeService(), typeService,
+        typeEvaluator, textAttributeEvaluator, referenceAttributeEvaluator);
+    eventBus.register(store);
+    return store;
+  }
+
+  @Bean
+  public IndexingProgress nodeIndexingProgress() {
+    return new IndexingProgress();
+  }
+
   @Bean
   public Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService() {
     Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> service = nodeRevisionRepository();
@@ -151,11 +206,14 @@ public class NodeServiceConfiguration {
     return service;
   }
 
-  private Index<NodeId, Node> nodeIndex() {
+  // closed by IndexedNodeService on application shutdown
+  @Bean(destroyMethod = "")
+  public LuceneIndex<NodeId, Node> nodeIndex() {
     return new LuceneIndex<>(
         indexPath,
         newConverter(NodeId::toString, NodeId::fromString),
-        newConverter(new NodeToDocument(), new DocumentToNode()));
+        newConverter(new NodeToDocument(indexDocumentFormat), new DocumentToNode()),
+        indexQueryCacheSize);
   }
 
   private Service<NodeId, Node> nodeRepository() {
@@ -175,7 +233,9 @@ public class NodeServiceConfiguration {
         new DaoNamedSequenceService<>(
             new AuthorizedDao<>(nodeSequenceSystemDao(), nodeSequenceEvaluator()));
 
-    sequenceService = new CachedNamedSequenceService<>(sequenceService);
+    sequenceService = new TransactionalNamedSequenceService<>(sequenceService, transactionManager,
+        sequenceReservationDefinition());
+    sequenceService = new StripedNamedSequenceService<>(sequenceService);
     sequenceService = new ForwardingNamedSequenceService<TypeId>(sequenceService) {
       @Subscribe
       public void discardCachesOn(ApplicationShutdownEvent e) {
@@ -183,8 +243,6 @@ public class NodeServiceConfiguration {
       }
     };
     eventBus.register(sequenceService);
-    sequenceService = new TransactionalNamedSequenceService<>(sequenceService, transactionManager);
-    sequenceService = new SynchronizedNamedSequenceService<>(sequenceService);
 
     return sequenceService;
   }
@@ -196,7 +254,9 @@ public class NodeServiceConfiguration {
                 nodeNamespaceSequenceSystemDao(),
                 nodeNamespaceSequenceEvaluator()));
 
-    sequenceService = new CachedNamedSequenceService<>(sequenceService);
+    sequenceService = new TransactionalNamedSequenceService<>(sequenceService, transactionManager,
+        sequenceReservationDefinition());
+    sequenceService = new StripedNamedSequenceService<>(sequenceService);
     sequenceService = new ForwardingNamedSequenceService<Tuple2<GraphId, String>>(sequenceService) {
       @Subscribe
       public void discardCachesOn(ApplicationShutdownEvent e) {
@@ -204,12 +264,19 @@ public class NodeServiceConfiguration {
       }
     };
     eventBus.register(sequenceService);
-    sequenceService = new TransactionalNamedSequenceService<>(sequenceService, transactionManager);
-    sequenceService = new SynchronizedNamedSequenceService<>(sequenceService);
 
     return sequenceService;
   }
 
+  // Blocks are reserved in their own transactions. If a reservation joined the node save
+  // transaction, a rolled back save would reset the sequence while the block stays cached.
+  private TransactionDefinition sequenceReservationDefinition() {
+    DefaultTransactionDefinition definition =
+        new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    definition.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    return definition;
+  }
+
   private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionRepository() {
     return new NodeRevisionRepository(
         new AuthorizedDao<>(nodeRevSysDao(), nodeRevEvaluator()),
@@ -0,0 +1,255 @@
+package fi.thl.termed.service.node.internal;
+
+import static com.google.common.base.Strings.emptyToNull;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes nodes to single binary stored field and back. Layout (version 1):
+ *
+ * <pre>
+ * version:byte
+ * id:uuid type.graph.id:uuid type.id:string
+ * code:string uri:string number:zlong
+ * createdBy:string createdDate:long lastModifiedBy:string lastModifiedDate:long
+ * properties:vint (name:string values:vint (lang:string value:string regex:nstring)*)*
+ * references:vint (name:string values:vint (id:uuid type.id:string type.graph.id:uuid)*)*
+ * referrers: as references
+ * </pre>
+ *
+ * Strings are UTF-8 prefixed with byte length as vint, uuids are written as two longs and dates as
+ * seconds from epoch (UTC) to match the precision of the JSON format. Nullable strings are prefixed
+ * with a presence byte.
+ */
+final class BinaryNodeCodec {
+
+  static final byte VERSION = 1;
+
+  private static final int UUID_BYTES = 16;
+
+  private BinaryNodeCodec() {
+  }
+
+  static byte[] encode(Node node) {
+    ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+
+    try {
+      out.writeByte(VERSION);
+
+      writeUUID(out, node.getId());
+      writeUUID(out, node.getTypeGraphId());
+      out.writeString(node.getTypeId());
+
+      out.writeString(node.getCode().orElse(""));
+      out.writeString(node.getUri().orElse(""));
+      out.writeZLong(node.getNumber());
+
+      out.writeString(node.getCreatedBy());
+      writeDate(out, node.getCreatedDate());
+      out.writeString(node.getLastModifiedBy());
+      writeDate(out, node.getLastModifiedDate());
+
+      writeProperties(out, node.getProperties());
+      writeNodeIds(out, node.getReferences());
+      writeNodeIds(out, node.getReferrers());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return out.toArrayCopy();
+  }
+
+  private static void writeProperties(ByteBuffersDataOutput out,
+      Multimap<String, StrictLangValue> properties) throws IOException {
+    out.writeVInt(properties.keySet().size());
+    for (Map.Entry<String, Collection<StrictLangValue>> entry : properties.asMap().entrySet()) {
+      Collection<StrictLangValue> values = entry.getValue();
+      out.writeString(entry.getKey());
+      out.writeVInt(values.size());
+      for (StrictLangValue value : values) {
+        out.writeString(value.getLang());
+        out.writeString(value.getValue());
+        writeNullableString(out, value.getRegex());
+      }
+    }
+  }
+
+  private static void writeNodeIds(ByteBuffersDataOutput out,
+      Multimap<String, NodeId> nodeIds) throws IOException {
+    out.writeVInt(nodeIds.keySet().size());
+    for (Map.Entry<String, Collection<NodeId>> entry : nodeIds.asMap().entrySet()) {
+      Collection<NodeId> values = entry.getValue();
+      out.writeString(entry.getKey());
+      out.writeVInt(values.size());
+      for (NodeId value : values) {
+        writeUUID(out, value.getId());
+        out.writeString(value.getTypeId());
+        writeUUID(out, value.getTypeGraphId());
+      }
+    }
+  }
+
+  private static void writeUUID(ByteBuffersDataOutput out, UUID uuid) {
+    out.writeLong(uuid.getMostSignificantBits());
+    out.writeLong(uuid.getLeastSignificantBits());
+  }
+
+  private static void writeDate(ByteBuffersDataOutput out, LocalDateTime date) {
+    out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+  }
+
+  private static void writeNullableString(ByteBuffersDataOutput out, String value)
+      throws IOException {
+    out.writeByte((byte) (value != null ? 1 : 0));
+    if (value != null) {
+      out.writeString(value);
+    }
+  }
+
+  /**
+   * Decodes node from given bytes. If fieldsToLoad is not null, only fields named in the set are
+   * decoded (using the same field names as the JSON format), other fields are skipped. Ids are
+   * always decoded.
+   */
+  static Node decode(BytesRef bytes, Set<String> fieldsToLoad) {
+    try {
+      return decode(new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length),
+          fieldsToLoad);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Node decode(ByteArrayDataInput in, Set<String> fieldsToLoad)
+      throws IOException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unsupported node document version: " + version);
+    }
+
+    UUID id = readUUID(in);
+    UUID graphId = readUUID(in);
+    String typeId = in.readString();
+
+    String code = load(fieldsToLoad, "code") ? emptyToNull(in.readString()) : skipString(in);
+    String uri = load(fieldsToLoad, "uri") ? emptyToNull(in.readString()) : skipString(in);
+    long numberValue = in.readZLong();
+    Long number = load(fieldsToLoad, "number") ? numberValue : null;
+
+    String createdBy = load(fieldsToLoad, "createdBy") ? in.readString() : skipString(in);
+    LocalDateTime createdDate = readDate(in, load(fieldsToLoad, "createdDate"));
+    String lastModifiedBy =
+        load(fieldsToLoad, "lastModifiedBy") ? in.readString() : skipString(in);
+    LocalDateTime lastModifiedDate = readDate(in, load(fieldsToLoad, "lastModifiedDate"));
+
+    String qualifier = fieldsToLoad != null ? UUIDs.toString(graphId) + "." + typeId + "." : "";
+
+    return new Node(id,
+        TypeId.of(typeId, graphId),
+        code,
+        uri,
+        number,
+        createdBy,
+        createdDate,
+        lastModifiedBy,
+        lastModifiedDate,
+        readProperties(in, fieldsToLoad, qualifier + "properties."),
+        readNodeIds(in, fieldsToLoad, qualifier + "references."),
+        readNodeIds(in, fieldsToLoad, qualifier + "referrers."));
+  }
+
+  private static ImmutableMultimap<String, StrictLangValue> readProperties(
+      ByteArrayDataInput in, Set<String> fieldsToLoad, String prefix) throws IOException {
+    ImmutableMultimap.Builder<String, StrictLangValue> properties = ImmutableMultimap.builder();
+
+    int attributeCount = in.readVInt();
+    for (int i = 0; i < attributeCount; i++) {
+      String attribute = in.readString();
+      int valueCount = in.readVInt();
+
+      if (load(fieldsToLoad, prefix + attribute)) {
+        for (int j = 0; j < valueCount; j++) {
+          String lang = in.readString();
+          String value = in.readString();
+          String regex = in.readByte() != 0 ? in.readString() : null;
+          properties.put(attribute, new StrictLangValue(lang, value, regex));
+        }
+      } else {
+        for (int j = 0; j < valueCount; j++) {
+          skipString(in);
+          skipString(in);
+          if (in.readByte() != 0) {
+            skipString(in);
+          }
+        }
+      }
+    }
+
+    return properties.build();
+  }
+
+  private static ImmutableMultimap<String, NodeId> readNodeIds(
+      ByteArrayDataInput in, Set<String> fieldsToLoad, String prefix) throws IOException {
+    ImmutableMultimap.Builder<String, NodeId> nodeIds = ImmutableMultimap.builder();
+
+    int attributeCount = in.readVInt();
+    for (int i = 0; i < attributeCount; i++) {
+      String attribute = in.readString();
+      int valueCount = in.readVInt();
+
+      if (load(fieldsToLoad, prefix + attribute)) {
+        for (int j = 0; j < valueCount; j++) {
+          UUID id = readUUID(in);
+          String typeId = in.readString();
+          UUID graphId = readUUID(in);
+          nodeIds.put(attribute, NodeId.of(id, typeId, graphId));
+        }
+      } else {
+        for (int j = 0; j < valueCount; j++) {
+          in.skipBytes(UUID_BYTES);
+          skipString(in);
+          in.skipBytes(UUID_BYTES);
+        }
+      }
+    }
+
+    return nodeIds.build();
+  }
+
+  private static boolean load(Set<String> fieldsToLoad, String field) {
+    return fieldsToLoad == null || fieldsToLoad.contains(field);
+  }
+
+  private static UUID readUUID(ByteArrayDataInput in) throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  private static LocalDateTime readDate(ByteArrayDataInput in, boolean load)
+      throws IOException {
+    long epochSecond = in.readLong();
+    return load ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+  }
+
+  private static String skipString(ByteArrayDataInput in) throws IOException {
+    in.skipBytes(in.readVInt());
+    return null;
+  }
+
+}
@@ -1,6 +1,7 @@
 package fi.thl.termed.service.node.internal;
 
 import static com.google.common.base.Strings.emptyToNull;
+import static fi.thl.termed.service.node.internal.NodeToDocument.BINARY_NODE_FIELD;
 
 import com.google.common.collect.ImmutableMultimap;
 import com.google.gson.Gson;
@@ -15,6 +16,7 @@ import fi.thl.termed.util.UUIDs;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.regex.Pattern;
@@ -32,8 +34,28 @@ public class DocumentToNode implements Function<Document, Node> {
       });
   private static final Pattern commaPattern = Pattern.compile(",");
 
+  // null means that all fields are loaded
+  private final Set<String> fieldsToLoad;
+
+  public DocumentToNode() {
+    this(null);
+  }
+
+  /**
+   * @param fieldsToLoad names of the fields that were loaded, used to decode only selected fields
+   * from binary documents
+   */
+  public DocumentToNode(Set<String> fieldsToLoad) {
+    this.fieldsToLoad = fieldsToLoad;
+  }
+
   @Override
   public Node apply(Document doc) {
+    IndexableField binaryNode = doc.getField(BINARY_NODE_FIELD);
+    if (binaryNode != null) {
+      return BinaryNodeCodec.decode(binaryNode.binaryValue(), fieldsToLoad);
+    }
+
     UUID id = null;
     String typeId = null;
     UUID graphId = null;
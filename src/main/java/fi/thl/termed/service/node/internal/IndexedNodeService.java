@@ -1,12 +1,16 @@
 package fi.thl.termed.service.node.internal;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static fi.thl.termed.service.node.internal.NodeToDocument.BINARY_NODE_FIELD;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toMap;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Futures;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Empty;
 import fi.thl.termed.domain.IndexingQueueItemId;
@@ -19,12 +23,16 @@ import fi.thl.termed.domain.event.ReindexEvent;
 import fi.thl.termed.service.node.specification.NodeIndexingQueueItemsByQueueId;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByReferencePath;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.util.ProgressReporter;
 import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.dao.SystemSequenceDao;
 import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.index.IndexGenerations;
+import fi.thl.termed.util.index.IndexingProgress;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.CompositeSpecification;
@@ -43,18 +51,48 @@ import fi.thl.termed.util.service.ForwardingService;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps node index up to date with writes. Written node ids are first stored into an indexing queue
+ * in the database so that indexing can be resumed on startup if the application is stopped.
+ *
+ * By default each write indexes its queue before returning. In asynchronous mode, writes only
+ * enqueue and a background worker indexes all queues written since its previous run at once,
+ * indexing each node (and its neighbours) only once per run. Writes with sync option wait for their
+ * queue to be indexed. Writes done in an enclosing transaction are passed to the worker only after
+ * the transaction commits, sync writes then wait after the commit.
+ */
 public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
+  private static final long DEFAULT_AWAIT_SEARCHABLE_TIMEOUT_MILLIS = 10_000;
+
   private Logger log = LoggerFactory.getLogger(getClass());
 
   private Index<NodeId, Node> index;
@@ -63,6 +101,21 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
   private SystemDao<Long, Empty> nodeIndexingQueueDao;
   private SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao;
 
+  private IndexingProgress indexingProgress;
+  private ExecutorService indexingExecutor;
+  private int indexingThreads;
+  private int indexingBatchSize;
+
+  private boolean asyncIndexing;
+  private boolean awaitSearchable;
+  private long awaitSearchableTimeoutMillis;
+  private ExecutorService asyncIndexingWorker;
+  private Queue<PendingQueue> pendingQueues = new ConcurrentLinkedQueue<>();
+  private AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+  // number of indexing queues in the database, kept up to date by this service
+  private AtomicLong queueDepth = new AtomicLong();
+
   private User indexer = new User("indexer", "", AppRole.ADMIN);
 
   public IndexedNodeService(
@@ -70,16 +123,50 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
       Index<NodeId, Node> index,
       SystemSequenceDao nodeIndexingQueueSequenceDao,
       SystemDao<Long, Empty> nodeIndexingQueueDao,
-      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao) {
+      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao,
+      IndexingProgress indexingProgress,
+      int indexingThreads,
+      int indexingBatchSize) {
+    this(delegate, index, nodeIndexingQueueSequenceDao, nodeIndexingQueueDao,
+        nodeIndexingQueueItemDao, indexingProgress, indexingThreads, indexingBatchSize, false,
+        true, DEFAULT_AWAIT_SEARCHABLE_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param awaitSearchable if true, writes wait until indexed nodes are searchable
+   * @param awaitSearchableTimeoutMillis max time to wait for indexed nodes to become searchable
+   */
+  public IndexedNodeService(
+      Service<NodeId, Node> delegate,
+      Index<NodeId, Node> index,
+      SystemSequenceDao nodeIndexingQueueSequenceDao,
+      SystemDao<Long, Empty> nodeIndexingQueueDao,
+      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao,
+      IndexingProgress indexingProgress,
+      int indexingThreads,
+      int indexingBatchSize,
+      boolean asyncIndexing,
+      boolean awaitSearchable,
+      long awaitSearchableTimeoutMillis) {
     super(delegate);
     this.index = index;
     this.nodeIndexingQueueSequenceDao = nodeIndexingQueueSequenceDao;
     this.nodeIndexingQueueDao = nodeIndexingQueueDao;
     this.nodeIndexingQueueItemDao = nodeIndexingQueueItemDao;
+    this.indexingProgress = indexingProgress;
+    this.indexingExecutor = Executors.newFixedThreadPool(indexingThreads);
+    this.indexingThreads = indexingThreads;
+    this.indexingBatchSize = indexingBatchSize;
+    this.asyncIndexing = asyncIndexing;
+    this.awaitSearchable = awaitSearchable;
+    this.awaitSearchableTimeoutMillis = awaitSearchableTimeoutMillis;
+    this.asyncIndexingWorker = asyncIndexing ? Executors.newSingleThreadExecutor() : null;
   }
 
   @Subscribe
   public void initIndexOn(ApplicationReadyEvent e) {
+    queueDepth.set(StreamUtils.countAndClose(nodeIndexingQueueDao.keys(Specifications.matchAll())));
+
     if (index.isEmpty()) {
       log.info("No index found, adding all keys to indexing queue");
       enqueueAll();
@@ -94,7 +181,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try (Stream<NodeId> ids = super.keys(Queries.matchAll(), indexer)) {
       enqueue(queueId, ids);
     } finally {
-      index(queueId);
+      index(queueId, true);
     }
   }
 
@@ -104,19 +191,25 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
     if (!queues.isEmpty()) {
       log.info("Found {} indexing queues, indexing", queues.size());
-      queues.forEach(this::index);
+      queues.forEach(queueId -> index(queueId, true));
     }
   }
 
   @Subscribe
   public void closeIndexOn(ApplicationShutdownEvent e) {
+    if (asyncIndexingWorker != null) {
+      // queues not yet indexed are left in the database and indexed on next startup
+      asyncIndexingWorker.shutdown();
+      awaitTermination(asyncIndexingWorker);
+    }
+    indexingExecutor.shutdown();
     index.close();
   }
 
   @Subscribe
   public void reindexOn(ReindexEvent<NodeId> e) {
     log.info("Indexing");
-    index(e.getKeyStreamSupplier().get());
+    index(e.getKeyStreamSupplier(), true);
     log.info("Done");
   }
 
@@ -127,7 +220,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.save(nodes.peek(node -> enqueue(queueId, node.identifier())), mode, opts, user);
     } finally {
-      index(queueId);
+      indexWritten(queueId, opts);
     }
   }
 
@@ -139,7 +232,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       return super.save(node, mode, opts, user);
     } finally {
-      index(queueId);
+      indexWritten(queueId, opts);
     }
   }
 
@@ -150,7 +243,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.delete(idStream.peek(id -> enqueue(queueId, id)), opts, user);
     } finally {
-      index(queueId);
+      indexWritten(queueId, opts);
     }
   }
 
@@ -162,7 +255,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.delete(id, opts, user);
     } finally {
-      index(queueId);
+      indexWritten(queueId, opts);
     }
   }
 
@@ -177,13 +270,113 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
           deletes.peek(id -> enqueue(queueId, id)),
           mode, opts, user);
     } finally {
-      index(queueId);
+      indexWritten(queueId, opts);
+    }
+  }
+
+  // indexes queue of a write now or, in asynchronous mode, passes it to the background worker
+  private void indexWritten(Long queueId, WriteOptions opts) {
+    if (!asyncIndexing) {
+      index(queueId, false);
+      return;
     }
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // worker can't see uncommitted queue, pass it on only if the enclosing transaction commits
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              indexWrittenAsync(queueId, opts);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+              if (status != STATUS_COMMITTED) {
+                // queue is rolled back with the transaction
+                queueDepth.decrementAndGet();
+              }
+            }
+          });
+    } else {
+      indexWrittenAsync(queueId, opts);
+    }
+  }
+
+  private void indexWrittenAsync(Long queueId, WriteOptions opts) {
+    PendingQueue pending = new PendingQueue(queueId);
+    pendingQueues.add(pending);
+    scheduleDrain();
+
+    if (opts.isSync()) {
+      pending.indexed.join();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (drainScheduled.compareAndSet(false, true)) {
+      try {
+        asyncIndexingWorker.execute(this::drainPendingQueues);
+      } catch (RejectedExecutionException e) {
+        log.warn("Indexing worker is shut down, queues will be indexed on next startup");
+      }
+    }
+  }
+
+  // Indexes all pending queues at once. Run by the single worker thread, writes done while
+  // indexing are left for the next run.
+  private void drainPendingQueues() {
+    drainScheduled.set(false);
+
+    List<PendingQueue> queues = new ArrayList<>();
+    for (PendingQueue queue = pendingQueues.poll(); queue != null; queue = pendingQueues.poll()) {
+      queues.add(queue);
+    }
+
+    if (queues.isEmpty()) {
+      return;
+    }
+
+    try {
+      Set<NodeId> ids = new LinkedHashSet<>();
+      queues.forEach(queue -> StreamUtils.forEachAndClose(nodeIndexingQueueItemDao
+          .keys(NodeIndexingQueueItemsByQueueId.of(queue.queueId))
+          .map(IndexingQueueItemId::getId), ids::add));
+
+      log.trace("Indexing {} nodes from {} queues", ids.size(), queues.size());
+      index(ids::stream, false);
+
+      queues.forEach(queue -> deleteQueue(queue.queueId));
+      queues.forEach(queue -> queue.indexed.complete(null));
+    } catch (RuntimeException | Error e) {
+      log.error("Failed to index queues, queues are left to be indexed on next startup", e);
+      queues.forEach(queue -> queue.indexed.completeExceptionally(e));
+    }
+  }
+
+  private void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        log.warn("Indexing worker did not finish in time");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns number of indexing queues not yet fully indexed. Queues are counted from the database
+   * on startup and then tracked as they are added and deleted, so this is cheap to call e.g. from
+   * a metrics gauge.
+   */
+  public long indexingQueueDepth() {
+    return queueDepth.get();
   }
 
   private Long initQueue() {
     Long queueId = nodeIndexingQueueSequenceDao.getAndAdvance();
     nodeIndexingQueueDao.insert(queueId, Empty.INSTANCE);
+    queueDepth.incrementAndGet();
     return queueId;
   }
 
@@ -196,66 +389,72 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
         .insert(nodeIds.map(id -> Tuple.of(IndexingQueueItemId.of(id, queueId), Empty.INSTANCE)));
   }
 
-  private void index(Long queueId) {
+  private void index(Long queueId, boolean reportProgress) {
     log.trace("Indexing queue {}", queueId);
 
     index(() -> nodeIndexingQueueItemDao
         .keys(NodeIndexingQueueItemsByQueueId.of(queueId))
-        .map(IndexingQueueItemId::getId));
+        .map(IndexingQueueItemId::getId), reportProgress);
 
     log.trace("Deleting queue {}", queueId);
+    deleteQueue(queueId);
+  }
+
+  private void deleteQueue(Long queueId) {
     nodeIndexingQueueDao.delete(queueId);
+    queueDepth.decrementAndGet();
   }
 
   // index nodes and its references and referrers
-  private void index(Supplier<Stream<NodeId>> idsSupplier) {
+  private void index(Supplier<Stream<NodeId>> idsSupplier, boolean reportProgress) {
     long nodeCount = StreamUtils.countAndClose(idsSupplier.get());
 
     if (nodeCount > 1) {
       log.debug("Indexing {} nodes", nodeCount);
     }
 
+    ProgressReporter progress = reportProgress
+        ? indexingProgress.start(log, "Indexing", (int) nodeCount)
+        : null;
+
     Cache<NodeId, Boolean> indexed = CacheBuilder.newBuilder().softValues().build();
 
     AtomicInteger checkCounter = new AtomicInteger();
     AtomicInteger indexCounter = new AtomicInteger();
 
-    // first pass: index nodes
+    // first pass: index nodes, after each batch index references and referrers of its db nodes
     index(idsSupplier.get()
-        .peek(id -> checkCounter.incrementAndGet())
-        .filter(refId -> indexed.getIfPresent(refId) == null)
-        .peek(id -> indexCounter.incrementAndGet())
-        .peek(id -> indexed.put(id, true)));
-
-    log.trace("Checked {} values", checkCounter.get());
-    log.trace("Indexed {} values", indexCounter.get());
-
-    indexCounter.set(0);
-    checkCounter.set(0);
-
-    // second pass: index each reference and referrer of a db node
-    try (Stream<NodeId> idStream = idsSupplier.get()) {
-      // in batches for better performance
-      Iterators.partition(idStream.iterator(), 200).forEachRemaining(idBatch -> {
-        OrSpecification<NodeId, Node> nodeSpecs =
-            OrSpecification.or(idBatch.stream().map(id -> AndSpecification.and(
-                NodesByGraphId.of(id.getTypeGraphId()),
-                NodesByTypeId.of(id.getTypeId()),
-                NodesById.of(id.getId())))
-                .collect(toImmutableList()));
-
-        try (Stream<Node> nodes = values(Queries.sqlQuery(nodeSpecs), indexer)) {
-          index(nodes.flatMap(node ->
-              Stream.concat(
-                  node.getReferences().values().stream(),
-                  node.getReferrers().values().stream()))
-              .distinct()
-              .peek(id -> checkCounter.incrementAndGet())
-              .filter(refId -> indexed.getIfPresent(refId) == null)
-              .peek(id -> indexCounter.incrementAndGet())
-              .peek(id -> indexed.put(id, true)));
-        }
-      });
+            .filter(id -> {
+              if (indexed.getIfPresent(id) == null) {
+                return true;
+              }
+              // count skipped duplicates as processed
+              if (progress != null) {
+                progress.tick();
+              }
+              return false;
+            })
+            .peek(id -> indexed.put(id, true)),
+        nodes -> {
+          Set<NodeId> dbRefs = new LinkedHashSet<>();
+          nodes.forEach(node -> {
+            dbRefs.addAll(node.getReferences().values());
+            dbRefs.addAll(node.getReferrers().values());
+          });
+
+          index(dbRefs.stream()
+                  .peek(id -> checkCounter.incrementAndGet())
+                  .filter(refId -> indexed.getIfPresent(refId) == null)
+                  .peek(id -> indexCounter.incrementAndGet())
+                  .peek(id -> indexed.put(id, true)),
+              refs -> {
+              },
+              null);
+        },
+        progress);
+
+    if (progress != null) {
+      progress.done();
     }
 
     log.trace("Checked {} db refs", checkCounter.get());
@@ -275,49 +474,105 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
                 .collect(toImmutableList()));
 
         index(keys(Queries.query(refSpecs), indexer)
-            .peek(id -> checkCounter.incrementAndGet())
-            .filter(refId -> indexed.getIfPresent(refId) == null)
-            .peek(id -> indexCounter.incrementAndGet())
-            .peek(id -> indexed.put(id, true)));
+                .peek(id -> checkCounter.incrementAndGet())
+                .filter(refId -> indexed.getIfPresent(refId) == null)
+                .peek(id -> indexCounter.incrementAndGet())
+                .peek(id -> indexed.put(id, true)),
+            refs -> {
+            },
+            null);
       });
     }
 
     log.trace("Checked {} index refs", checkCounter.get());
     log.trace("Indexed {} index refs", indexCounter.get());
 
-    waitLuceneIndexRefresh();
+    awaitSearchable();
 
     if (nodeCount > 1) {
       log.debug("Done");
     }
   }
 
-  // index all nodes identified by given ids, closes the stream
-  private void index(Stream<NodeId> ids) {
-    try (Stream<NodeId> closeable = ids) {
-      StreamUtils.zipIndex(closeable, 1, Tuple::of).forEach(t -> {
-        NodeId id = t._1;
-        int i = t._2;
+  // Index all nodes identified by given ids, closes the stream. Nodes are read in batches on the
+  // calling thread (to see its transaction), converted and written to the index by workers. Each
+  // loaded batch is passed to given consumer after it is submitted for indexing.
+  private void index(Stream<NodeId> ids, Consumer<Collection<Node>> loadedBatchConsumer,
+      ProgressReporter progress) {
+    Deque<Future<?>> batchesInProgress = new ArrayDeque<>();
 
-        Optional<Node> node = super.get(id, indexer);
+    try (Stream<NodeId> closeable = ids) {
+      Iterators.partition(closeable.iterator(), indexingBatchSize).forEachRemaining(idBatch -> {
+        Map<NodeId, Node> nodes;
 
-        if (node.isPresent()) {
-          index.index(id, node.get());
-        } else {
-          index.delete(id);
+        try (Stream<Node> nodeStream = super
+            .values(Queries.sqlQuery(nodesByIds(idBatch)), indexer)) {
+          nodes = nodeStream.collect(toMap(Node::identifier, n -> n, (l, r) -> l));
         }
 
-        if (i % 1000 == 0) {
-          log.debug("Indexed {} nodes", i);
+        batchesInProgress.add(indexingExecutor.submit(() -> index(idBatch, nodes, progress)));
+
+        loadedBatchConsumer.accept(nodes.values());
+
+        // limit number of loaded batches waiting for a worker
+        while (batchesInProgress.size() > indexingThreads * 2) {
+          Futures.getUnchecked(batchesInProgress.remove());
         }
       });
     }
+
+    batchesInProgress.forEach(Futures::getUnchecked);
+  }
+
+  private void index(List<NodeId> ids, Map<NodeId, Node> nodes, ProgressReporter progress) {
+    ids.forEach(id -> {
+      Node node = nodes.get(id);
+
+      if (node != null) {
+        index.index(id, node);
+      } else {
+        index.delete(id);
+      }
+    });
+
+    if (progress != null) {
+      progress.tick(ids.size());
+    }
   }
 
-  // wait for searcher to reflect updates to make sure that all updates are done and visible
-  private void waitLuceneIndexRefresh() {
-    if (index instanceof LuceneIndex) {
-      ((LuceneIndex) index).refreshBlocking();
+  private OrSpecification<NodeId, Node> nodesByIds(List<NodeId> ids) {
+    return OrSpecification.or(ids.stream()
+        .map(id -> AndSpecification.and(
+            NodesByGraphId.of(id.getTypeGraphId()),
+            NodesByTypeId.of(id.getTypeId()),
+            NodesById.of(id.getId())))
+        .collect(toImmutableList()));
+  }
+
+  private static class PendingQueue {
+
+    private final Long queueId;
+    private final CompletableFuture<Void> indexed = new CompletableFuture<>();
+
+    PendingQueue(Long queueId) {
+      this.queueId = queueId;
+    }
+
+  }
+
+  // Wait for searcher to reflect updates to make sure that all updates are done and visible.
+  // Concurrent writers share reopens done by the index instead of each forcing one. If writers
+  // don't wait, clients may wait for the write generation of the index when reading. Written nodes
+  // are already indexed, so on timeout the write returns and the nodes become searchable later.
+  private void awaitSearchable() {
+    if (awaitSearchable && index instanceof IndexGenerations) {
+      IndexGenerations generations = (IndexGenerations) index;
+      long generation = generations.writeGeneration();
+      if (!generations.awaitWriteGeneration(
+          generation, awaitSearchableTimeoutMillis, MILLISECONDS)) {
+        log.warn("Index generation {} not searchable after {} ms, not waiting any longer",
+            generation, awaitSearchableTimeoutMillis);
+      }
     }
   }
 
@@ -329,12 +584,14 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
     resolve(query.getWhere(), user);
 
+    Set<String> fieldsToLoad = selectToFieldsToLoad(query.getSelect());
+
     return ((LuceneIndex<NodeId, Node>) index).get(
         query.getWhere(),
         query.getSort(),
         query.getMax(),
-        selectToFieldsToLoad(query.getSelect()),
-        new DocumentToNode());
+        fieldsToLoad,
+        new DocumentToNode(fieldsToLoad));
   }
 
   private Set<String> selectToFieldsToLoad(List<Select> selects) {
@@ -351,6 +608,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
       fieldsToLoad.add("id");
       fieldsToLoad.add("type.id");
       fieldsToLoad.add("type.graph.id");
+      fieldsToLoad.add(BINARY_NODE_FIELD);
     }
 
     return fieldsToLoad;
@@ -370,6 +628,17 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
         query.getMax());
   }
 
+  // resolves ids of matching nodes as indexed, i.e. without parsing them to node ids
+  private Stream<String> documentIds(Specification<NodeId, Node> spec, User user) {
+    if (!(spec instanceof LuceneSpecification)) {
+      return super.keys(new Query<>(spec), user).map(NodeId::toString);
+    }
+
+    resolve(spec, user);
+
+    return ((LuceneIndex<NodeId, Node>) index).getDocumentIds(spec);
+  }
+
   @Override
   public long count(Specification<NodeId, Node> spec, User user) {
     if (!(spec instanceof LuceneSpecification) || !(index instanceof LuceneIndex)) {
@@ -382,7 +651,9 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
   }
 
   private void resolve(Specification<NodeId, Node> spec, User user) {
-    if (spec instanceof DependentSpecification) {
+    if (spec instanceof NodesByReferencePath && index instanceof LuceneIndex) {
+      ((NodesByReferencePath) spec).resolveTerms(s -> documentIds(s, user));
+    } else if (spec instanceof DependentSpecification) {
       ((DependentSpecification<NodeId, Node>) spec).resolve(s -> keys(new Query<>(s), user));
     }
     if (spec instanceof NotSpecification) {
@@ -6,6 +6,7 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.AbstractJdbcDao;
 import fi.thl.termed.util.query.SqlSpecification;
 import java.util.Optional;
@@ -15,6 +16,9 @@ import org.springframework.jdbc.core.RowMapper;
 
 public class JdbcNodeDao extends AbstractJdbcDao<NodeId, Node> {
 
+  private static final String UPDATE_SQL =
+      "update node set code = ?, uri = ?, number = ?, created_by = ?, created_date = ?, last_modified_by = ?, last_modified_date = ? where graph_id = ? and type_id = ? and id = ?";
+
   public JdbcNodeDao(DataSource dataSource) {
     super(dataSource);
   }
@@ -37,8 +41,16 @@ public class JdbcNodeDao extends AbstractJdbcDao<NodeId, Node> {
 
   @Override
   public void update(NodeId nodeId, Node node) {
-    jdbcTemplate.update(
-        "update node set code = ?, uri = ?, number = ?, created_by = ?, created_date = ?, last_modified_by = ?, last_modified_date = ? where graph_id = ? and type_id = ? and id = ?",
+    jdbcTemplate.update(UPDATE_SQL, updateArgs(nodeId, node));
+  }
+
+  @Override
+  public void update(Stream<Tuple2<NodeId, Node>> entries) {
+    batchUpdate(UPDATE_SQL, entries, e -> updateArgs(e._1, e._2));
+  }
+
+  private Object[] updateArgs(NodeId nodeId, Node node) {
+    return new Object[]{
         node.getCode().map(Strings::emptyToNull).orElse(null),
         node.getUri().map(Strings::emptyToNull).orElse(null),
         node.getNumber(),
@@ -48,7 +60,7 @@ public class JdbcNodeDao extends AbstractJdbcDao<NodeId, Node> {
         node.getLastModifiedDate(),
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
-        nodeId.getId());
+        nodeId.getId()};
   }
 
   @Override
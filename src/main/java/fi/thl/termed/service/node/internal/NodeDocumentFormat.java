@@ -0,0 +1,20 @@
+package fi.thl.termed.service.node.internal;
+
+/**
+ * Format of stored fields in node documents. Both formats can be read regardless of the configured
+ * format, documents are migrated to configured format when they are (re)indexed.
+ */
+public enum NodeDocumentFormat {
+
+  /**
+   * Stored field per node field and attribute, properties as JSON and references/referrers as
+   * comma separated node ids.
+   */
+  JSON,
+
+  /**
+   * Single versioned binary stored field with length-prefixed UTF-8 strings and 16-byte UUIDs.
+   */
+  BINARY
+
+}
@@ -0,0 +1,51 @@
+package fi.thl.termed.service.node.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+/**
+ * Builds SQL conditions matching a set of node ids. Ids are grouped by type so that each group can
+ * use the (graph_id, type_id, id) index, e.g. {@code (g = ? and t = ? and id in (?, ?)) or (...)}.
+ */
+final class NodeIdsSql {
+
+  private NodeIdsSql() {
+  }
+
+  static ParametrizedSqlQuery nodeIdsIn(String graphIdColumn, String typeIdColumn,
+      String idColumn, Collection<NodeId> nodeIds) {
+    checkArgument(!nodeIds.isEmpty(), "Expected at least one node id");
+
+    Map<TypeId, List<UUID>> idsByType = new LinkedHashMap<>();
+    nodeIds.forEach(nodeId ->
+        idsByType.computeIfAbsent(nodeId.getType(), t -> new ArrayList<>()).add(nodeId.getId()));
+
+    StringJoiner template = new StringJoiner(" or ");
+    List<Object> parameters = new ArrayList<>();
+
+    idsByType.forEach((type, ids) -> {
+      StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+      ids.forEach(id -> placeholders.add("?"));
+
+      template.add(String.format("(%s = ? and %s = ? and %s in %s)",
+          graphIdColumn, typeIdColumn, idColumn, placeholders));
+
+      parameters.add(type.getGraphId());
+      parameters.add(type.getId());
+      parameters.addAll(ids);
+    });
+
+    return ParametrizedSqlQuery.of(template.toString(), parameters.toArray());
+  }
+
+}
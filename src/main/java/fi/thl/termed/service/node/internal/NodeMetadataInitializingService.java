@@ -1,8 +1,11 @@
 package fi.thl.termed.service.node.internal;
 
 import static fi.thl.termed.util.collect.FunctionUtils.memoize;
+import static fi.thl.termed.util.collect.StreamUtils.partitionedMap;
 import static fi.thl.termed.util.query.AndSpecification.and;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
@@ -21,6 +24,9 @@ import fi.thl.termed.util.service.NamedSequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -29,6 +35,8 @@ import java.util.stream.Stream;
 
 public class NodeMetadataInitializingService extends PreSaveNodeInitializingService {
 
+  private static final int NUMBER_RESERVATION_BATCH_SIZE = 1000;
+
   private NamedSequenceService<TypeId> nodeSequenceService;
   private NamedSequenceService<Tuple2<GraphId, String>> nodeNsSeqService;
   private BiFunction<TypeId, User, Type> types;
@@ -59,35 +67,11 @@ public class NodeMetadataInitializingService extends PreSaveNodeInitializingServ
     BiFunction<TypeId, Long, String> codeGenerator = codeGenerator(user);
     BiFunction<GraphId, String, String> uriGenerator = uriGenerator(opts.getUriNamespace(), user);
 
-    return newNodes.map(node -> {
-      Long number = nodeSequenceService.getAndAdvance(node.getType(), user);
-
-      // generate code once (and only once) if needed
-      Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
-      String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
-      String uri = node.getUri().orElseGet(() -> {
-        if (!opts.isGenerateUris()) {
-          return null;
-        } else if (opts.getUriNamespace().isPresent() && !node.getCode().isPresent()) {
-          // generate URI, not based on generated code, but with namespace specific counter
-          String localNamePrefix = types.apply(node.getType(), user).getNodeCodePrefixOrDefault();
-          Long localNameNumber = nodeNsSeqService.getAndAdvance(
-              Tuple.of(node.getTypeGraph(), opts.getUriNamespace().get()), user);
-          return uriGenerator.apply(node.getTypeGraph(), localNamePrefix + localNameNumber);
-        } else {
-          return uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen));
-        }
-      });
+    return partitionedMap(newNodes, NUMBER_RESERVATION_BATCH_SIZE, batch -> {
+      Function<TypeId, Long> numbers = reserveNumbers(batch.stream().map(Node::getType), user);
 
-      return Node.builderFromCopyOf(node)
-          .number(number)
-          .code(code)
-          .uri(uri)
-          .createdBy(user.getUsername())
-          .createdDate(now)
-          .lastModifiedBy(user.getUsername())
-          .lastModifiedDate(now)
-          .build();
+      return batch.stream().map(node -> initNewNode(node, numbers.apply(node.getType()), now,
+          codeGenerator, uriGenerator, opts, user));
     });
   }
 
@@ -119,50 +103,78 @@ public class NodeMetadataInitializingService extends PreSaveNodeInitializingServ
     BiFunction<TypeId, Long, String> codeGenerator = codeGenerator(user);
     BiFunction<GraphId, String, String> uriGenerator = uriGenerator(opts.getUriNamespace(), user);
 
-    return oldAndNewNodes.map(oldAndNewNode -> {
-      Optional<Node> optionalOldNode = oldAndNewNode._1;
-      Node node = oldAndNewNode._2;
-
-      if (optionalOldNode.isPresent()) {
-        Node oldNode = optionalOldNode.get();
-
-        return Node.builderFromCopyOf(node)
-            .number(oldNode.getNumber())
-            .createdBy(oldNode.getCreatedBy())
-            .createdDate(oldNode.getCreatedDate())
-            .lastModifiedBy(user.getUsername())
-            .lastModifiedDate(now)
-            .build();
+    return partitionedMap(oldAndNewNodes, NUMBER_RESERVATION_BATCH_SIZE, batch -> {
+      Function<TypeId, Long> numbers = reserveNumbers(batch.stream()
+          .filter(oldAndNewNode -> !oldAndNewNode._1.isPresent())
+          .map(oldAndNewNode -> oldAndNewNode._2.getType()), user);
+
+      return batch.stream().map(oldAndNewNode -> {
+        Optional<Node> optionalOldNode = oldAndNewNode._1;
+        Node node = oldAndNewNode._2;
+
+        if (optionalOldNode.isPresent()) {
+          Node oldNode = optionalOldNode.get();
+
+          return Node.builderFromCopyOf(node)
+              .number(oldNode.getNumber())
+              .createdBy(oldNode.getCreatedBy())
+              .createdDate(oldNode.getCreatedDate())
+              .lastModifiedBy(user.getUsername())
+              .lastModifiedDate(now)
+              .build();
+        } else {
+          return initNewNode(node, numbers.apply(node.getType()), now,
+              codeGenerator, uriGenerator, opts, user);
+        }
+      });
+    });
+  }
+
+  private Node initNewNode(Node node, Long number, LocalDateTime now,
+      BiFunction<TypeId, Long, String> codeGenerator,
+      BiFunction<GraphId, String, String> uriGenerator,
+      WriteOptions opts, User user) {
+
+    // generate code once (and only once) if needed
+    Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
+    String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
+    String uri = node.getUri().orElseGet(() -> {
+      if (!opts.isGenerateUris()) {
+        return null;
+      } else if (opts.getUriNamespace().isPresent() && !node.getCode().isPresent()) {
+        // generate URI, not based on generated code, but with namespace specific counter
+        String localNamePrefix = types.apply(node.getType(), user).getNodeCodePrefixOrDefault();
+        Long localNameNumber = nodeNsSeqService.getAndAdvance(
+            Tuple.of(node.getTypeGraph(), opts.getUriNamespace().get()), user);
+        return uriGenerator.apply(node.getTypeGraph(), localNamePrefix + localNameNumber);
       } else {
-        Long number = nodeSequenceService.getAndAdvance(node.getType(), user);
-
-        Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
-        String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
-        String uri = node.getUri().orElseGet(() -> {
-          if (!opts.isGenerateUris()) {
-            return null;
-          } else if (opts.getUriNamespace().isPresent() && !node.getCode().isPresent()) {
-            // generate URI, not based on generated code, but with namespace specific counter
-            String localNamePrefix = types.apply(node.getType(), user).getNodeCodePrefixOrDefault();
-            Long localNameNumber = nodeNsSeqService.getAndAdvance(
-                Tuple.of(node.getTypeGraph(), opts.getUriNamespace().get()), user);
-            return uriGenerator.apply(node.getTypeGraph(), localNamePrefix + localNameNumber);
-          } else {
-            return uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen));
-          }
-        });
-
-        return Node.builderFromCopyOf(node)
-            .number(number)
-            .code(code)
-            .uri(uri)
-            .createdBy(user.getUsername())
-            .createdDate(now)
-            .lastModifiedBy(user.getUsername())
-            .lastModifiedDate(now)
-            .build();
+        return uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen));
       }
     });
+
+    return Node.builderFromCopyOf(node)
+        .number(number)
+        .code(code)
+        .uri(uri)
+        .createdBy(user.getUsername())
+        .createdDate(now)
+        .lastModifiedBy(user.getUsername())
+        .lastModifiedDate(now)
+        .build();
+  }
+
+  /**
+   * Reserves node numbers for given types (one per type occurrence) with a single sequence call
+   * per type. Returned function hands out reserved numbers in order.
+   */
+  private Function<TypeId, Long> reserveNumbers(Stream<TypeId> types, User user) {
+    Map<TypeId, Long> counts = types.collect(groupingBy(t -> t, LinkedHashMap::new, counting()));
+
+    Map<TypeId, Long> nextNumbers = new HashMap<>();
+    counts.forEach((type, count) ->
+        nextNumbers.put(type, nodeSequenceService.getAndAdvance(type, count, user)));
+
+    return type -> nextNumbers.compute(type, (t, next) -> next + 1) - 1;
   }
 
   private BiFunction<TypeId, Long, String> codeGenerator(User user) {
@@ -1,6 +1,7 @@
 package fi.thl.termed.service.node.internal;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Maps.difference;
 import static fi.thl.termed.service.node.util.NodeTransformations.nodePropertiesToRows;
 import static fi.thl.termed.service.node.util.NodeTransformations.nodeReferencesToRows;
@@ -9,10 +10,17 @@ import static fi.thl.termed.domain.RevisionType.INSERT;
 import static fi.thl.termed.domain.RevisionType.UPDATE;
 import static fi.thl.termed.util.collect.MapUtils.leftValues;
 import static fi.thl.termed.util.collect.MultimapUtils.toImmutableMultimap;
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.partitionedMap;
 import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
 import static fi.thl.termed.util.collect.Tuple.tuplesToMap;
+import static java.util.function.Function.identity;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeAttributeValueId;
@@ -30,8 +38,13 @@ import fi.thl.termed.util.service.AbstractRepository;
 import fi.thl.termed.util.service.WriteOptions;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -39,6 +52,8 @@ import java.util.stream.Stream;
  */
 public class NodeRepository extends AbstractRepository<NodeId, Node> {
 
+  private static final int DEFAULT_READ_BATCH_SIZE = 1000;
+
   private final Dao<NodeId, Node> nodeDao;
   private final Dao<NodeAttributeValueId, StrictLangValue> textAttrValueDao;
   private final Dao<NodeAttributeValueId, NodeId> refAttrValueDao;
@@ -47,6 +62,8 @@ public class NodeRepository extends AbstractRepository<NodeId, Node> {
   private final Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttrValueRevDao;
   private final Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> refAttrValueRevDao;
 
+  private final int readBatchSize;
+
   public NodeRepository(
       Dao<NodeId, Node> nodeDao,
       Dao<NodeAttributeValueId, StrictLangValue> textAttrValueDao,
@@ -55,13 +72,32 @@ public class NodeRepository extends AbstractRepository<NodeId, Node> {
       Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttrValueRevDao,
       Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> refAttrValueRevDao,
       int batchSize) {
+    this(nodeDao, textAttrValueDao, refAttrValueDao,
+        nodeRevDao, textAttrValueRevDao, refAttrValueRevDao,
+        batchSize, DEFAULT_READ_BATCH_SIZE);
+  }
+
+  /**
+   * @param readBatchSize number of nodes for which attribute values are loaded with one query per
+   * value table when reading a stream of nodes
+   */
+  public NodeRepository(
+      Dao<NodeId, Node> nodeDao,
+      Dao<NodeAttributeValueId, StrictLangValue> textAttrValueDao,
+      Dao<NodeAttributeValueId, NodeId> refAttrValueDao,
+      Dao<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevDao,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttrValueRevDao,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> refAttrValueRevDao,
+      int batchSize, int readBatchSize) {
     super(batchSize);
+    Preconditions.checkArgument(readBatchSize > 0, "Illegal read batch size: " + readBatchSize);
     this.nodeDao = nodeDao;
     this.textAttrValueDao = textAttrValueDao;
     this.refAttrValueDao = refAttrValueDao;
     this.nodeRevDao = nodeRevDao;
     this.textAttrValueRevDao = textAttrValueRevDao;
     this.refAttrValueRevDao = refAttrValueRevDao;
+    this.readBatchSize = readBatchSize;
   }
 
   @Override
@@ -142,6 +178,67 @@ public class NodeRepository extends AbstractRepository<NodeId, Node> {
     });
   }
 
+  // set based version of update, loads current values of the batch with one query per value table
+  // (per read batch), diffs in memory and writes changes of the whole batch with bulk operations
+  @Override
+  protected void updateBatch(List<Tuple2<NodeId, Node>> nodes, WriteOptions opts, User user) {
+    if (nodes.isEmpty()) {
+      return;
+    }
+
+    // if a node is given more than once, the last one wins as when updating one by one
+    Map<NodeId, Node> nodesById = new LinkedHashMap<>();
+    nodes.forEach(t -> nodesById.put(t._1, t._2));
+    Set<NodeId> nodeIds = nodesById.keySet();
+
+    Map<NodeAttributeValueId, StrictLangValue> oldTexts = new HashMap<>();
+    Map<NodeAttributeValueId, NodeId> oldRefs = new HashMap<>();
+
+    for (List<NodeId> ids : Iterables.partition(nodeIds, readBatchSize)) {
+      forEachAndClose(textAttrValueDao.entries(new NodeTextAttributeValuesByNodeIds(ids), user),
+          e -> oldTexts.put(e._1, e._2));
+      forEachAndClose(refAttrValueDao.entries(new NodeReferenceAttributeValuesByNodeIds(ids), user),
+          e -> oldRefs.put(e._1, e._2));
+    }
+
+    MapDifference<NodeAttributeValueId, StrictLangValue> textsDiff = difference(
+        tuplesToMap(nodesById.entrySet().stream()
+            .flatMap(e -> nodePropertiesToRows(e.getKey(), e.getValue().getProperties()))),
+        oldTexts);
+    MapDifference<NodeAttributeValueId, NodeId> refsDiff = difference(
+        tuplesToMap(nodesById.entrySet().stream()
+            .flatMap(e -> nodeReferencesToRows(e.getKey(), e.getValue().getReferences()))),
+        oldRefs);
+
+    nodeDao.update(entriesAsTuples(nodesById), user);
+
+    textAttrValueDao.delete(textsDiff.entriesOnlyOnRight().keySet().stream(), user);
+    textAttrValueDao.update(entriesAsTuples(leftValues(textsDiff.entriesDiffering())), user);
+    textAttrValueDao.insert(entriesAsTuples(textsDiff.entriesOnlyOnLeft()), user);
+
+    refAttrValueDao.delete(refsDiff.entriesOnlyOnRight().keySet().stream(), user);
+    refAttrValueDao.update(entriesAsTuples(leftValues(refsDiff.entriesDiffering())), user);
+    refAttrValueDao.insert(entriesAsTuples(refsDiff.entriesOnlyOnLeft()), user);
+
+    opts.getRevision().ifPresent(r -> {
+      nodeRevDao.insert(toRevs(entriesAsTuples(nodesById), r, UPDATE), user);
+
+      textAttrValueRevDao.insert(Stream.of(
+          toRevs(entriesAsTuples(textsDiff.entriesOnlyOnLeft()), r, INSERT),
+          toRevs(entriesAsTuples(leftValues(textsDiff.entriesDiffering())), r, UPDATE),
+          this.<NodeAttributeValueId, StrictLangValue>toRevs(
+              textsDiff.entriesOnlyOnRight().keySet(), r, DELETE))
+          .flatMap(identity()), user);
+
+      refAttrValueRevDao.insert(Stream.of(
+          toRevs(entriesAsTuples(refsDiff.entriesOnlyOnLeft()), r, INSERT),
+          toRevs(entriesAsTuples(leftValues(refsDiff.entriesDiffering())), r, UPDATE),
+          this.<NodeAttributeValueId, NodeId>toRevs(
+              refsDiff.entriesOnlyOnRight().keySet(), r, DELETE))
+          .flatMap(identity()), user);
+    });
+  }
+
   // first delete all dependant values, then all nodes
   @Override
   protected void deleteBatch(List<NodeId> ids, WriteOptions opts, User user) {
@@ -205,9 +302,20 @@ public class NodeRepository extends AbstractRepository<NodeId, Node> {
     return nodeDao.exists(nodeId, user);
   }
 
+  // resolves existence of upserted nodes with one query per read batch
+  @Override
+  protected Set<NodeId> existingKeys(List<NodeId> ids, User user) {
+    Set<NodeId> existing = new HashSet<>();
+    for (List<NodeId> batch : Iterables.partition(ids, readBatchSize)) {
+      forEachAndClose(nodeDao.keys(new NodesByNodeIds(batch), user), existing::add);
+    }
+    return existing;
+  }
+
   @Override
   public Stream<Node> values(Query<NodeId, Node> query, User user) {
-    return nodeDao.values(query.getWhere(), user).map(node -> populateValue(node, user));
+    return partitionedMap(nodeDao.values(query.getWhere(), user), readBatchSize,
+        nodes -> populateValues(nodes, user).stream());
   }
 
   @Override
@@ -245,4 +353,43 @@ public class NodeRepository extends AbstractRepository<NodeId, Node> {
     }
   }
 
+  // set based version of populateValue, loads values of all given nodes with three queries
+  private List<Node> populateValues(List<Node> nodes, User user) {
+    ImmutableSet<NodeId> nodeIds = nodes.stream().map(Node::identifier).collect(toImmutableSet());
+
+    Map<NodeId, ImmutableMultimap.Builder<String, StrictLangValue>> texts = new HashMap<>();
+    Map<NodeId, ImmutableMultimap.Builder<String, NodeId>> references = new HashMap<>();
+    Map<NodeId, ImmutableMultimap.Builder<String, NodeId>> referrers = new HashMap<>();
+
+    forEachAndClose(
+        textAttrValueDao.entries(new NodeTextAttributeValuesByNodeIds(nodeIds), user),
+        e -> builderOf(texts, e._1.getNodeId()).put(e._1.getAttributeId(), e._2));
+    forEachAndClose(
+        refAttrValueDao.entries(new NodeReferenceAttributeValuesByNodeIds(nodeIds), user),
+        e -> builderOf(references, e._1.getNodeId()).put(e._1.getAttributeId(), e._2));
+    forEachAndClose(
+        refAttrValueDao.entries(new NodeReferenceAttributeNodesByValueIds(nodeIds), user),
+        e -> builderOf(referrers, e._2).put(e._1.getAttributeId(), e._1.getNodeId()));
+
+    return nodes.stream()
+        .map(node -> {
+          NodeId nodeId = node.identifier();
+          return Node.builderFromCopyOf(node)
+              .properties(buildOrEmpty(texts.get(nodeId)))
+              .references(buildOrEmpty(references.get(nodeId)))
+              .referrers(buildOrEmpty(referrers.get(nodeId)))
+              .build();
+        })
+        .collect(toImmutableList());
+  }
+
+  private <V> ImmutableMultimap.Builder<String, V> builderOf(
+      Map<NodeId, ImmutableMultimap.Builder<String, V>> builders, NodeId nodeId) {
+    return builders.computeIfAbsent(nodeId, id -> ImmutableMultimap.builder());
+  }
+
+  private <V> ImmutableMultimap<String, V> buildOrEmpty(ImmutableMultimap.Builder<String, V> b) {
+    return b != null ? b.build() : ImmutableMultimap.of();
+  }
+
 }
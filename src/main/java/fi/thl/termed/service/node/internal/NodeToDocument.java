@@ -29,44 +29,68 @@ import org.apache.lucene.util.BytesRef;
 
 public class NodeToDocument implements Function<Node, Document> {
 
+  public static final String BINARY_NODE_FIELD = "_node";
+
   private static final Gson gson = new Gson();
 
+  private final NodeDocumentFormat format;
+
+  public NodeToDocument() {
+    this(NodeDocumentFormat.JSON);
+  }
+
+  public NodeToDocument(NodeDocumentFormat format) {
+    this.format = format;
+  }
+
   @Override
   public Document apply(Node n) {
     Document doc = new Document();
 
+    boolean json = format == NodeDocumentFormat.JSON;
+    Store store = json ? Store.YES : Store.NO;
+
     String qualifier = UUIDs.toString(n.getTypeGraphId()) + "." + n.getTypeId();
 
-    doc.add(storedStringField("type.graph.id", n.getTypeGraphId()));
-    doc.add(storedStringField("type.id", n.getTypeId()));
-    doc.add(storedStringField("id", n.getId()));
+    doc.add(stringField("type.graph.id", n.getTypeGraphId(), store));
+    doc.add(stringField("type.id", n.getTypeId(), store));
+    doc.add(stringField("id", n.getId(), store));
 
-    doc.add(storedStringField("code", n.getCode().orElse("")));
-    doc.add(storedStringField("uri", n.getUri().orElse("")));
+    doc.add(stringField("code", n.getCode().orElse(""), store));
+    doc.add(stringField("uri", n.getUri().orElse(""), store));
     doc.add(longField("number", n.getNumber()));
-    doc.add(storedField("number", n.getNumber()));
+    if (json) {
+      doc.add(storedField("number", n.getNumber()));
+    }
 
-    doc.add(storedStringField("createdBy", n.getCreatedBy()));
-    doc.add(storedStringField("createdDate", n.getCreatedDate()));
-    doc.add(storedStringField("lastModifiedBy", n.getLastModifiedBy()));
-    doc.add(storedStringField("lastModifiedDate", n.getLastModifiedDate()));
+    doc.add(stringField("createdBy", n.getCreatedBy(), store));
+    doc.add(stringField("createdDate", n.getCreatedDate(), store));
+    doc.add(stringField("lastModifiedBy", n.getLastModifiedBy(), store));
+    doc.add(stringField("lastModifiedDate", n.getLastModifiedDate(), store));
 
     doc.add(sortableField("number.sortable", n.getNumber()));
     doc.add(sortableField("createdDate.sortable", n.getCreatedDate()));
     doc.add(sortableField("lastModifiedDate.sortable", n.getLastModifiedDate()));
 
-    addProperties(doc, qualifier, n.getProperties());
-    addReferences(doc, qualifier, n.getReferences());
-    addReferrers(doc, qualifier, n.getReferrers());
+    addProperties(doc, json ? qualifier : null, n.getProperties());
+    addReferences(doc, json ? qualifier : null, n.getReferences());
+    addReferrers(doc, json ? qualifier : null, n.getReferrers());
+
+    if (!json) {
+      doc.add(new StoredField(BINARY_NODE_FIELD, BinaryNodeCodec.encode(n)));
+    }
 
     return doc;
   }
 
+  // null qualifier means that values are not stored per attribute
   private void addProperties(Document doc, String qualifier,
       Multimap<String, StrictLangValue> properties) {
 
     properties.asMap().forEach((property, langValues) -> {
-      doc.add(storedField(qualifier + ".properties." + property, gson.toJson(langValues)));
+      if (qualifier != null) {
+        doc.add(storedField(qualifier + ".properties." + property, gson.toJson(langValues)));
+      }
 
       Set<String> sortFieldAddedForLang = new HashSet<>();
       for (StrictLangValue langValue : langValues) {
@@ -100,8 +124,10 @@ public class NodeToDocument implements Function<Node, Document> {
 
   private void addReferences(Document doc, String qualifier, Multimap<String, NodeId> references) {
     references.asMap().forEach((property, values) -> {
-      doc.add(storedField(qualifier + ".references." + property,
-          values.stream().map(NodeId::toString).collect(joining(","))));
+      if (qualifier != null) {
+        doc.add(storedField(qualifier + ".references." + property,
+            values.stream().map(NodeId::toString).collect(joining(","))));
+      }
 
       values.forEach(value -> {
         doc.add(stringField("references.nodeId", value.toString()));
@@ -116,8 +142,10 @@ public class NodeToDocument implements Function<Node, Document> {
 
   private void addReferrers(Document doc, String qualifier, Multimap<String, NodeId> referrers) {
     referrers.asMap().forEach((property, values) -> {
-      doc.add(storedField(qualifier + ".referrers." + property,
-          values.stream().map(NodeId::toString).collect(joining(","))));
+      if (qualifier != null) {
+        doc.add(storedField(qualifier + ".referrers." + property,
+            values.stream().map(NodeId::toString).collect(joining(","))));
+      }
 
       values.forEach(value -> {
         doc.add(stringField("referrers.nodeId", value.toString()));
@@ -148,18 +176,18 @@ public class NodeToDocument implements Function<Node, Document> {
     return new LongPoint(name, value);
   }
 
-  private Field storedStringField(String name, String value) {
+  private Field stringField(String name, String value, Store store) {
     return new StringField(name,
         value.substring(0, min(MAX_SAFE_TERM_LENGTH_IN_UTF8_CHARS, value.length())),
-        Store.YES);
+        store);
   }
 
-  private Field storedStringField(String name, UUID value) {
-    return new StringField(name, UUIDs.toString(value), Store.YES);
+  private Field stringField(String name, UUID value, Store store) {
+    return new StringField(name, UUIDs.toString(value), store);
   }
 
-  private Field storedStringField(String name, LocalDateTime value) {
-    return new StringField(name, DateUtils.formatLuceneDateString(value), Store.YES);
+  private Field stringField(String name, LocalDateTime value, Store store) {
+    return new StringField(name, DateUtils.formatLuceneDateString(value), store);
   }
 
   private Field sortableField(String name, String value) {
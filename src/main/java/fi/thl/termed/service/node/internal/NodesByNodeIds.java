@@ -0,0 +1,28 @@
+package fi.thl.termed.service.node.internal;
+
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Collection;
+
+public class NodesByNodeIds extends AbstractSqlSpecification<NodeId, Node> {
+
+  private ImmutableSet<NodeId> nodeIds;
+
+  public NodesByNodeIds(Collection<NodeId> nodeIds) {
+    this.nodeIds = ImmutableSet.copyOf(nodeIds);
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    return nodeIds.contains(nodeId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return NodeIdsSql.nodeIdsIn("graph_id", "type_id", "id", nodeIds);
+  }
+
+}
@@ -16,6 +16,7 @@ import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -28,6 +29,7 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
 
   private Service<NodeId, Node> delegate;
 
+  private PermissionEvaluator<TypeId> typeEvaluator;
   private PermissionEvaluator<NodeId> nodeEvaluator;
   private PermissionEvaluator<TextAttributeId> textAttrEvaluator;
   private PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator;
@@ -38,6 +40,7 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
       PermissionEvaluator<TextAttributeId> textAttrEvaluator,
       PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator) {
     this.delegate = delegate;
+    this.typeEvaluator = typeEvaluator;
     this.nodeEvaluator = (u, r, p) -> typeEvaluator.hasPermission(u, r.getType(), p);
     this.textAttrEvaluator = textAttrEvaluator;
     this.refAttrEvaluator = refAttrEvaluator;
@@ -95,101 +98,95 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
       return Optional.empty();
     }
 
+    PermissionFilter filter = new PermissionFilter(user, Permission.READ);
+
     return delegate.get(id, user, selects)
-        .filter(r -> nodeEvaluator.hasPermission(user, new NodeId(r), Permission.READ))
-        .map(new AttributePermissionFilter(user, Permission.READ));
+        .filter(r -> filter.isPermitted(r.getType()))
+        .map(filter);
   }
 
   private Stream<NodeId> filterKeys(Stream<NodeId> keys, User user) {
-    return keys.filter(id -> nodeEvaluator.hasPermission(user, id, Permission.READ));
+    PermissionFilter filter = new PermissionFilter(user, Permission.READ);
+    return keys.filter(id -> filter.isPermitted(id.getType()));
   }
 
   private Stream<Node> filterValues(Stream<Node> values, User user) {
-    return values.filter(r -> nodeEvaluator.hasPermission(user, new NodeId(r), Permission.READ))
-        .map(new AttributePermissionFilter(user, Permission.READ));
+    PermissionFilter filter = new PermissionFilter(user, Permission.READ);
+    return values.filter(r -> filter.isPermitted(r.getType())).map(filter);
   }
 
-  private class AttributePermissionFilter implements Function<Node, Node> {
+  /**
+   * Filters node attribute values by user permissions. Permissions are compiled lazily to lookup
+   * tables (type -> attribute -> permitted) so that each type and attribute is evaluated once per
+   * request. Nodes with all values permitted are returned as is.
+   */
+  private class PermissionFilter implements Function<Node, Node> {
+
+    private final User user;
+    private final Permission permission;
 
-    private User user;
-    private Permission permission;
+    private final Map<TypeId, TypePermissions> typePermissions = new HashMap<>();
 
-    AttributePermissionFilter(User user, Permission permission) {
+    PermissionFilter(User user, Permission permission) {
       this.user = user;
       this.permission = permission;
     }
 
-    @Override
-    public Node apply(Node node) {
-      TypeId typeId = node.getType();
-      return Node.builderFromCopyOf(node)
-          .properties(Multimaps.filterKeys(
-              node.getProperties(), new AcceptPropertyPredicate(typeId)))
-          .references(Multimaps.filterEntries(
-              node.getReferences(), new AcceptReferenceEntryPredicate(typeId)))
-          .referrers(Multimaps.filterEntries(
-              node.getReferrers(), new AcceptReferrerEntryPredicate()))
-          .build();
+    boolean isPermitted(TypeId typeId) {
+      return typePermissions(typeId).permitted;
     }
 
-    /**
-     * Accept a node text attribute value if attribute is permitted
-     */
-    private class AcceptPropertyPredicate implements Predicate<String> {
-
-      private TypeId typeId;
+    private TypePermissions typePermissions(TypeId typeId) {
+      return typePermissions.computeIfAbsent(typeId, TypePermissions::new);
+    }
 
-      AcceptPropertyPredicate(TypeId typeId) {
-        this.typeId = typeId;
+    @Override
+    public Node apply(Node node) {
+      TypePermissions type = typePermissions(node.getType());
+
+      Predicate<String> acceptProperty = type::isTextAttributePermitted;
+      Predicate<Map.Entry<String, NodeId>> acceptReference = e ->
+          type.isReferenceAttributePermitted(e.getKey()) && isPermitted(e.getValue().getType());
+      Predicate<Map.Entry<String, NodeId>> acceptReferrer = e ->
+          typePermissions(e.getValue().getType()).isReferenceAttributePermitted(e.getKey()) &&
+              isPermitted(e.getValue().getType());
+
+      if (node.getProperties().keySet().stream().allMatch(acceptProperty::apply) &&
+          node.getReferences().entries().stream().allMatch(acceptReference::apply) &&
+          node.getReferrers().entries().stream().allMatch(acceptReferrer::apply)) {
+        return node;
       }
 
-      @Override
-      public boolean apply(String attributeId) {
-        TextAttributeId textAttrId = new TextAttributeId(typeId, attributeId);
-        return textAttrEvaluator.hasPermission(user, textAttrId, permission);
-      }
+      return Node.builderFromCopyOf(node)
+          .properties(Multimaps.filterKeys(node.getProperties(), acceptProperty))
+          .references(Multimaps.filterEntries(node.getReferences(), acceptReference))
+          .referrers(Multimaps.filterEntries(node.getReferrers(), acceptReferrer))
+          .build();
     }
 
-    /**
-     * Accepts a node reference entry in the reference multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
-     */
-    private class AcceptReferenceEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
+    private class TypePermissions {
 
-      private TypeId typeId;
+      private final TypeId typeId;
+      private final boolean permitted;
 
-      AcceptReferenceEntryPredicate(TypeId typeId) {
+      private final Map<String, Boolean> textAttributes = new HashMap<>();
+      private final Map<String, Boolean> referenceAttributes = new HashMap<>();
+
+      TypePermissions(TypeId typeId) {
         this.typeId = typeId;
+        this.permitted = typeEvaluator.hasPermission(user, typeId, permission);
       }
 
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId reference = entry.getValue();
-
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(typeId, attributeId);
-
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, reference, permission);
+      boolean isTextAttributePermitted(String attributeId) {
+        return textAttributes.computeIfAbsent(attributeId, a -> textAttrEvaluator
+            .hasPermission(user, new TextAttributeId(typeId, a), permission));
       }
-    }
-
-    /**
-     * Accepts a node referrer entry in the referrers multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
-     */
-    private class AcceptReferrerEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
-
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId referrer = entry.getValue();
 
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(referrer.getType(), attributeId);
-
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, referrer, permission);
+      boolean isReferenceAttributePermitted(String attributeId) {
+        return referenceAttributes.computeIfAbsent(attributeId, a -> refAttrEvaluator
+            .hasPermission(user, new ReferenceAttributeId(typeId, a), permission));
       }
+
     }
 
   }
@@ -0,0 +1,68 @@
+package fi.thl.termed.service.node.specification;
+
+import static fi.thl.termed.util.index.lucene.LuceneConstants.DOCUMENT_ID;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.util.query.LuceneSpecification;
+import java.util.Collection;
+import java.util.Objects;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Matches nodes with any of given ids. Ids are matched with a single multi-term query against
+ * index document ids.
+ */
+public class NodesByIds implements LuceneSpecification<NodeId, Node> {
+
+  private final ImmutableSet<NodeId> ids;
+
+  public NodesByIds(Collection<NodeId> ids) {
+    this.ids = ImmutableSet.copyOf(ids);
+  }
+
+  public static NodesByIds of(Collection<NodeId> ids) {
+    return new NodesByIds(ids);
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
+    return ids.contains(nodeId);
+  }
+
+  @Override
+  public Query luceneQuery() {
+    return new TermInSetQuery(DOCUMENT_ID, ids.stream()
+        .map(id -> new BytesRef(id.toString()))
+        .collect(toList()));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodesByIds that = (NodesByIds) o;
+    return Objects.equals(ids, that.ids);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(ids);
+  }
+
+  @Override
+  public String toString() {
+    return "id in " + ids.size() + " ids";
+  }
+
+}
@@ -1,5 +1,6 @@
 package fi.thl.termed.service.node.specification;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import com.google.common.base.Preconditions;
@@ -8,15 +9,14 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.util.query.DependentSpecification;
 import fi.thl.termed.util.query.LuceneSpecification;
 import fi.thl.termed.util.query.Specification;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Stream;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
 
 public class NodesByReferencePath implements LuceneSpecification<NodeId, Node>,
     DependentSpecification<NodeId, Node> {
@@ -24,7 +24,8 @@ public class NodesByReferencePath implements LuceneSpecification<NodeId, Node>,
   private final String attributeId;
   private final Specification<NodeId, Node> valueSpecification;
 
-  private Set<NodeId> valueNodeIds;
+  private List<BytesRef> valueNodeIds;
+  private Set<String> valueNodeIdSet;
 
   public NodesByReferencePath(String attributeId,
       Specification<NodeId, Node> valueSpecification) {
@@ -40,31 +41,44 @@ public class NodesByReferencePath implements LuceneSpecification<NodeId, Node>,
     return valueSpecification;
   }
 
+  /**
+   * Resolves value node ids using given resolver. Resolver is expected to resolve any dependent
+   * specifications in the value specification.
+   */
   @Override
   public void resolve(Function<Specification<NodeId, Node>, Stream<NodeId>> resolver) {
-    if (valueSpecification instanceof NodesByReferencePath) {
-      ((NodesByReferencePath) valueSpecification).resolve(resolver);
-    }
-    try (Stream<NodeId> ids = resolver.apply(valueSpecification)) {
-      valueNodeIds = ids.collect(toSet());
+    resolveTerms(spec -> resolver.apply(spec).map(NodeId::toString));
+  }
+
+  /**
+   * Resolves value node ids directly as index terms (i.e. node id strings) without materializing
+   * them as node ids.
+   */
+  public void resolveTerms(Function<Specification<NodeId, Node>, Stream<String>> termResolver) {
+    try (Stream<String> ids = termResolver.apply(valueSpecification)) {
+      valueNodeIds = ids.map(BytesRef::new).collect(toList());
     }
+    valueNodeIdSet = null;
   }
 
   @Override
   public boolean test(NodeId nodeId, Node node) {
     Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
     Preconditions.checkNotNull(valueNodeIds, "Value IDs not resolved.");
-    return node.getReferences().get(attributeId).stream().anyMatch(v -> valueNodeIds.contains(v));
+
+    if (valueNodeIdSet == null) {
+      valueNodeIdSet = valueNodeIds.stream().map(BytesRef::utf8ToString).collect(toSet());
+    }
+
+    return node.getReferences().get(attributeId).stream()
+        .anyMatch(v -> valueNodeIdSet.contains(v.toString()));
   }
 
   @Override
   public Query luceneQuery() {
     Preconditions.checkNotNull(valueNodeIds, "Value IDs not resolved.");
-    BooleanQuery.Builder clauses = new BooleanQuery.Builder();
-    valueNodeIds.forEach(valueNodeId -> clauses.add(
-        new TermQuery(new Term("references." + attributeId + ".nodeId", valueNodeId.toString())),
-        Occur.SHOULD));
-    return clauses.build();
+    // single multi-term query instead of a boolean clause per value id
+    return new TermInSetQuery("references." + attributeId + ".nodeId", valueNodeIds);
   }
 
   @Override
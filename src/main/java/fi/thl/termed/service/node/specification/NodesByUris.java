@@ -0,0 +1,66 @@
+package fi.thl.termed.service.node.specification;
+
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.util.query.LuceneSpecification;
+import java.util.Collection;
+import java.util.Objects;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Matches nodes with any of given uris. Uris are matched with a single multi-term query.
+ */
+public class NodesByUris implements LuceneSpecification<NodeId, Node> {
+
+  private final ImmutableSet<String> uris;
+
+  public NodesByUris(Collection<String> uris) {
+    this.uris = ImmutableSet.copyOf(uris);
+  }
+
+  public static NodesByUris of(Collection<String> uris) {
+    return new NodesByUris(uris);
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
+    return node.getUri().map(uris::contains).orElse(false);
+  }
+
+  @Override
+  public Query luceneQuery() {
+    return new TermInSetQuery("uri", uris.stream()
+        .map(BytesRef::new)
+        .collect(toList()));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodesByUris that = (NodesByUris) o;
+    return Objects.equals(uris, that.uris);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(uris);
+  }
+
+  @Override
+  public String toString() {
+    return "uri in " + uris.size() + " uris";
+  }
+
+}
@@ -0,0 +1,460 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.domain.DefaultUris.uri;
+import static fi.thl.termed.service.node.util.UriResolvers.nodeUriResolver;
+import static fi.thl.termed.service.node.util.UriResolvers.refAttrUriResolver;
+import static fi.thl.termed.service.node.util.UriResolvers.textAttrUriResolver;
+import static fi.thl.termed.service.node.util.UriResolvers.typeUriResolver;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.util.Collections.emptyList;
+import static org.apache.jena.graph.Node.ANY;
+import static org.apache.jena.graph.NodeFactory.createURI;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+import fi.thl.termed.domain.AttributeId;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Permission;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.service.Service;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphStatisticsHandler;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps in-memory RDF graphs of nodes for SPARQL queries. A graph is loaded when first queried.
+ * Node save and delete events mark nodes changed and changes are applied before the next query of
+ * the graph. Graph is reloaded if its types have changed or there are too many changes to apply
+ * one by one. Graphs not queried in a while are dropped.
+ *
+ * Queries see the graph through a view that filters triples by read permissions of the user in the
+ * same way as node reads do, i.e. by node type, attribute and referenced node type.
+ */
+public class NodeRdfGraphStore {
+
+  private static final int MAX_CHANGES_TO_APPLY = 10_000;
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private final String defaultNamespace;
+  private final Service<NodeId, Node> nodeService;
+  private final Service<TypeId, Type> typeService;
+
+  private final PermissionEvaluator<TypeId> typeEvaluator;
+  private final PermissionEvaluator<TextAttributeId> textAttrEvaluator;
+  private final PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator;
+
+  private final User loader = User.newSuperuser("rdf-graph-loader");
+
+  private final Cache<GraphId, MaterializedGraph> graphs =
+      CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+
+  public NodeRdfGraphStore(
+      String defaultNamespace,
+      Service<NodeId, Node> nodeService,
+      Service<TypeId, Type> typeService,
+      PermissionEvaluator<TypeId> typeEvaluator,
+      PermissionEvaluator<TextAttributeId> textAttrEvaluator,
+      PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator) {
+    this.defaultNamespace = defaultNamespace;
+    this.nodeService = nodeService;
+    this.typeService = typeService;
+    this.typeEvaluator = typeEvaluator;
+    this.textAttrEvaluator = textAttrEvaluator;
+    this.refAttrEvaluator = refAttrEvaluator;
+  }
+
+  /**
+   * Runs given function with up to date graph visible to the user. Graph must not be used after
+   * the function returns.
+   */
+  public <T> T query(GraphId graphId, User user, Function<Graph, T> query) {
+    MaterializedGraph graph = graphs.asMap().computeIfAbsent(graphId, MaterializedGraph::new);
+    List<Type> types = toListAndClose(
+        typeService.values(new Query<>(new TypesByGraphId(graphId.getId())), loader));
+
+    ReadWriteLock lock = graph.lock;
+
+    if (graph.isUpToDate(types)) {
+      lock.readLock().lock();
+    } else {
+      lock.writeLock().lock();
+      try {
+        graph.update(types);
+        lock.readLock().lock();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    try {
+      return query.apply(new PermissionFilteredGraph(graph, new PermissionFilter(user)));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Subscribe
+  public void markChangedOn(NodeSavedEvent e) {
+    e.getNodes().forEach(this::markChanged);
+  }
+
+  @Subscribe
+  public void markChangedOn(NodeDeletedEvent e) {
+    e.getNodes().forEach(this::markChanged);
+  }
+
+  @Subscribe
+  public void clearGraphsOn(InvalidateCachesEvent e) {
+    graphs.invalidateAll();
+  }
+
+  private void markChanged(NodeId nodeId) {
+    MaterializedGraph graph = graphs.getIfPresent(new GraphId(nodeId.getTypeGraphId()));
+    if (graph != null) {
+      graph.markChanged(nodeId);
+    }
+  }
+
+  private class MaterializedGraph {
+
+    private final GraphId graphId;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Set<NodeId> changed = Sets.newConcurrentHashSet();
+    private volatile boolean stale = true;
+    private volatile List<Type> types;
+
+    // following are accessed only while holding the lock
+    private Graph triples;
+    private Map<Triple, TripleGuard> guards;
+    private Map<TripleGuard, TripleGuard> guardPool;
+    private Map<org.apache.jena.graph.Node, Multiset<TripleGuard>> guardsByPredicate;
+    private Map<NodeId, List<Triple>> triplesByNode;
+    private Map<NodeId, org.apache.jena.graph.Node> subjectsByNode;
+    private Map<org.apache.jena.graph.Node, NodeId> nodesBySubject;
+
+    MaterializedGraph(GraphId graphId) {
+      this.graphId = graphId;
+    }
+
+    void markChanged(NodeId nodeId) {
+      changed.add(nodeId);
+      if (changed.size() > MAX_CHANGES_TO_APPLY) {
+        stale = true;
+      }
+    }
+
+    boolean isUpToDate(List<Type> currentTypes) {
+      return !stale && changed.isEmpty() && Objects.equals(types, currentTypes);
+    }
+
+    // expects write lock to be held
+    void update(List<Type> currentTypes) {
+      if (stale || !Objects.equals(types, currentTypes)) {
+        try {
+          load(currentTypes);
+        } catch (RuntimeException | Error e) {
+          stale = true;
+          throw e;
+        }
+      } else {
+        Set<NodeId> ids = new LinkedHashSet<>();
+        for (Iterator<NodeId> i = changed.iterator(); i.hasNext(); ) {
+          ids.add(i.next());
+          i.remove();
+        }
+        apply(ids);
+      }
+    }
+
+    private void load(List<Type> currentTypes) {
+      log.debug("Loading RDF graph {}", graphId.getId());
+
+      // changes after this point are applied on next update
+      stale = false;
+      changed.clear();
+      types = currentTypes;
+
+      triples = Factory.createGraphMem();
+      guards = new HashMap<>();
+      guardPool = new HashMap<>();
+      guardsByPredicate = new HashMap<>();
+      triplesByNode = new HashMap<>();
+      subjectsByNode = new HashMap<>();
+      nodesBySubject = new HashMap<>();
+
+      List<Node> nodes = toListAndClose(nodeService.values(
+          new Query<>(new NodesByGraphId(graphId.getId()), emptyList(), -1), loader));
+
+      nodes.forEach(node -> putSubject(node.identifier(), subject(node)));
+
+      NodeToTriples toTriples = newNodeToTriples();
+      nodes.forEach(node -> addNode(node, toTriples));
+
+      log.debug("Loaded {} triples of {} nodes", triples.size(), nodes.size());
+    }
+
+    private void apply(Set<NodeId> changedIds) {
+      Map<NodeId, Optional<Node>> changedNodes = new HashMap<>();
+      changedIds.forEach(id -> changedNodes.put(id, nodeService.get(id, loader)));
+
+      // nodes referring to nodes with new or removed subject need new triples too
+      Set<NodeId> referrerIds = new LinkedHashSet<>();
+      changedNodes.forEach((id, node) -> {
+        org.apache.jena.graph.Node oldSubject = subjectsByNode.get(id);
+        if (oldSubject == null || node.isPresent() && oldSubject.equals(subject(node.get()))) {
+          return;
+        }
+        if (node.isPresent()) {
+          node.get().getReferrers().values().forEach(referrerIds::add);
+        } else {
+          triples.find(ANY, ANY, oldSubject)
+              .mapWith(t -> nodesBySubject.get(t.getSubject()))
+              .filterDrop(Objects::isNull)
+              .forEachRemaining(referrerIds::add);
+        }
+      });
+      referrerIds.removeAll(changedIds);
+      referrerIds.forEach(id -> {
+        if (id.getTypeGraphId().equals(graphId.getId())) {
+          changedNodes.put(id, nodeService.get(id, loader));
+        } else {
+          NodeRdfGraphStore.this.markChanged(id);
+        }
+      });
+
+      changedNodes.forEach((id, node) -> {
+        removeNode(id);
+        node.ifPresent(n -> putSubject(id, subject(n)));
+      });
+
+      NodeToTriples toTriples = newNodeToTriples();
+      changedNodes.values().forEach(node -> node.ifPresent(n -> addNode(n, toTriples)));
+
+      log.debug("Applied changes of {} nodes to RDF graph {}", changedNodes.size(),
+          graphId.getId());
+    }
+
+    private NodeToTriples newNodeToTriples() {
+      Function<TypeId, Optional<Type>> getType = id -> types.stream()
+          .filter(t -> t.identifier().equals(id)).findFirst();
+      // subject uris of local nodes are known, other nodes are loaded
+      Function<NodeId, Optional<String>> getNodeUri = nodeUriResolver(
+          id -> nodeService.get(id, loader));
+
+      return new NodeToTriples(
+          defaultNamespace,
+          typeUriResolver(getType),
+          textAttrUriResolver(getType),
+          refAttrUriResolver(getType),
+          id -> subjectsByNode.containsKey(id)
+              ? Optional.of(subjectsByNode.get(id).getURI())
+              : getNodeUri.apply(id));
+    }
+
+    private org.apache.jena.graph.Node subject(Node node) {
+      return createURI(node.getUri().orElse(uri(defaultNamespace, node.identifier())));
+    }
+
+    private void putSubject(NodeId id, org.apache.jena.graph.Node subject) {
+      subjectsByNode.put(id, subject);
+      nodesBySubject.put(subject, id);
+    }
+
+    private void addNode(Node node, NodeToTriples toTriples) {
+      List<Triple> nodeTriples = new ArrayList<>();
+
+      toTriples.apply(node, (triple, attribute, value) -> {
+        TripleGuard guard = new TripleGuard(node.getType(), attribute,
+            value != null ? value.getType() : null);
+        nodeTriples.add(triple);
+        triples.add(triple);
+        TripleGuard pooledGuard = guardPool.computeIfAbsent(guard, g -> g);
+        if (guards.putIfAbsent(triple, pooledGuard) == null) {
+          guardsByPredicate.computeIfAbsent(triple.getPredicate(), p -> HashMultiset.create())
+              .add(pooledGuard);
+        }
+      });
+
+      triplesByNode.put(node.identifier(), nodeTriples);
+    }
+
+    private void removeNode(NodeId id) {
+      List<Triple> nodeTriples = triplesByNode.remove(id);
+      if (nodeTriples != null) {
+        nodeTriples.forEach(triple -> {
+          triples.delete(triple);
+          TripleGuard guard = guards.remove(triple);
+          if (guard != null) {
+            Multiset<TripleGuard> predicateGuards = guardsByPredicate.get(triple.getPredicate());
+            predicateGuards.remove(guard);
+            if (predicateGuards.isEmpty()) {
+              guardsByPredicate.remove(triple.getPredicate());
+            }
+          }
+        });
+      }
+      org.apache.jena.graph.Node subject = subjectsByNode.remove(id);
+      if (subject != null && id.equals(nodesBySubject.get(subject))) {
+        nodesBySubject.remove(subject);
+      }
+    }
+
+  }
+
+  /**
+   * Describes what permissions are required to read a triple: read permission to subject type,
+   * attribute (if any) and referenced node type (if any).
+   */
+  private static class TripleGuard {
+
+    private final TypeId type;
+    private final AttributeId attribute;
+    private final TypeId valueType;
+
+    TripleGuard(TypeId type, AttributeId attribute, TypeId valueType) {
+      this.type = type;
+      this.attribute = attribute;
+      this.valueType = valueType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      TripleGuard that = (TripleGuard) o;
+      return Objects.equals(type, that.type) &&
+          Objects.equals(attribute, that.attribute) &&
+          Objects.equals(valueType, that.valueType);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, attribute, valueType);
+    }
+
+  }
+
+  /**
+   * Evaluates guards for a user. Each type and attribute is evaluated once per query.
+   */
+  private class PermissionFilter {
+
+    private final User user;
+
+    private final Map<TypeId, Boolean> types = new HashMap<>();
+    private final Map<AttributeId, Boolean> attributes = new HashMap<>();
+    private final Map<TripleGuard, Boolean> guards = new HashMap<>();
+
+    PermissionFilter(User user) {
+      this.user = user;
+    }
+
+    boolean isPermitted(TripleGuard guard) {
+      return guard != null && guards.computeIfAbsent(guard, g ->
+          isPermitted(g.type) &&
+              (g.attribute == null || isPermitted(g.attribute)) &&
+              (g.valueType == null || isPermitted(g.valueType)));
+    }
+
+    private boolean isPermitted(TypeId type) {
+      return types.computeIfAbsent(type, t ->
+          typeEvaluator.hasPermission(user, t, Permission.READ));
+    }
+
+    private boolean isPermitted(AttributeId attribute) {
+      return attributes.computeIfAbsent(attribute, a -> a instanceof TextAttributeId
+          ? textAttrEvaluator.hasPermission(user, (TextAttributeId) a, Permission.READ)
+          : refAttrEvaluator.hasPermission(user, (ReferenceAttributeId) a, Permission.READ));
+    }
+
+  }
+
+  private static class PermissionFilteredGraph extends GraphBase {
+
+    private final MaterializedGraph graph;
+    private final PermissionFilter filter;
+
+    private final Map<org.apache.jena.graph.Node, Long> permittedCounts = new HashMap<>();
+
+    PermissionFilteredGraph(MaterializedGraph graph, PermissionFilter filter) {
+      this.graph = graph;
+      this.filter = filter;
+    }
+
+    // Counts of readable triples for patterns with only predicate given. If subject or object is
+    // given too, counts of the whole graph are used as upper bounds of readable triples.
+    @Override
+    protected GraphStatisticsHandler createStatisticsHandler() {
+      GraphStatisticsHandler statistics = graph.triples.getStatisticsHandler();
+      return (subject, predicate, object) -> {
+        long count = statistics.getStatistic(subject, predicate, object);
+        return count > 0 ? Math.min(count, permittedCount(predicate)) : count;
+      };
+    }
+
+    private long permittedCount(org.apache.jena.graph.Node predicate) {
+      return permittedCounts.computeIfAbsent(predicate, p -> {
+        Stream<Multiset<TripleGuard>> predicateGuards = p.isConcrete()
+            ? Stream.of(graph.guardsByPredicate.getOrDefault(p, ImmutableMultiset.of()))
+            : graph.guardsByPredicate.values().stream();
+
+        return predicateGuards
+            .flatMap(guards -> guards.entrySet().stream())
+            .filter(guardCount -> filter.isPermitted(guardCount.getElement()))
+            .mapToLong(Multiset.Entry::getCount)
+            .sum();
+      });
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple match) {
+      return graph.triples.find(match)
+          .filterKeep(triple -> filter.isPermitted(graph.guards.get(triple)));
+    }
+
+  }
+
+}
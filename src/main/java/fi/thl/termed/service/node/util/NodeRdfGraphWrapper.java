@@ -7,9 +7,12 @@ import static fi.thl.termed.service.node.util.UriResolvers.typeUriResolver;
 import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
 import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.query.OrSpecification.or;
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 import static org.apache.jena.graph.Node.ANY;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
@@ -20,6 +23,7 @@ import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByIds;
 import fi.thl.termed.service.node.specification.NodesByPropertyString;
 import fi.thl.termed.service.node.specification.NodesByReference;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
@@ -27,14 +31,20 @@ import fi.thl.termed.service.node.specification.NodesByUri;
 import fi.thl.termed.util.RegularExpressions;
 import fi.thl.termed.util.UUIDs;
 import fi.thl.termed.util.query.Specification;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import org.apache.jena.graph.GraphStatisticsHandler;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.graph.impl.GraphBase;
 import org.apache.jena.util.iterator.ClosableIterator;
@@ -44,23 +54,62 @@ import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Presents nodes of given types as an RDF graph. Triple patterns are answered by querying nodes
+ * from the node provider.
+ *
+ * Triples of nodes looked up by subject are cached for the lifetime of the wrapper (typically a
+ * single query). References of returned nodes are recorded as pending subject lookups, and when a
+ * pending subject is looked up, all pending subjects are loaded with a single ids query. This
+ * turns per binding subject lookups of joins into batches. If a node counter is given, wrapper
+ * also provides statistics for ordering triple patterns.
+ */
 public class NodeRdfGraphWrapper extends GraphBase {
 
+  private static final int SUBJECT_CACHE_SIZE = 10_000;
+  private static final int MAX_PENDING_SUBJECTS = 10_000;
+  private static final int MAX_SUBJECTS_PER_QUERY = 1000;
+
+  // rough estimate used in statistics
+  private static final long AVERAGE_TRIPLES_PER_NODE = 10;
+
   private Logger log = LoggerFactory.getLogger(getClass());
 
   private Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider;
+  private Function<Specification<NodeId, Node>, Long> nodeCounter;
 
   // caches
   private Map<TypeId, Type> types = new HashMap<>();
   private Map<TextAttributeId, TextAttribute> textAttributes = new HashMap<>();
   private Map<ReferenceAttributeId, ReferenceAttribute> referenceAttributes = new HashMap<>();
 
-  private Function<Node, List<Triple>> toTriples;
+  private Cache<org.apache.jena.graph.Node, List<Triple>> subjectCache =
+      CacheBuilder.newBuilder().maximumSize(SUBJECT_CACHE_SIZE).build();
+  private Map<org.apache.jena.graph.Node, NodeId> pendingSubjects =
+      new LinkedHashMap<org.apache.jena.graph.Node, NodeId>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<org.apache.jena.graph.Node, NodeId> e) {
+          return size() > MAX_PENDING_SUBJECTS;
+        }
+      };
+
+  private NodeToTriples toTriples;
 
   public NodeRdfGraphWrapper(
       String defaultNamespace,
       List<Type> typeList,
       Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider) {
+    this(defaultNamespace, typeList, nodeProvider, null);
+  }
+
+  /**
+   * @param nodeCounter for statistics, if null, no statistics are provided
+   */
+  public NodeRdfGraphWrapper(
+      String defaultNamespace,
+      List<Type> typeList,
+      Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider,
+      Function<Specification<NodeId, Node>, Long> nodeCounter) {
 
     typeList.forEach(type -> {
       types.put(type.identifier(), type);
@@ -69,6 +118,7 @@ public class NodeRdfGraphWrapper extends GraphBase {
     });
 
     this.nodeProvider = nodeProvider;
+    this.nodeCounter = nodeCounter;
 
     Function<TypeId, Optional<Type>> getType = id -> typeList.stream()
         .filter(t -> t.identifier().equals(id)).findFirst();
@@ -86,6 +136,11 @@ public class NodeRdfGraphWrapper extends GraphBase {
         nodeUriResolver(getNode));
   }
 
+  @Override
+  protected GraphStatisticsHandler createStatisticsHandler() {
+    return nodeCounter != null ? new NodeStatisticsHandler() : null;
+  }
+
   @Override
   protected ExtendedIterator<Triple> graphBaseFind(Triple match) {
     if (log.isTraceEnabled()) {
@@ -101,7 +156,7 @@ public class NodeRdfGraphWrapper extends GraphBase {
     }
 
     if (subject.isURI()) {
-      return findBySubject(subject.getURI()).filterKeep(match::matches);
+      return findBySubject(subject).filterKeep(match::matches);
     }
 
     if (predicate.equals(RDF.type.asNode()) && object.isURI()) {
@@ -129,15 +184,64 @@ public class NodeRdfGraphWrapper extends GraphBase {
     return node == null ? ANY : node;
   }
 
-  private ExtendedIterator<Triple> findBySubject(String subjectUri) {
-    Specification<NodeId, Node> nodeSpec = or(types.values().stream()
+  private ExtendedIterator<Triple> findBySubject(org.apache.jena.graph.Node subject) {
+    List<Triple> triples = subjectCache.getIfPresent(subject);
+
+    if (triples == null && pendingSubjects.containsKey(subject)) {
+      loadPendingSubjects(subject);
+      triples = subjectCache.getIfPresent(subject);
+    }
+
+    if (triples == null) {
+      triples = new ArrayList<>();
+      try (Stream<Node> nodes = nodeProvider.apply(subjectSpec(subject.getURI()))) {
+        nodes.forEach(toTriples(triples::add));
+      }
+      subjectCache.put(subject, triples);
+    }
+
+    return WrappedIterator.create(triples.iterator());
+  }
+
+  // loads given subject and other pending subjects with one query per batch
+  private void loadPendingSubjects(org.apache.jena.graph.Node subject) {
+    Map<NodeId, org.apache.jena.graph.Node> batch = new LinkedHashMap<>();
+    batch.put(pendingSubjects.remove(subject), subject);
+
+    Iterator<Map.Entry<org.apache.jena.graph.Node, NodeId>> pending =
+        pendingSubjects.entrySet().iterator();
+    while (pending.hasNext() && batch.size() < MAX_SUBJECTS_PER_QUERY) {
+      Map.Entry<org.apache.jena.graph.Node, NodeId> entry = pending.next();
+      pending.remove();
+      if (subjectCache.getIfPresent(entry.getKey()) == null) {
+        batch.put(entry.getValue(), entry.getKey());
+      }
+    }
+
+    if (log.isTraceEnabled()) {
+      log.trace("Load {} pending subjects", batch.size());
+    }
+
+    Map<NodeId, List<Triple>> loaded = new HashMap<>();
+    try (Stream<Node> nodes = nodeProvider.apply(NodesByIds.of(batch.keySet()))) {
+      nodes.forEach(node -> {
+        List<Triple> triples = new ArrayList<>();
+        toTriples(triples::add).accept(node);
+        loaded.put(node.identifier(), triples);
+      });
+    }
+
+    // also caches missing (e.g. not permitted) subjects as empty
+    batch.forEach((id, s) -> subjectCache.put(s, loaded.getOrDefault(id, emptyList())));
+  }
+
+  private Specification<NodeId, Node> subjectSpec(String subjectUri) {
+    return or(types.values().stream()
         .map(type -> and(
             new NodesByGraphId(type.getGraphId()),
             new NodesByTypeId(type.getId()),
             byUriOrId(subjectUri)))
         .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
   }
 
   private Specification<NodeId, fi.thl.termed.domain.Node> byUriOrId(String nodeUri) {
@@ -147,45 +251,51 @@ public class NodeRdfGraphWrapper extends GraphBase {
   }
 
   private ExtendedIterator<Triple> findByType(String typeUri) {
-    Optional<TypeId> typeOptional = types.values().stream()
-        .filter(type -> Objects.equals(type.getUri().orElse(null), typeUri))
-        .map(Type::identifier).findFirst();
-
-    if (!typeOptional.isPresent()) {
-      return WrappedIterator.emptyIterator();
-    }
-
-    Specification<NodeId, Node> nodeSpec = and(
-        new NodesByGraphId(typeOptional.get().getGraphId()),
-        new NodesByTypeId(typeOptional.get().getId()));
+    return typeSpec(typeUri)
+        .map(spec -> nodeStreamToTriples(nodeProvider.apply(spec)))
+        .orElseGet(WrappedIterator::emptyIterator);
+  }
 
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+  private Optional<Specification<NodeId, Node>> typeSpec(String typeUri) {
+    return types.values().stream()
+        .filter(type -> Objects.equals(type.getUri().orElse(null), typeUri))
+        .map(Type::identifier)
+        .findFirst()
+        .map(typeId -> and(
+            new NodesByGraphId(typeId.getGraphId()),
+            new NodesByTypeId(typeId.getId())));
   }
 
   // predicateUri can be null
   private ExtendedIterator<Triple> findByObject(String predicateUri, String valueUri) {
+    return objectSpec(predicateUri, valueUri)
+        .map(spec -> nodeStreamToTriples(nodeProvider.apply(spec)))
+        .orElseGet(WrappedIterator::emptyIterator);
+  }
+
+  // predicateUri can be null
+  private Optional<Specification<NodeId, Node>> objectSpec(String predicateUri, String valueUri) {
     Optional<NodeId> valueOptional = findFirstAndClose(nodeProvider.apply(byUriOrId(valueUri)))
         .map(NodeId::new);
 
-    if (!valueOptional.isPresent()) {
-      return WrappedIterator.emptyIterator();
-    }
-
-    Specification<NodeId, Node> nodeSpec = or(referenceAttributes.values().stream()
+    return valueOptional.map(value -> or(referenceAttributes.values().stream()
         .filter(refAttr -> predicateUri == null ||
             Objects.equals(refAttr.getUri().orElse(null), predicateUri))
         .map(refAttr -> and(
             new NodesByGraphId(refAttr.getDomainGraphId()),
             new NodesByTypeId(refAttr.getDomainId()),
-            new NodesByReference(refAttr.getId(), valueOptional.get().getId())))
-        .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+            new NodesByReference(refAttr.getId(), value.getId())))
+        .collect(toList())));
   }
 
   // predicateUri can be null
   private ExtendedIterator<Triple> findByLiteral(String predicateUri, String value) {
-    Specification<NodeId, Node> nodeSpec = or(textAttributes.values().stream()
+    return nodeStreamToTriples(nodeProvider.apply(literalSpec(predicateUri, value)));
+  }
+
+  // predicateUri can be null
+  private Specification<NodeId, Node> literalSpec(String predicateUri, String value) {
+    return or(textAttributes.values().stream()
         .filter(textAttr -> predicateUri == null ||
             Objects.equals(textAttr.getUri().orElse(null), predicateUri))
         .map(textAttr -> and(
@@ -193,22 +303,36 @@ public class NodeRdfGraphWrapper extends GraphBase {
             new NodesByTypeId(textAttr.getDomainId()),
             new NodesByPropertyString(textAttr.getId(), value)))
         .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
   }
 
   private ExtendedIterator<Triple> findAll() {
-    Specification<NodeId, Node> nodeSpec = or(types.values().stream()
+    return nodeStreamToTriples(nodeProvider.apply(allSpec()));
+  }
+
+  private Specification<NodeId, Node> allSpec() {
+    return or(types.values().stream()
         .map(type -> and(
             new NodesByGraphId(type.getGraphId()),
             new NodesByTypeId(type.getId())))
         .collect(toList()));
+  }
 
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+  // converts nodes to triples recording references to nodes of known types as pending subjects
+  private Consumer<Node> toTriples(Consumer<Triple> tripleConsumer) {
+    return node -> toTriples.apply(node, (triple, attribute, value) -> {
+      if (value != null && types.containsKey(value.getType())) {
+        pendingSubjects.putIfAbsent(triple.getObject(), value);
+      }
+      tripleConsumer.accept(triple);
+    });
   }
 
   private ExtendedIterator<Triple> nodeStreamToTriples(Stream<Node> stream) {
-    Iterator<Triple> streamIterator = stream.flatMap(n -> toTriples.apply(n).stream()).iterator();
+    Iterator<Triple> streamIterator = stream.flatMap(n -> {
+      List<Triple> triples = new ArrayList<>();
+      toTriples(triples::add).accept(n);
+      return triples.stream();
+    }).iterator();
 
     ClosableIterator<Triple> closableStreamIterator = new ClosableIterator<Triple>() {
       @Override
@@ -241,4 +365,76 @@ public class NodeRdfGraphWrapper extends GraphBase {
     return WrappedIterator.create(closableStreamIterator);
   }
 
+  /**
+   * Estimates triple counts with node counts of the index. Counts are cached for the lifetime of
+   * the wrapper.
+   */
+  private class NodeStatisticsHandler implements GraphStatisticsHandler {
+
+    private final Map<Triple, Long> statistics = new HashMap<>();
+
+    @Override
+    public long getStatistic(org.apache.jena.graph.Node s, org.apache.jena.graph.Node p,
+        org.apache.jena.graph.Node o) {
+      return statistics.computeIfAbsent(Triple.createMatch(s, p, o), this::statistic);
+    }
+
+    private long statistic(Triple match) {
+      org.apache.jena.graph.Node subject = nullToAny(match.getMatchSubject());
+      org.apache.jena.graph.Node predicate = nullToAny(match.getMatchPredicate());
+      org.apache.jena.graph.Node object = nullToAny(match.getMatchObject());
+
+      if (subject.isURI()) {
+        return predicate.isURI() ? 1 : AVERAGE_TRIPLES_PER_NODE;
+      }
+      if (!subject.equals(ANY)) {
+        return 0;
+      }
+
+      String predicateUri = predicate.isURI() ? predicate.getURI() : null;
+
+      if (predicate.equals(RDF.type.asNode())) {
+        return object.isURI() ? typeSpec(object.getURI()).map(this::count).orElse(0L)
+            : count(allSpec());
+      }
+      if (object.isURI()) {
+        return objectSpec(predicateUri, object.getURI()).map(this::count).orElse(0L);
+      }
+      if (object.isLiteral()) {
+        return count(literalSpec(predicateUri, object.getLiteralLexicalForm()));
+      }
+      if (predicateUri != null) {
+        return predicateCount(predicateUri);
+      }
+
+      return count(allSpec()) * AVERAGE_TRIPLES_PER_NODE;
+    }
+
+    // counts nodes of types having an attribute with given uri, unknown (-1) if none found
+    private long predicateCount(String predicateUri) {
+      Set<TypeId> domains = new LinkedHashSet<>();
+      textAttributes.values().stream()
+          .filter(a -> Objects.equals(a.getUri().orElse(null), predicateUri))
+          .forEach(a -> domains.add(a.getDomain()));
+      referenceAttributes.values().stream()
+          .filter(a -> Objects.equals(a.getUri().orElse(null), predicateUri))
+          .forEach(a -> domains.add(a.getDomain()));
+
+      if (domains.isEmpty()) {
+        return -1;
+      }
+
+      return count(or(domains.stream()
+          .map(domain -> and(
+              new NodesByGraphId(domain.getGraphId()),
+              new NodesByTypeId(domain.getId())))
+          .collect(toList())));
+    }
+
+    private long count(Specification<NodeId, Node> spec) {
+      return nodeCounter.apply(spec);
+    }
+
+  }
+
 }
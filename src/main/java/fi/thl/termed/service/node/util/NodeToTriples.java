@@ -9,6 +9,7 @@ import static org.apache.jena.graph.NodeFactory.createLiteral;
 import static org.apache.jena.graph.NodeFactory.createURI;
 import static org.apache.jena.graph.Triple.create;
 
+import fi.thl.termed.domain.AttributeId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttributeId;
@@ -49,40 +50,51 @@ public class NodeToTriples implements Function<Node, List<Triple>> {
   @Override
   public List<Triple> apply(Node node) {
     List<Triple> triples = new ArrayList<>();
+    apply(node, (triple, attribute, value) -> triples.add(triple));
+    return triples;
+  }
 
+  /**
+   * Converts node to triples as {@link #apply(Node)} but passes each triple to given consumer with
+   * the attribute and the referenced node (if any) the triple was created from.
+   */
+  public void apply(Node node, TripleConsumer consumer) {
     org.apache.jena.graph.Node subject = createURI(nodeResolver.apply(node.identifier()));
 
-    triples.add(create(subject, RDF.type.asNode(), createURI(typeResolver.apply(node.getType()))));
+    consumer.accept(
+        create(subject, RDF.type.asNode(), createURI(typeResolver.apply(node.getType()))));
 
-    triples.add(createTermedLiteral(subject, "id", node.getId().toString()));
-    triples.add(createTermedLiteral(subject, "type", node.getTypeId()));
-    triples.add(createTermedLiteral(subject, "graph", node.getTypeGraphId().toString()));
-    node.getUri().ifPresent(s -> triples.add(createTermedLiteral(subject, "uri", s)));
-    node.getCode().ifPresent(s -> triples.add(createTermedLiteral(subject, "code", s)));
+    consumer.accept(createTermedLiteral(subject, "id", node.getId().toString()));
+    consumer.accept(createTermedLiteral(subject, "type", node.getTypeId()));
+    consumer.accept(createTermedLiteral(subject, "graph", node.getTypeGraphId().toString()));
+    node.getUri().ifPresent(s -> consumer.accept(createTermedLiteral(subject, "uri", s)));
+    node.getCode().ifPresent(s -> consumer.accept(createTermedLiteral(subject, "code", s)));
     ofNullable(node.getNumber()).ifPresent(l ->
-        triples.add(createTermedLiteral(subject, "number", l.toString())));
+        consumer.accept(createTermedLiteral(subject, "number", l.toString())));
     ofNullable(node.getCreatedBy()).ifPresent(s ->
-        triples.add(createTermedLiteral(subject, "createdBy", s)));
+        consumer.accept(createTermedLiteral(subject, "createdBy", s)));
     ofNullable(node.getCreatedDate()).ifPresent(d ->
-        triples.add(createTermedLiteral(subject, "createdDate", d.toString())));
+        consumer.accept(createTermedLiteral(subject, "createdDate", d.toString())));
     ofNullable(node.getLastModifiedBy()).ifPresent(s ->
-        triples.add(createTermedLiteral(subject, "lastModifiedBy", s)));
+        consumer.accept(createTermedLiteral(subject, "lastModifiedBy", s)));
     ofNullable(node.getLastModifiedDate()).ifPresent(d ->
-        triples.add(createTermedLiteral(subject, "lastModifiedDate", d.toString())));
-
-    node.getProperties().forEach((k, v) ->
-        triples.add(create(
-            subject,
-            createURI(textAttrResolver.apply(new TextAttributeId(node.getType(), k))),
-            createLiteral(v.getValue(), v.getLang()))));
+        consumer.accept(createTermedLiteral(subject, "lastModifiedDate", d.toString())));
 
-    node.getReferences().forEach((k, v) ->
-        triples.add(create(
-            subject,
-            createURI(refAttrResolver.apply(new ReferenceAttributeId(node.getType(), k))),
-            createURI(nodeResolver.apply(v)))));
+    node.getProperties().forEach((k, v) -> {
+      TextAttributeId attributeId = new TextAttributeId(node.getType(), k);
+      consumer.accept(create(
+          subject,
+          createURI(textAttrResolver.apply(attributeId)),
+          createLiteral(v.getValue(), v.getLang())), attributeId, null);
+    });
 
-    return triples;
+    node.getReferences().forEach((k, v) -> {
+      ReferenceAttributeId attributeId = new ReferenceAttributeId(node.getType(), k);
+      consumer.accept(create(
+          subject,
+          createURI(refAttrResolver.apply(attributeId)),
+          createURI(nodeResolver.apply(v))), attributeId, v);
+    });
   }
 
   private Triple createTermedLiteral(org.apache.jena.graph.Node subject, String propertyId,
@@ -90,4 +102,18 @@ public class NodeToTriples implements Function<Node, List<Triple>> {
     return create(subject, createProperty.apply(propertyId), createLiteral(literal));
   }
 
+  public interface TripleConsumer {
+
+    /**
+     * Accepts a triple created from given attribute. For type and metadata triples attribute is
+     * null, for reference triples value is the referenced node, otherwise null.
+     */
+    void accept(Triple triple, AttributeId attribute, NodeId value);
+
+    default void accept(Triple triple) {
+      accept(triple, null, null);
+    }
+
+  }
+
 }
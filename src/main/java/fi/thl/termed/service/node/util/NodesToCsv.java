@@ -7,18 +7,23 @@ import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.opencsv.CSVWriter;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.service.node.select.SelectAllProperties;
 import fi.thl.termed.service.node.select.SelectAllReferences;
 import fi.thl.termed.service.node.select.SelectId;
 import fi.thl.termed.service.node.select.SelectProperty;
 import fi.thl.termed.service.node.select.SelectReference;
 import fi.thl.termed.service.node.select.SelectType;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
 import fi.thl.termed.util.UUIDs;
 import fi.thl.termed.util.collect.MapUtils;
 import fi.thl.termed.util.csv.CsvOptions;
@@ -27,8 +32,10 @@ import fi.thl.termed.util.query.SelectAll;
 import fi.thl.termed.util.query.Selects;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -37,9 +44,10 @@ import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
- * Write stream of nodes to OutputStream or Writer as CSV. This operation is not actually streaming
- * as all nodes are first transformed to maps and then to table and finally written in one
- * operation.
+ * Write stream of nodes to OutputStream or Writer as CSV. If columns are not given, operation is
+ * not actually streaming as all nodes are first transformed to maps and then to table and finally
+ * written in one operation. With columns given (e.g. derived from types with {@link
+ * #columns(List, List, Collection)}), nodes are written one at a time.
  */
 public final class NodesToCsv {
 
@@ -70,6 +78,93 @@ public final class NodesToCsv {
         toTable(nodes.map(n -> nodeToRowMap(n, selectsSet)).collect(toList())).stream());
   }
 
+  /**
+   * Writes nodes as CSV row by row. Values not matching any of the given columns are not written.
+   */
+  public void writeAsCsv(Stream<Node> nodes, List<String> columns, List<Select> selects,
+      CsvOptions csvOpts, OutputStream out) {
+    Set<Select> selectsSet = ImmutableSet.copyOf(selects);
+    writeCsv(out, csvOpts, toTable(columns, nodes.map(n -> nodeToRowMap(n, selectsSet))));
+  }
+
+  /**
+   * Derives CSV columns from type metadata without reading any nodes. A property column is
+   * generated for each selected text attribute of given types and for each given language (empty
+   * string for values without language), a reference column for each selected reference attribute.
+   */
+  public List<String> columns(List<Type> types, List<Select> selects, Collection<String> langs) {
+    Set<Select> s = ImmutableSet.copyOf(selects);
+    Set<String> columns = new LinkedHashSet<>();
+
+    columns.addAll(identifierColumns(s));
+    columns.addAll(auditInfoColumns(s));
+
+    types.stream()
+        .flatMap(type -> type.getTextAttributes().stream())
+        .map(TextAttribute::getId)
+        .filter(attrId -> isSelectedProperty(attrId, s))
+        .forEach(attrId -> langs.forEach(lang ->
+            columns.add("properties." + attrId + (lang.isEmpty() ? "" : "." + lang))));
+
+    types.stream()
+        .flatMap(type -> type.getReferenceAttributes().stream())
+        .map(ReferenceAttribute::getId)
+        .filter(attrId -> isSelectedReference(attrId, s))
+        .forEach(attrId -> columns.add(useLabeledReferences
+            ? "r." + attrId + ".p." + labelProperty +
+            (labelPropertyLang.isEmpty() ? "" : "." + labelPropertyLang)
+            : "references." + attrId + ".id"));
+
+    return ImmutableList.copyOf(columns);
+  }
+
+  /**
+   * Returns type qualified selects for selected text attributes of given types, e.g. for loading
+   * only properties of nodes when collecting languages for {@link #columns(List, List,
+   * Collection)}.
+   */
+  public List<Select> propertySelects(List<Type> types, List<Select> selects) {
+    Set<Select> s = ImmutableSet.copyOf(selects);
+
+    return types.stream()
+        .flatMap(type -> type.getTextAttributes().stream())
+        .filter(attr -> isSelectedProperty(attr.getId(), s))
+        .map(attr -> new SelectTypeQualifiedProperty(attr.identifier()))
+        .collect(toList());
+  }
+
+  private List<String> identifierColumns(Set<Select> s) {
+    List<String> columns = new ArrayList<>();
+
+    if (s.contains(new SelectAll()) || s.contains(new SelectId())) {
+      columns.add("id");
+    }
+    if (s.contains(new SelectAll()) || s.contains(new SelectType())) {
+      columns.add("type.id");
+      columns.add("type.graph.id");
+    }
+    for (String field : new String[]{"code", "uri", "number"}) {
+      if (s.contains(new SelectAll()) || s.contains(Selects.field(field))) {
+        columns.add(field);
+      }
+    }
+
+    return columns;
+  }
+
+  private List<String> auditInfoColumns(Set<Select> s) {
+    List<String> columns = new ArrayList<>();
+
+    for (String field : new String[]{
+        "createdBy", "createdDate", "lastModifiedBy", "lastModifiedDate"}) {
+      if (s.contains(new SelectAll()) || s.contains(Selects.field(field))) {
+        columns.add(field);
+      }
+    }
+
+    return columns;
+  }
+
   private Map<String, String> nodeToRowMap(Node node, Set<Select> s) {
     Map<String, String> row = new LinkedHashMap<>();
 
@@ -135,9 +230,7 @@ public final class NodesToCsv {
       Set<Select> s) {
 
     Multimap<String, StrictLangValue> selectedProperties =
-        filterKeys(properties, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllProperties())
-            || s.contains(new SelectProperty(key)));
+        filterKeys(properties, key -> isSelectedProperty(key, s));
 
     return selectedProperties.asMap().entrySet().stream()
         .flatMap(entry -> {
@@ -165,9 +258,7 @@ public final class NodesToCsv {
       Set<Select> s) {
 
     Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
+        filterKeys(references, key -> isSelectedReference(key, s));
 
     return selectedReferences.asMap().entrySet().stream()
         .map(entry -> {
@@ -190,9 +281,7 @@ public final class NodesToCsv {
       Set<Select> s) {
 
     Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
+        filterKeys(references, key -> isSelectedReference(key, s));
 
     return selectedReferences.asMap().entrySet().stream()
         .map(entry -> {
@@ -210,6 +299,18 @@ public final class NodesToCsv {
         .collect(MapUtils.toImmutableMap());
   }
 
+  private boolean isSelectedProperty(String attributeId, Set<Select> s) {
+    return s.contains(new SelectAll())
+        || s.contains(new SelectAllProperties())
+        || s.contains(new SelectProperty(attributeId));
+  }
+
+  private boolean isSelectedReference(String attributeId, Set<Select> s) {
+    return s.contains(new SelectAll())
+        || s.contains(new SelectAllReferences())
+        || s.contains(new SelectReference(attributeId));
+  }
+
   private String mapNodeIdToLabel(NodeId nodeId) {
     return nodeLoader.apply(nodeId)
         .flatMap(node -> node.getProperties()
@@ -0,0 +1,188 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.query.Queries.query;
+import static java.util.Collections.emptyList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.DepthLimitedNodeTree;
+import fi.thl.termed.domain.FilteredNodeTree;
+import fi.thl.termed.domain.LazyLoadingNodeTree;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.select.NodeSelects;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReference;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReferrer;
+import fi.thl.termed.service.node.specification.NodesByIds;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.collect.Tuple3;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.service.Service;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Builds node trees for given root nodes. Before trees are returned, roots are expanded breadth
+ * first: for each depth, ids of all references and referrers that the trees will show are
+ * collected and missing nodes are loaded with a single index query. Lazy loading reference and
+ * referrer loaders then find nodes from the shared cache instead of querying per node and
+ * attribute. Nodes not found in prefetch (e.g. not readable by the user) are still loaded lazily.
+ */
+public class PrefetchingNodeTreeBuilder {
+
+  private static final int ROOT_BATCH_SIZE = 100;
+  private static final int MAX_IDS_PER_QUERY = 1000;
+
+  private final Service<NodeId, Node> nodeService;
+  private final User user;
+  private final List<Select> selects;
+
+  private final ImmutableMap<Tuple2<TypeId, String>, Integer> referenceDepths;
+  private final ImmutableMap<Tuple2<TypeId, String>, Integer> referrerDepths;
+  private final boolean selectRefs;
+  private final boolean selectReferrers;
+
+  private final Cache<NodeId, Node> cache = CacheBuilder.newBuilder().softValues().build();
+
+  // keeps nodes of the current batch strongly reachable until the next batch is prefetched
+  private Map<NodeId, Node> prefetched = new HashMap<>();
+
+  public PrefetchingNodeTreeBuilder(Service<NodeId, Node> nodeService, User user,
+      List<Select> selects) {
+    this.nodeService = nodeService;
+    this.user = user;
+    this.selects = selects;
+    this.referenceDepths = NodeSelects.toReferenceSelectsWithDepths(selects);
+    this.referrerDepths = NodeSelects.toReferrerSelectsWithDepths(selects);
+    this.selectRefs = selects.stream().anyMatch(s -> s instanceof SelectTypeQualifiedReference);
+    this.selectReferrers = selects.stream().anyMatch(s -> s instanceof SelectTypeQualifiedReferrer);
+  }
+
+  /**
+   * Returns trees for given roots. Roots are prefetched in batches as the stream is consumed.
+   */
+  public Stream<NodeTree> toTrees(Stream<Node> roots) {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+        Iterators.partition(roots.iterator(), ROOT_BATCH_SIZE), 0), false)
+        .flatMap(batch -> {
+          prefetch(batch);
+          return batch.stream().map(this::newTree);
+        });
+  }
+
+  public NodeTree toTree(Node root) {
+    List<Node> roots = new ArrayList<>();
+    roots.add(root);
+    prefetch(roots);
+    return newTree(root);
+  }
+
+  private NodeTree newTree(Node node) {
+    NodeTree tree = new LazyLoadingNodeTree(node,
+        new IndexedReferenceLoader(nodeService, user, selects, cache),
+        new IndexedReferrerLoader(nodeService, user, selects, cache));
+
+    tree = new DepthLimitedNodeTree(tree, referenceDepths, referrerDepths);
+
+    return new FilteredNodeTree(tree, ImmutableSet.copyOf(selects));
+  }
+
+  // Mirrors the expansion rules of DepthLimitedNodeTree (depth) and FilteredNodeTree (whether
+  // references or referrers are shown on a given level).
+  private void prefetch(List<Node> roots) {
+    prefetched = new HashMap<>();
+
+    List<Expansion> level = new ArrayList<>();
+    for (Node root : roots) {
+      cache.put(root.identifier(), root);
+      prefetched.put(root.identifier(), root);
+      level.add(new Expansion(root, selectRefs, selectReferrers));
+    }
+
+    for (int depth = 0; !level.isEmpty(); depth++) {
+      Set<Tuple3<NodeId, Boolean, Boolean>> next = new LinkedHashSet<>();
+
+      for (Expansion e : level) {
+        if (e.refs) {
+          collect(e.node.getType(), e.node.getReferences(), referenceDepths, depth,
+              id -> next.add(Tuple.of(id, true, e.referrers)));
+        }
+        if (e.referrers) {
+          collect(e.node.getType(), e.node.getReferrers(), referrerDepths, depth,
+              id -> next.add(Tuple.of(id, e.refs, true)));
+        }
+      }
+
+      load(next.stream().map(t -> t._1).filter(id -> cache.getIfPresent(id) == null));
+
+      level = new ArrayList<>();
+      for (Tuple3<NodeId, Boolean, Boolean> t : next) {
+        Node node = prefetched.get(t._1);
+        if (node == null) {
+          node = cache.getIfPresent(t._1);
+        }
+        if (node != null) {
+          prefetched.put(t._1, node);
+          level.add(new Expansion(node, t._2, t._3));
+        }
+      }
+    }
+  }
+
+  private void collect(TypeId type, Multimap<String, NodeId> values,
+      Map<Tuple2<TypeId, String>, Integer> depths, int depth,
+      Consumer<NodeId> idConsumer) {
+    values.asMap().forEach((attr, ids) -> {
+      if (depth < depths.getOrDefault(Tuple.of(type, attr), 1)) {
+        ids.forEach(idConsumer);
+      }
+    });
+  }
+
+  private void load(Stream<NodeId> ids) {
+    Set<NodeId> distinct = new LinkedHashSet<>();
+    ids.forEach(distinct::add);
+
+    for (List<NodeId> chunk : Iterables.partition(distinct, MAX_IDS_PER_QUERY)) {
+      try (Stream<Node> nodes = nodeService.values(
+          query(selects, NodesByIds.of(chunk), emptyList(), -1), user)) {
+        nodes.forEach(node -> {
+          cache.put(node.identifier(), node);
+          prefetched.put(node.identifier(), node);
+        });
+      }
+    }
+  }
+
+  private static class Expansion {
+
+    private final Node node;
+    private final boolean refs;
+    private final boolean referrers;
+
+    Expansion(Node node, boolean refs, boolean referrers) {
+      this.node = node;
+      this.refs = refs;
+      this.referrers = referrers;
+    }
+
+  }
+
+}
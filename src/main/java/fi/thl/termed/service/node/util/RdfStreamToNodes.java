@@ -0,0 +1,388 @@
+package fi.thl.termed.service.node.util;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static fi.thl.termed.util.RegularExpressions.URN_UUID;
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableSetAndClose;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Ascii;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.PeekingIterator;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.select.SelectId;
+import fi.thl.termed.service.node.select.SelectType;
+import fi.thl.termed.service.node.specification.NodesByIds;
+import fi.thl.termed.service.node.specification.NodesByUris;
+import fi.thl.termed.util.StringUtils;
+import fi.thl.termed.util.URIs;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Selects;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Transforms RDF file into a stream of nodes without reading the file into a model. File is read
+ * twice. First pass collects typed subjects and referenced resources, their ids are then resolved
+ * with batched queries. Second pass emits a node for each typed subject as its triples are parsed.
+ *
+ * Conversion follows {@link RdfModelToNodes} but requires that triples are grouped by subject (as
+ * in typical Turtle or sorted N-Triples). For other input, empty optional is returned.
+ */
+public class RdfStreamToNodes {
+
+  private static final int RESOLVE_BATCH_SIZE = 1000;
+
+  private static final List<Select> SELECT_ID_AND_URI = ImmutableList.of(
+      new SelectId(), new SelectType(), Selects.field("uri"));
+
+  private final Map<String, Type> typesByUri = new HashMap<>();
+  private final Map<String, Integer> typeIndexesByUri = new HashMap<>();
+  private final Map<TypeId, ListMultimap<String, TextAttribute>> textAttributes = new HashMap<>();
+  private final Map<TypeId, ListMultimap<String, ReferenceAttribute>> referenceAttributes =
+      new HashMap<>();
+  private final ListMultimap<String, TypeId> referenceRanges = ArrayListMultimap.create();
+
+  private final Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private final boolean importCodes;
+
+  public RdfStreamToNodes(List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      boolean importCodes) {
+    this.nodeProvider = nodeProvider;
+    this.importCodes = importCodes;
+
+    List<Type> typesWithUri = types.stream()
+        .filter(t -> t.getUri().isPresent())
+        .collect(toList());
+
+    for (int i = 0; i < typesWithUri.size(); i++) {
+      Type type = typesWithUri.get(i);
+      String typeUri = type.getUri().orElseThrow(IllegalStateException::new);
+
+      typesByUri.put(typeUri, type);
+      typeIndexesByUri.put(typeUri, i);
+
+      ListMultimap<String, TextAttribute> textAttributesByUri = ArrayListMultimap.create();
+      type.getTextAttributes().forEach(a ->
+          a.getUri().ifPresent(uri -> textAttributesByUri.put(uri, a)));
+      textAttributes.put(type.identifier(), textAttributesByUri);
+
+      ListMultimap<String, ReferenceAttribute> refAttributesByUri = ArrayListMultimap.create();
+      type.getReferenceAttributes().forEach(a -> a.getUri().ifPresent(uri -> {
+        refAttributesByUri.put(uri, a);
+        if (!referenceRanges.containsEntry(uri, a.getRange())) {
+          referenceRanges.put(uri, a.getRange());
+        }
+      }));
+      referenceAttributes.put(type.identifier(), refAttributesByUri);
+    }
+  }
+
+  /**
+   * Returns lazily parsed nodes of given RDF file or empty if triples in the file are not grouped
+   * by subject. Returned stream should be closed after use.
+   */
+  public Optional<Stream<Node>> apply(Path file, Lang lang) throws IOException {
+    SubjectCollector subjects = new SubjectCollector();
+
+    try (InputStream input = Files.newInputStream(file)) {
+      RDFDataMgr.parse(subjects, input, lang);
+    }
+
+    if (!subjects.grouped) {
+      return Optional.empty();
+    }
+
+    Map<String, NodeId> subjectIds = resolveSubjectIds(subjects.subjectTypes);
+
+    Set<Tuple2<String, TypeId>> externalObjects = subjects.objects.stream()
+        .filter(o -> !subjectIds.containsKey(o._1))
+        .collect(toImmutableSet());
+    Map<Tuple2<String, TypeId>, NodeId> externalObjectIds = resolveExistingIds(externalObjects);
+
+    InputStream input = Files.newInputStream(file);
+    Iterator<Triple> triples = RDFDataMgr.createIteratorTriples(input, lang, null);
+
+    Iterator<Node> nodes = new NodeIterator(Iterators.peekingIterator(triples),
+        subjectIds, externalObjectIds);
+
+    return Optional.of(StreamSupport
+        .stream(spliteratorUnknownSize(nodes, ORDERED | NONNULL), false)
+        .onClose(() -> close(triples, input)));
+  }
+
+  private void close(Iterator<Triple> triples, InputStream input) {
+    try {
+      // stops the parser thread feeding the iterator
+      if (triples instanceof Closeable) {
+        ((Closeable) triples).close();
+      }
+      input.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Map<String, NodeId> resolveSubjectIds(Map<String, TypeId> subjectTypes) {
+    Map<String, NodeId> subjectIds = new HashMap<>();
+
+    for (List<Map.Entry<String, TypeId>> batch :
+        Iterables.partition(subjectTypes.entrySet(), RESOLVE_BATCH_SIZE)) {
+
+      Map<Tuple2<String, TypeId>, NodeId> existingIds = resolveExistingIds(batch.stream()
+          .map(e -> Tuple.of(e.getKey(), e.getValue()))
+          .collect(toImmutableList()));
+
+      for (Map.Entry<String, TypeId> subjectType : batch) {
+        String uri = subjectType.getKey();
+        TypeId type = subjectType.getValue();
+
+        NodeId id = existingIds.get(Tuple.of(uri, type));
+        if (id == null) {
+          id = extractUrnUuid(uri)
+              .map(uuid -> NodeId.of(uuid, type))
+              .orElseGet(() -> NodeId.of(nameUUIDFromString(uri), type));
+        }
+
+        subjectIds.put(uri, id);
+      }
+    }
+
+    return subjectIds;
+  }
+
+  /**
+   * Resolves existing nodes for given uri and type pairs. Each batch is resolved with one query by
+   * uri and one query by urn uuid and name uuid candidate ids. Precedence follows {@link
+   * RdfModelToNodes}: uri, urn uuid, and then name uuid.
+   */
+  private Map<Tuple2<String, TypeId>, NodeId> resolveExistingIds(
+      Iterable<Tuple2<String, TypeId>> uriAndTypes) {
+    Map<Tuple2<String, TypeId>, NodeId> resolved = new HashMap<>();
+
+    for (List<Tuple2<String, TypeId>> batch :
+        Iterables.partition(uriAndTypes, RESOLVE_BATCH_SIZE)) {
+
+      Map<Tuple2<String, TypeId>, NodeId> idsByUri = new HashMap<>();
+      forEachAndClose(nodeProvider.apply(new Query<>(SELECT_ID_AND_URI,
+          NodesByUris.of(batch.stream().map(t -> t._1).collect(toImmutableSet())))),
+          node -> node.getUri().ifPresent(uri ->
+              idsByUri.putIfAbsent(Tuple.of(uri, node.getType()), node.identifier())));
+
+      Set<NodeId> candidateIds = batch.stream()
+          .flatMap(t -> candidateIds(t._1, t._2).stream())
+          .collect(toImmutableSet());
+      Set<NodeId> existingCandidateIds = candidateIds.isEmpty() ? ImmutableSet.of() :
+          toImmutableSetAndClose(nodeProvider.apply(
+              new Query<>(SELECT_ID_AND_URI, NodesByIds.of(candidateIds)))
+              .map(Node::identifier));
+
+      for (Tuple2<String, TypeId> uriAndType : batch) {
+        NodeId id = idsByUri.get(uriAndType);
+        if (id == null) {
+          id = candidateIds(uriAndType._1, uriAndType._2).stream()
+              .filter(existingCandidateIds::contains)
+              .findFirst().orElse(null);
+        }
+        if (id != null) {
+          resolved.put(uriAndType, id);
+        }
+      }
+    }
+
+    return resolved;
+  }
+
+  private List<NodeId> candidateIds(String uri, TypeId type) {
+    List<NodeId> candidates = new ArrayList<>(2);
+    extractUrnUuid(uri).ifPresent(uuid -> candidates.add(NodeId.of(uuid, type)));
+    candidates.add(NodeId.of(nameUUIDFromString(uri), type));
+    return candidates;
+  }
+
+  private Optional<UUID> extractUrnUuid(String uri) {
+    return uri.matches(URN_UUID)
+        ? Optional.of(UUIDs.fromString(uri.substring("urn:uuid:".length())))
+        : Optional.empty();
+  }
+
+  /**
+   * First pass sink. Collects subject types and objects of reference attributes, and checks that
+   * triples of each subject are contiguous.
+   */
+  private class SubjectCollector extends StreamRDFBase {
+
+    private final Map<String, TypeId> subjectTypes = new LinkedHashMap<>();
+    private final Map<String, Integer> subjectTypeIndexes = new HashMap<>();
+    private final Set<Tuple2<String, TypeId>> objects = new HashSet<>();
+
+    private final Set<String> completedSubjects = new HashSet<>();
+    private org.apache.jena.graph.Node currentSubject;
+    private boolean grouped = true;
+
+    @Override
+    public void triple(Triple triple) {
+      org.apache.jena.graph.Node subject = triple.getSubject();
+
+      if (!subject.equals(currentSubject)) {
+        if (currentSubject != null && currentSubject.isURI()) {
+          completedSubjects.add(currentSubject.getURI());
+        }
+        if (subject.isURI() && completedSubjects.contains(subject.getURI())) {
+          grouped = false;
+        }
+        currentSubject = subject;
+      }
+
+      if (!subject.isURI() || !triple.getObject().isURI()) {
+        return;
+      }
+
+      String predicateUri = triple.getPredicate().getURI();
+      String objectUri = triple.getObject().getURI();
+
+      if (predicateUri.equals(RDF.type.getURI())) {
+        Type type = typesByUri.get(objectUri);
+        // as in model based conversion, last matching type in type list order wins
+        if (type != null) {
+          int index = typeIndexesByUri.get(objectUri);
+          Integer previousIndex = subjectTypeIndexes.get(subject.getURI());
+          if (previousIndex == null || previousIndex < index) {
+            subjectTypes.put(subject.getURI(), type.identifier());
+            subjectTypeIndexes.put(subject.getURI(), index);
+          }
+        }
+      }
+
+      for (TypeId range : referenceRanges.get(predicateUri)) {
+        objects.add(Tuple.of(objectUri, range));
+      }
+    }
+
+  }
+
+  /**
+   * Second pass. Groups contiguous triples by subject and converts each group into a node.
+   */
+  private class NodeIterator extends AbstractIterator<Node> {
+
+    private final PeekingIterator<Triple> triples;
+    private final Map<String, NodeId> subjectIds;
+    private final Map<Tuple2<String, TypeId>, NodeId> externalObjectIds;
+
+    NodeIterator(PeekingIterator<Triple> triples, Map<String, NodeId> subjectIds,
+        Map<Tuple2<String, TypeId>, NodeId> externalObjectIds) {
+      this.triples = triples;
+      this.subjectIds = subjectIds;
+      this.externalObjectIds = externalObjectIds;
+    }
+
+    @Override
+    protected Node computeNext() {
+      while (triples.hasNext()) {
+        Triple first = triples.next();
+        List<Triple> group = new ArrayList<>();
+        group.add(first);
+
+        while (triples.hasNext() && triples.peek().getSubject().equals(first.getSubject())) {
+          group.add(triples.next());
+        }
+
+        String subjectUri = first.getSubject().isURI() ? first.getSubject().getURI() : null;
+        NodeId id = subjectUri != null ? subjectIds.get(subjectUri) : null;
+
+        if (id != null) {
+          return toNode(id, subjectUri, group);
+        }
+      }
+
+      return endOfData();
+    }
+
+    private Node toNode(NodeId id, String uri, List<Triple> triples) {
+      Node.Builder node = Node.builder()
+          .id(id)
+          .uri(uri)
+          .code(importCodes ? StringUtils.normalize(URIs.localName(uri)) : null);
+
+      ListMultimap<String, TextAttribute> textAttributesByUri = textAttributes.get(id.getType());
+      ListMultimap<String, ReferenceAttribute> refAttributesByUri =
+          referenceAttributes.get(id.getType());
+
+      for (Triple triple : triples) {
+        String predicateUri = triple.getPredicate().getURI();
+        org.apache.jena.graph.Node object = triple.getObject();
+
+        if (object.isLiteral()) {
+          for (TextAttribute textAttribute : textAttributesByUri.get(predicateUri)) {
+            node.addUniqueProperty(textAttribute.getId(), new StrictLangValue(
+                Ascii.truncate(object.getLiteralLanguage(), 2, ""),
+                object.getLiteralLexicalForm(),
+                textAttribute.getRegex()));
+          }
+        } else if (object.isURI()) {
+          for (ReferenceAttribute refAttribute : refAttributesByUri.get(predicateUri)) {
+            resolveObject(object.getURI(), refAttribute.getRange())
+                .ifPresent(o -> node.addUniqueReference(refAttribute.getId(), o));
+          }
+        }
+      }
+
+      return node.build();
+    }
+
+    private Optional<NodeId> resolveObject(String uri, TypeId range) {
+      NodeId subjectId = subjectIds.get(uri);
+      if (subjectId != null) {
+        return subjectId.getType().equals(range) ? Optional.of(subjectId) : Optional.empty();
+      }
+      return Optional.ofNullable(externalObjectIds.get(Tuple.of(uri, range)));
+    }
+
+  }
+
+}
@@ -34,14 +34,29 @@ import java.util.function.Function;
  */
 public class TypeToGraphQLType implements Function<Type, GraphQLType> {
 
-  private final BiFunction<Node, String, ImmutableList<Node>> referenceProvider;
-  private final BiFunction<Node, String, ImmutableList<Node>> referrerProvider;
+  private final Function<DataFetchingEnvironment, BiFunction<Node, String, ImmutableList<Node>>>
+      referenceProvider;
+  private final Function<DataFetchingEnvironment, BiFunction<Node, String, ImmutableList<Node>>>
+      referrerProvider;
   private final Map<TypeId, List<ReferenceAttribute>> referenceAttributesByRange;
 
   public TypeToGraphQLType(
       List<Type> allTypes,
       BiFunction<Node, String, ImmutableList<Node>> referenceProvider,
       BiFunction<Node, String, ImmutableList<Node>> referrerProvider) {
+    this(allTypes, env -> referenceProvider, env -> referrerProvider);
+  }
+
+  /**
+   * Reference and referrer providers are resolved on each fetch (e.g. from execution context) so
+   * that built GraphQL types can be shared between executions and users.
+   */
+  public TypeToGraphQLType(
+      List<Type> allTypes,
+      Function<DataFetchingEnvironment, BiFunction<Node, String, ImmutableList<Node>>>
+          referenceProvider,
+      Function<DataFetchingEnvironment, BiFunction<Node, String, ImmutableList<Node>>>
+          referrerProvider) {
     this.referenceProvider = referenceProvider;
     this.referrerProvider = referrerProvider;
     this.referenceAttributesByRange = allTypes.stream()
@@ -108,7 +123,7 @@ public class TypeToGraphQLType implements Function<Type, GraphQLType> {
         .type(list(GraphQLTypeReference.typeRef(toGraphQlTypeName(attr.getRange()))))
         // here env.getSource returns the full Node, not just 'references' multimap
         // (see dataFetcher defined for references field)
-        .dataFetcher(env -> referenceProvider.apply(env.getSource(), attr.getId()))
+        .dataFetcher(env -> referenceProvider.apply(env).apply(env.getSource(), attr.getId()))
         .build();
   }
 
@@ -134,7 +149,7 @@ public class TypeToGraphQLType implements Function<Type, GraphQLType> {
         .type(list(GraphQLTypeReference.typeRef(toGraphQlTypeName(attr.getDomain()))))
         // here env.getSource returns the full Node, not just 'referrers' multimap
         // (see dataFetcher defined for referrers field)
-        .dataFetcher(env -> referrerProvider.apply(env.getSource(), attr.getId()))
+        .dataFetcher(env -> referrerProvider.apply(env).apply(env.getSource(), attr.getId()))
         .build();
   }
 
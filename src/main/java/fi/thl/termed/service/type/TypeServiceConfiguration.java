@@ -2,7 +2,6 @@ package fi.thl.termed.service.type;
 
 import static fi.thl.termed.util.EventBusUtils.register;
 import static fi.thl.termed.util.dao.CachedSystemDao.cache;
-import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.getDatabaseProductName;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -35,11 +34,13 @@ import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.service.MetricsService;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -58,6 +59,9 @@ public class TypeServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   // permission system DAO instances are shared internally
   private SystemDao<ObjectRolePermission<TypeId>, GrantedPermission>
       typePermissionSystemDao;
@@ -75,6 +79,7 @@ public class TypeServiceConfiguration {
         getClass().getPackage().getName() + ".WriteLoggingService");
     service = new ProfilingService<>(service,
         getClass().getPackage().getName() + ".ProfilingService", 500);
+    service = new MetricsService<>(service, meterRegistry, "type", "service");
     service = new InitializingTypeService(service);
     service = new ReadWriteSynchronizedService<>(service);
 
@@ -107,7 +112,7 @@ public class TypeServiceConfiguration {
         typePropertyDao(),
         textAttributeRepository(),
         referenceAttributeRepository(),
-        getDatabaseProductName(dataSource).equalsIgnoreCase("postgresql") ? 1 : -1);
+        -1);
   }
 
   private Dao<TypeId, Type> typeDao() {
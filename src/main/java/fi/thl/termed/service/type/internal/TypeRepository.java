@@ -1,6 +1,7 @@
 package fi.thl.termed.service.type.internal;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static fi.thl.termed.util.collect.MapUtils.leftValues;
 import static fi.thl.termed.util.collect.MultimapUtils.toImmutableMultimap;
 import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
@@ -10,6 +11,7 @@ import static fi.thl.termed.util.service.SaveMode.UPSERT;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -29,6 +31,7 @@ import fi.thl.termed.domain.transform.PropertyValueDtoToModel;
 import fi.thl.termed.domain.transform.RolePermissionsDtoToModel;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.Dao;
+import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.service.AbstractRepository;
@@ -207,6 +210,15 @@ public class TypeRepository extends AbstractRepository<TypeId, Type> {
     return typeDao.exists(id, user);
   }
 
+  // all keys are read with one (cached) query, there are typically only a few of them
+  @Override
+  protected Set<TypeId> existingKeys(List<TypeId> ids, User user) {
+    try (Stream<TypeId> keys = typeDao.keys(new MatchAll<>(), user)) {
+      Set<TypeId> requested = ImmutableSet.copyOf(ids);
+      return keys.filter(requested::contains).collect(toImmutableSet());
+    }
+  }
+
   @Override
   public Stream<Type> values(Query<TypeId, Type> spec, User user) {
     return typeDao.values(spec.getWhere(), user).map(cls -> populateValue(cls, user));
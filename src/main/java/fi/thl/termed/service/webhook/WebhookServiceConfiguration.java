@@ -8,8 +8,10 @@ import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Webhook;
 import fi.thl.termed.service.webhook.internal.JdbcWebhookDao;
+import fi.thl.termed.service.webhook.internal.JdbcWebhookOutboxDao;
 import fi.thl.termed.service.webhook.internal.NodeEventPostingService;
 import fi.thl.termed.util.dao.AuthorizedDao;
+import fi.thl.termed.util.dao.JdbcSystemSequenceDao;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.DaoForwardingRepository;
@@ -17,9 +19,11 @@ import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.UUID;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -39,6 +43,18 @@ public class WebhookServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${fi.thl.termed.webhook.queueCapacity:10000}")
+  private int queueCapacity;
+  @Value("${fi.thl.termed.webhook.concurrency:1}")
+  private int concurrency;
+  @Value("${fi.thl.termed.webhook.batchSize:1000}")
+  private int batchSize;
+  @Value("${fi.thl.termed.webhook.maxAttempts:5}")
+  private int maxAttempts;
+
   @Bean
   public Service<UUID, Webhook> webhookService() {
     SystemDao<UUID, Webhook> dao = register(eventBus, cache(new JdbcWebhookDao(dataSource)));
@@ -59,7 +75,10 @@ public class WebhookServiceConfiguration {
 
   @Bean
   public NodeEventPostingService eventPostingService(Service<UUID, Webhook> webhookService) {
-    NodeEventPostingService service = new NodeEventPostingService(webhookService(), gson);
+    NodeEventPostingService service = new NodeEventPostingService(webhookService(),
+        new JdbcWebhookOutboxDao(dataSource),
+        new JdbcSystemSequenceDao(dataSource, "webhook_outbox_seq"),
+        gson, meterRegistry, queueCapacity, concurrency, batchSize, maxAttempts);
     eventBus.register(service);
     return service;
   }
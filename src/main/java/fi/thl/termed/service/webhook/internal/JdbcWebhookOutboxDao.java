@@ -0,0 +1,71 @@
+package fi.thl.termed.service.webhook.internal;
+
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.dao.AbstractJdbcDao;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+public class JdbcWebhookOutboxDao extends AbstractJdbcDao<Long, WebhookOutboxEntry> {
+
+  public JdbcWebhookOutboxDao(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  @Override
+  public void insert(Long id, WebhookOutboxEntry entry) {
+    jdbcTemplate.update(
+        "insert into webhook_outbox (id, webhook_id, payload, attempts, next_attempt) "
+            + "values (?, ?, ?, ?, ?)",
+        id, entry.getWebhookId(), entry.getPayload(), entry.getAttempts(),
+        entry.getNextAttempt());
+  }
+
+  @Override
+  public void update(Long id, WebhookOutboxEntry entry) {
+    jdbcTemplate.update(
+        "update webhook_outbox set attempts = ?, next_attempt = ? where id = ?",
+        entry.getAttempts(), entry.getNextAttempt(), id);
+  }
+
+  @Override
+  public void delete(Long id) {
+    jdbcTemplate.update("delete from webhook_outbox where id = ?", id);
+  }
+
+  @Override
+  protected <E> Stream<E> get(SqlSpecification<Long, WebhookOutboxEntry> specification,
+      RowMapper<E> mapper) {
+    return jdbcTemplate.queryForStream(
+        String.format("select * from webhook_outbox where %s", specification.sqlQueryTemplate()),
+        specification.sqlQueryParameters(), mapper);
+  }
+
+  @Override
+  public boolean exists(Long id) {
+    return jdbcTemplate.queryForOptional("select count(*) from webhook_outbox where id = ?",
+        Long.class, id).orElseThrow(IllegalStateException::new) > 0;
+  }
+
+  @Override
+  protected <E> Optional<E> get(Long id, RowMapper<E> mapper) {
+    return jdbcTemplate.queryForFirst("select * from webhook_outbox where id = ?", mapper, id);
+  }
+
+  @Override
+  protected RowMapper<Long> buildKeyMapper() {
+    return (rs, rowNum) -> rs.getLong("id");
+  }
+
+  @Override
+  protected RowMapper<WebhookOutboxEntry> buildValueMapper() {
+    return (rs, rowNum) -> new WebhookOutboxEntry(
+        UUIDs.fromString(rs.getString("webhook_id")),
+        rs.getString("payload"),
+        rs.getInt("attempts"),
+        rs.getTimestamp("next_attempt").toLocalDateTime());
+  }
+
+}
@@ -1,23 +1,52 @@
 package fi.thl.termed.service.webhook.internal;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static fi.thl.termed.service.webhook.internal.WebhookDeliveryQueue.coalesce;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import com.google.common.eventbus.Subscribe;
 import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.ApplicationShutdownEvent;
 import fi.thl.termed.domain.event.NodeEvent;
 import fi.thl.termed.domain.event.WebEvent;
+import fi.thl.termed.service.webhook.internal.WebhookDeliveryQueue.QueuedEvent;
+import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.concurrent.FutureUtils;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemSequenceDao;
 import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.Service;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.StringEntity;
@@ -26,61 +55,428 @@ import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Posts node events to webhooks. Events are added to bounded per webhook queues and delivered
+ * asynchronously, consecutive events of the same type and user are coalesced into a single
+ * payload. Failed deliveries are retried with exponential backoff and finally moved to a persisted
+ * outbox which is retried periodically on a separate scheduler, one non-blocking post at a time
+ * per webhook. Events that do not fit to a full queue are moved directly
+ * to the outbox so that slow webhooks never block the publisher (except for sync events which
+ * wait for their delivery as before). Delivery is at least once, order is preserved unless
+ * events are moved to the outbox.
+ */
 public class NodeEventPostingService {
 
+  private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final long MAX_OUTBOX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final long OUTBOX_INTERVAL_SECONDS = 30;
+  private static final int MAX_OUTBOX_ATTEMPTS = 50;
+  private static final int OUTBOX_BATCH_SIZE = 100;
+
+  private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+  private static final int SOCKET_TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(1);
+
   private Logger log = LoggerFactory.getLogger(getClass());
   private User eventBroadcaster = new User("httpEventBroadcaster", "", AppRole.SUPERUSER);
 
   private Service<UUID, Webhook> webhookService;
+  private SystemDao<Long, WebhookOutboxEntry> outboxDao;
+  private SystemSequenceDao outboxSequence;
   private Gson gson;
+  private MeterRegistry meterRegistry;
+
+  private int queueCapacity;
+  private int concurrency;
+  private int batchSize;
+  private int maxAttempts;
 
+  private Map<UUID, WebhookDeliveryQueue> queues = new ConcurrentHashMap<>();
+  private Set<UUID> gaugedWebhooks = ConcurrentHashMap.newKeySet();
+  private Set<UUID> outboxInFlight = ConcurrentHashMap.newKeySet();
+  private volatile boolean closed = false;
+
+  private ScheduledExecutorService executor;
+  private ScheduledExecutorService outboxExecutor;
   private CloseableHttpAsyncClient httpClient;
-  private FutureCallback<HttpResponse> errorCallback = new ErrorLoggingCallback();
 
-  public NodeEventPostingService(Service<UUID, Webhook> webhookService, Gson gson) {
-    this.gson = gson;
+  /**
+   * @param queueCapacity max number of events queued per webhook
+   * @param concurrency max number of concurrent deliveries per webhook
+   * @param batchSize max number of node ids coalesced into a single payload
+   * @param maxAttempts number of delivery attempts before moving payload to outbox
+   */
+  public NodeEventPostingService(Service<UUID, Webhook> webhookService,
+      SystemDao<Long, WebhookOutboxEntry> outboxDao, SystemSequenceDao outboxSequence,
+      Gson gson, MeterRegistry meterRegistry,
+      int queueCapacity, int concurrency, int batchSize, int maxAttempts) {
     this.webhookService = webhookService;
-    this.httpClient = HttpAsyncClients.createMinimal();
-    httpClient.start();
+    this.outboxDao = outboxDao;
+    this.outboxSequence = outboxSequence;
+    this.gson = gson;
+    this.meterRegistry = meterRegistry;
+    this.queueCapacity = queueCapacity;
+    this.concurrency = concurrency;
+    this.batchSize = batchSize;
+    this.maxAttempts = maxAttempts;
+
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executor = Executors.newScheduledThreadPool(2, r -> {
+      Thread thread = new Thread(r, "webhook-delivery-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // outbox is replayed separately so that failing webhooks don't hold up live deliveries
+    this.outboxExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "webhook-outbox");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.outboxExecutor.scheduleWithFixedDelay(this::deliverOutbox,
+        OUTBOX_INTERVAL_SECONDS, OUTBOX_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    this.httpClient = HttpAsyncClients.custom()
+        .setMaxConnPerRoute(Math.max(concurrency, 2))
+        .setMaxConnTotal(Math.max(concurrency * 10, 20))
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+            .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+            .build())
+        .build();
+    this.httpClient.start();
   }
 
   @Subscribe
   public void subscribe(NodeEvent nodeEvent) {
-    try (Stream<Webhook> hooks = webhookService
+    List<Webhook> hooks;
+    try (Stream<Webhook> hookStream = webhookService
         .values(new Query<>(new MatchAll<>()), eventBroadcaster)) {
-      hooks.forEach(hook -> {
-        HttpPost request = new HttpPost(hook.getUrl());
-        request.addHeader("Content-Type", "application/json");
-        request.setEntity(new StringEntity(gson.toJson(new WebEvent(nodeEvent)), UTF_8));
+      hooks = hookStream.collect(toList());
+    }
+
+    // gauges of removed webhooks are left registered (micrometer 1.0 can't remove meters),
+    // they read queues by id and report zero once the queue is dropped
+    queues.keySet().retainAll(hooks.stream().map(Webhook::getId).collect(toSet()));
+
+    long now = System.currentTimeMillis();
+    List<CompletableFuture<Void>> completions = new ArrayList<>();
+
+    for (Webhook hook : hooks) {
+      WebhookDeliveryQueue queue = queues.computeIfAbsent(hook.getId(), id -> newQueue(hook));
+      queue.setWebhook(hook);
+
+      QueuedEvent queuedEvent = new QueuedEvent(nodeEvent, now);
+
+      if (!closed && queue.offer(queuedEvent)) {
+        completions.add(queuedEvent.getCompletion());
+        executor.execute(() -> deliver(queue));
+      } else {
+        saveToOutbox(hook, gson.toJson(new WebEvent(nodeEvent)), 0, 0);
+      }
+    }
+
+    if (nodeEvent.isSync()) {
+      FutureUtils.waitFor(
+          CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0])),
+          1, TimeUnit.MINUTES,
+          e -> log.warn("{} {} {}", nodeEvent, e.getClass(), e.getMessage()));
+    }
+  }
+
+  private WebhookDeliveryQueue newQueue(Webhook hook) {
+    UUID id = hook.getId();
+
+    if (gaugedWebhooks.add(id)) {
+      // gauges don't hold on to the queue, it is released when the webhook is removed
+      Gauge.builder("termed.webhook.queue.depth", queues,
+          q -> Optional.ofNullable(q.get(id)).map(WebhookDeliveryQueue::size).orElse(0))
+          .description("Number of events waiting for delivery")
+          .tag("webhook", id.toString())
+          .register(meterRegistry);
+      TimeGauge.builder("termed.webhook.lag", queues, TimeUnit.MILLISECONDS,
+          q -> Optional.ofNullable(q.get(id))
+              .map(queue -> queue.oldestAgeMillis(System.currentTimeMillis())).orElse(0L))
+          .description("Age of the oldest event waiting for delivery")
+          .tag("webhook", id.toString())
+          .register(meterRegistry);
+    }
+
+    return new WebhookDeliveryQueue(hook, queueCapacity, concurrency);
+  }
 
-        Future<HttpResponse> future = httpClient.execute(request, errorCallback);
+  private void deliver(WebhookDeliveryQueue queue) {
+    while (queue.tryAcquire()) {
+      List<QueuedEvent> batch = queue.pollBatch(batchSize);
 
-        if (nodeEvent.isSync()) {
-          FutureUtils.waitFor(future, 1, TimeUnit.MINUTES,
-              e -> log.warn("{} {} {}", hook, e.getClass(), e.getMessage()));
+      if (batch.isEmpty()) {
+        queue.release();
+        // re-check as events may have been added while the permit was held
+        if (queue.size() == 0) {
+          return;
+        }
+        continue;
+      }
+
+      post(queue, batch, gson.toJson(new WebEvent(coalesce(batch))), 1);
+    }
+  }
+
+  private void post(WebhookDeliveryQueue queue, List<QueuedEvent> batch, String payload,
+      int attempt) {
+    try {
+      httpClient.execute(request(queue.getWebhook(), payload),
+          new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+              int status = response.getStatusLine().getStatusCode();
+              if (isSuccess(status)) {
+                onExecutor(() -> delivered(queue, batch));
+              } else if (isRetryable(status)) {
+                onExecutor(() -> retryOrGiveUp(queue, batch, payload, attempt, "HTTP " + status));
+              } else {
+                onExecutor(() -> rejected(queue, batch, status));
+              }
+            }
+
+            @Override
+            public void failed(Exception e) {
+              onExecutor(() -> retryOrGiveUp(queue, batch, payload, attempt, e.toString()));
+            }
+
+            @Override
+            public void cancelled() {
+              onExecutor(() -> retryOrGiveUp(queue, batch, payload, attempt, "cancelled"));
+            }
+          });
+    } catch (RuntimeException e) {
+      retryOrGiveUp(queue, batch, payload, attempt, e.toString());
+    }
+  }
+
+  // http callbacks are run on the io reactor thread, hand over possibly blocking work
+  private void onExecutor(Runnable action) {
+    if (!closed) {
+      executor.execute(action);
+    }
+  }
+
+  private void delivered(WebhookDeliveryQueue queue, List<QueuedEvent> batch) {
+    meterRegistry.counter("termed.webhook.delivered", "webhook", webhookId(queue))
+        .increment(batch.size());
+    complete(queue, batch);
+  }
+
+  private void rejected(WebhookDeliveryQueue queue, List<QueuedEvent> batch, int status) {
+    log.warn("{} rejected {} events with HTTP {}", queue.getWebhook(), batch.size(), status);
+    meterRegistry.counter("termed.webhook.failures", "webhook", webhookId(queue)).increment();
+    complete(queue, batch);
+  }
+
+  private void retryOrGiveUp(WebhookDeliveryQueue queue, List<QueuedEvent> batch,
+      String payload, int attempt, String reason) {
+    meterRegistry.counter("termed.webhook.failures", "webhook", webhookId(queue)).increment();
+
+    if (closed) {
+      // events are already moved to outbox on shutdown
+      return;
+    }
+
+    if (attempt < maxAttempts) {
+      long delay = retryDelayMillis(attempt, MAX_RETRY_DELAY_MILLIS);
+      log.debug("Failed to post {} events to {} ({}), retrying in {} ms",
+          batch.size(), queue.getWebhook(), reason, delay);
+      executor.schedule(() -> post(queue, batch, payload, attempt + 1),
+          delay, TimeUnit.MILLISECONDS);
+    } else {
+      log.warn("Failed to post {} events to {} ({}), moving to outbox after {} attempts",
+          batch.size(), queue.getWebhook(), reason, attempt);
+      saveToOutbox(queue.getWebhook(), payload, attempt,
+          retryDelayMillis(attempt, MAX_OUTBOX_RETRY_DELAY_MILLIS));
+      complete(queue, batch);
+    }
+  }
+
+  private void complete(WebhookDeliveryQueue queue, List<QueuedEvent> batch) {
+    queue.done(batch);
+    batch.forEach(queuedEvent -> queuedEvent.getCompletion().complete(null));
+    queue.release();
+    onExecutor(() -> deliver(queue));
+  }
+
+  private void saveToOutbox(Webhook hook, String payload, int attempts, long delayMillis) {
+    try {
+      outboxDao.insert(outboxSequence.getAndAdvance(), new WebhookOutboxEntry(
+          hook.getId(), payload, attempts,
+          LocalDateTime.now().plus(delayMillis, ChronoUnit.MILLIS)));
+      meterRegistry.counter("termed.webhook.outboxed", "webhook", hook.getId().toString())
+          .increment();
+    } catch (RuntimeException e) {
+      log.error("Failed to save payload for " + hook + " to outbox", e);
+    }
+  }
+
+  // Posts due outbox entries, oldest first. Entries of a webhook are posted one at a time without
+  // blocking, webhooks still being posted to from a previous run are skipped.
+  private void deliverOutbox() {
+    try {
+      Map<UUID, Deque<Tuple2<Long, WebhookOutboxEntry>>> entriesByWebhook = new LinkedHashMap<>();
+
+      toListAndClose(outboxDao.entries(
+          new WebhookOutboxEntriesDue(LocalDateTime.now(), OUTBOX_BATCH_SIZE)))
+          .forEach(entry -> entriesByWebhook
+              .computeIfAbsent(entry._2.getWebhookId(), id -> new ArrayDeque<>())
+              .add(entry));
+
+      entriesByWebhook.forEach((webhookId, entries) -> {
+        if (outboxInFlight.add(webhookId)) {
+          deliverOutboxEntries(webhookId, entries);
         }
       });
+    } catch (RuntimeException e) {
+      log.error("Failed to deliver webhook outbox", e);
     }
   }
 
-  /**
-   * Logs failed http requests.
-   */
-  private class ErrorLoggingCallback implements FutureCallback<HttpResponse> {
+  private void deliverOutboxEntries(UUID webhookId,
+      Deque<Tuple2<Long, WebhookOutboxEntry>> entries) {
+    try {
+      if (closed || entries.isEmpty()) {
+        outboxInFlight.remove(webhookId);
+        return;
+      }
+
+      Optional<Webhook> hook = webhookService.get(webhookId, eventBroadcaster);
+
+      if (!hook.isPresent()) {
+        entries.forEach(entry -> outboxDao.delete(entry._1));
+        outboxInFlight.remove(webhookId);
+        return;
+      }
+
+      Tuple2<Long, WebhookOutboxEntry> entry = entries.poll();
 
-    @Override
-    public void completed(HttpResponse response) {
+      postOutboxEntry(hook.get(), entry._2.getPayload(), success -> {
+        try {
+          if (outboxEntryPosted(hook.get(), entry._1, entry._2, success)) {
+            deliverOutboxEntries(webhookId, entries);
+          } else {
+            // later entries are left for next run to keep them in order
+            outboxInFlight.remove(webhookId);
+          }
+        } catch (RuntimeException e) {
+          outboxInFlight.remove(webhookId);
+          log.error("Failed to deliver webhook outbox", e);
+        }
+      });
+    } catch (RuntimeException e) {
+      outboxInFlight.remove(webhookId);
+      log.error("Failed to deliver webhook outbox", e);
     }
+  }
+
+  private void postOutboxEntry(Webhook hook, String payload, Consumer<Boolean> onPosted) {
+    try {
+      httpClient.execute(request(hook, payload), new FutureCallback<HttpResponse>() {
+        @Override
+        public void completed(HttpResponse response) {
+          boolean success = isSuccess(response.getStatusLine().getStatusCode());
+          onOutboxExecutor(hook, () -> onPosted.accept(success));
+        }
+
+        @Override
+        public void failed(Exception e) {
+          log.debug("Failed to post outbox payload to {} ({})", hook, e.toString());
+          onOutboxExecutor(hook, () -> onPosted.accept(false));
+        }
 
-    @Override
-    public void failed(Exception e) {
-      log.warn(e.getMessage());
+        @Override
+        public void cancelled() {
+          onOutboxExecutor(hook, () -> onPosted.accept(false));
+        }
+      });
+    } catch (RuntimeException e) {
+      log.debug("Failed to post outbox payload to {} ({})", hook, e.toString());
+      onPosted.accept(false);
     }
+  }
 
-    @Override
-    public void cancelled() {
+  private void onOutboxExecutor(Webhook hook, Runnable action) {
+    if (closed) {
+      outboxInFlight.remove(hook.getId());
+      return;
     }
+    outboxExecutor.execute(action);
+  }
 
+  // returns true if entry was delivered
+  private boolean outboxEntryPosted(Webhook hook, Long id, WebhookOutboxEntry entry,
+      boolean success) {
+    if (success) {
+      outboxDao.delete(id);
+      meterRegistry.counter("termed.webhook.delivered", "webhook", hook.getId().toString())
+          .increment();
+      return true;
+    }
+
+    meterRegistry.counter("termed.webhook.failures", "webhook", hook.getId().toString())
+        .increment();
+
+    int attempts = entry.getAttempts() + 1;
+
+    if (attempts >= MAX_OUTBOX_ATTEMPTS) {
+      log.error("Dropping payload for {} after {} attempts", hook, attempts);
+      outboxDao.delete(id);
+    } else {
+      outboxDao.update(id, new WebhookOutboxEntry(entry.getWebhookId(), entry.getPayload(),
+          attempts, LocalDateTime.now().plus(
+          retryDelayMillis(attempts, MAX_OUTBOX_RETRY_DELAY_MILLIS), ChronoUnit.MILLIS)));
+    }
+
+    return false;
+  }
+
+  private HttpPost request(Webhook hook, String payload) {
+    HttpPost request = new HttpPost(hook.getUrl());
+    request.addHeader("Content-Type", "application/json");
+    request.setEntity(new StringEntity(payload, UTF_8));
+    return request;
+  }
+
+  private boolean isSuccess(int status) {
+    return status >= 200 && status < 300;
+  }
+
+  private boolean isRetryable(int status) {
+    return status >= 500 || status == 408 || status == 429;
+  }
+
+  private long retryDelayMillis(int attempt, long maxDelayMillis) {
+    return Math.min(INITIAL_RETRY_DELAY_MILLIS << Math.min(attempt - 1, 30), maxDelayMillis);
+  }
+
+  private String webhookId(WebhookDeliveryQueue queue) {
+    return queue.getWebhook().getId().toString();
+  }
+
+  /**
+   * Stops delivery and moves all undelivered events to outbox.
+   */
+  @Subscribe
+  public void closeOn(ApplicationShutdownEvent e) {
+    closed = true;
+    executor.shutdownNow();
+    outboxExecutor.shutdownNow();
+
+    queues.values().forEach(queue -> queue.drainAll(batchSize).forEach(batch -> {
+      saveToOutbox(queue.getWebhook(), gson.toJson(new WebEvent(coalesce(batch))), 0, 0);
+      batch.forEach(queuedEvent -> queuedEvent.getCompletion().complete(null));
+    }));
+
+    try {
+      httpClient.close();
+    } catch (IOException ex) {
+      log.warn("Failed to close http client", ex);
+    }
   }
 
 }
@@ -0,0 +1,180 @@
+package fi.thl.termed.service.webhook.internal;
+
+import static java.util.Collections.newSetFromMap;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded queue of node events waiting for delivery to a single webhook. Concurrent deliveries
+ * are limited by permits, a permit is held from taking a batch until the batch is delivered or
+ * given up (i.e. also while waiting for a retry) which keeps deliveries in order when only one
+ * permit is used.
+ */
+class WebhookDeliveryQueue {
+
+  private volatile Webhook webhook;
+  private final int capacity;
+  private final Semaphore permits;
+
+  // guarded by this
+  private final Deque<QueuedEvent> events = new ArrayDeque<>();
+  private final Set<List<QueuedEvent>> inFlight = newSetFromMap(new IdentityHashMap<>());
+
+  WebhookDeliveryQueue(Webhook webhook, int capacity, int concurrency) {
+    this.webhook = webhook;
+    this.capacity = capacity;
+    this.permits = new Semaphore(concurrency);
+  }
+
+  Webhook getWebhook() {
+    return webhook;
+  }
+
+  void setWebhook(Webhook webhook) {
+    this.webhook = webhook;
+  }
+
+  synchronized boolean offer(QueuedEvent event) {
+    if (events.size() >= capacity) {
+      return false;
+    }
+    events.add(event);
+    return true;
+  }
+
+  boolean tryAcquire() {
+    return permits.tryAcquire();
+  }
+
+  void release() {
+    permits.release();
+  }
+
+  /**
+   * Takes next batch of consecutive events of the same type and user, having at most maxNodes
+   * nodes in total (a single event may exceed the limit). Returns an empty list if queue is empty.
+   */
+  synchronized List<QueuedEvent> pollBatch(int maxNodes) {
+    List<QueuedEvent> batch = new ArrayList<>();
+    int nodeCount = 0;
+
+    while (!events.isEmpty()) {
+      QueuedEvent next = events.peek();
+      int nextNodeCount = next.getEvent().getNodes().size();
+
+      if (!batch.isEmpty() && (!canCoalesce(batch.get(0).getEvent(), next.getEvent())
+          || nodeCount + nextNodeCount > maxNodes)) {
+        break;
+      }
+
+      batch.add(events.poll());
+      nodeCount += nextNodeCount;
+    }
+
+    if (!batch.isEmpty()) {
+      inFlight.add(batch);
+    }
+
+    return batch;
+  }
+
+  synchronized void done(List<QueuedEvent> batch) {
+    inFlight.remove(batch);
+  }
+
+  /**
+   * Removes and returns all in-flight and queued events as batches.
+   */
+  synchronized List<List<QueuedEvent>> drainAll(int maxNodes) {
+    List<List<QueuedEvent>> batches = new ArrayList<>(inFlight);
+    inFlight.clear();
+
+    List<QueuedEvent> batch;
+    while (!(batch = pollBatch(maxNodes)).isEmpty()) {
+      batches.add(batch);
+      inFlight.remove(batch);
+    }
+
+    return batches;
+  }
+
+  synchronized int size() {
+    return events.size();
+  }
+
+  synchronized long oldestAgeMillis(long now) {
+    QueuedEvent oldest = events.peek();
+    return oldest != null ? now - oldest.getEnqueued() : 0;
+  }
+
+  private static boolean canCoalesce(NodeEvent first, NodeEvent next) {
+    return first.getClass() == next.getClass() && Objects.equals(first.getUser(), next.getUser());
+  }
+
+  /**
+   * Merges events of a batch into a single event. Merged event has the date of the last event and
+   * is sync if any of the events is sync.
+   */
+  static NodeEvent coalesce(List<QueuedEvent> batch) {
+    if (batch.size() == 1) {
+      return batch.get(0).getEvent();
+    }
+
+    NodeEvent first = batch.get(0).getEvent();
+    NodeEvent last = batch.get(batch.size() - 1).getEvent();
+
+    ImmutableList.Builder<NodeId> nodes = ImmutableList.builder();
+    boolean sync = false;
+    for (QueuedEvent queuedEvent : batch) {
+      nodes.addAll(queuedEvent.getEvent().getNodes());
+      sync |= queuedEvent.getEvent().isSync();
+    }
+
+    return first instanceof NodeDeletedEvent
+        ? new NodeDeletedEvent(first.getUser(), last.getDate(), sync, nodes.build())
+        : new NodeSavedEvent(first.getUser(), last.getDate(), sync, nodes.build());
+  }
+
+  static class QueuedEvent {
+
+    private final NodeEvent event;
+    private final long enqueued;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    QueuedEvent(NodeEvent event, long enqueued) {
+      this.event = event;
+      this.enqueued = enqueued;
+    }
+
+    NodeEvent getEvent() {
+      return event;
+    }
+
+    long getEnqueued() {
+      return enqueued;
+    }
+
+    /**
+     * Completed when event is delivered or moved to outbox.
+     */
+    CompletableFuture<Void> getCompletion() {
+      return completion;
+    }
+
+  }
+
+}
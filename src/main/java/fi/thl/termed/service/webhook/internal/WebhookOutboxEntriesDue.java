@@ -0,0 +1,31 @@
+package fi.thl.termed.service.webhook.internal;
+
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.time.LocalDateTime;
+
+/**
+ * Selects at most given number of entries due at given time, oldest first. Ordering and limit are
+ * applied only in sql, so the specification should not be combined with others.
+ */
+public class WebhookOutboxEntriesDue extends AbstractSqlSpecification<Long, WebhookOutboxEntry> {
+
+  private LocalDateTime time;
+  private int limit;
+
+  public WebhookOutboxEntriesDue(LocalDateTime time, int limit) {
+    this.time = time;
+    this.limit = limit;
+  }
+
+  @Override
+  public boolean test(Long key, WebhookOutboxEntry value) {
+    return !value.getNextAttempt().isAfter(time);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("next_attempt <= ? order by id limit ?", time, limit);
+  }
+
+}
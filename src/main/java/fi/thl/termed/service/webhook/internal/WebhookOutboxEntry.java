@@ -0,0 +1,71 @@
+package fi.thl.termed.service.webhook.internal;
+
+import com.google.common.base.MoreObjects;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Serialized webhook payload waiting for delivery.
+ */
+public final class WebhookOutboxEntry {
+
+  private final UUID webhookId;
+  private final String payload;
+  private final int attempts;
+  private final LocalDateTime nextAttempt;
+
+  public WebhookOutboxEntry(UUID webhookId, String payload, int attempts,
+      LocalDateTime nextAttempt) {
+    this.webhookId = webhookId;
+    this.payload = payload;
+    this.attempts = attempts;
+    this.nextAttempt = nextAttempt;
+  }
+
+  public UUID getWebhookId() {
+    return webhookId;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public LocalDateTime getNextAttempt() {
+    return nextAttempt;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    WebhookOutboxEntry that = (WebhookOutboxEntry) o;
+    return attempts == that.attempts &&
+        Objects.equals(webhookId, that.webhookId) &&
+        Objects.equals(payload, that.payload) &&
+        Objects.equals(nextAttempt, that.nextAttempt);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(webhookId, payload, attempts, nextAttempt);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("webhookId", webhookId)
+        .add("attempts", attempts)
+        .add("nextAttempt", nextAttempt)
+        .toString();
+  }
+
+}
@@ -2,9 +2,14 @@ package fi.thl.termed.util;
 
 import org.slf4j.Logger;
 
+/**
+ * Reports progress of a long running operation. Thread safe, ticks can be reported concurrently
+ * e.g. from multiple workers.
+ */
 public class ProgressReporter {
 
   private Logger log;
+  private boolean logAtInfo;
   private String operationName;
 
   private int total;
@@ -12,12 +17,22 @@ public class ProgressReporter {
   private int reportInterval;
 
   private long startTime;
+  private long endTime;
 
   private int lastUpdateProcessed;
   private long lastUpdateTime;
 
   public ProgressReporter(Logger log, String operationName, int reportInterval, int total) {
+    this(log, false, operationName, reportInterval, total);
+  }
+
+  /**
+   * @param logAtInfo if true, progress is logged at info level instead of trace
+   */
+  public ProgressReporter(Logger log, boolean logAtInfo, String operationName, int reportInterval,
+      int total) {
     this.log = log;
+    this.logAtInfo = logAtInfo;
     this.operationName = operationName;
     this.reportInterval = reportInterval;
     this.total = total;
@@ -29,26 +44,54 @@ public class ProgressReporter {
     this.lastUpdateProcessed = 0;
   }
 
-  public void tick() {
-    processed++;
-    if (processed % reportInterval == 0) {
+  public synchronized void tick() {
+    tick(1);
+  }
+
+  public synchronized void tick(int count) {
+    int previous = processed;
+    processed += count;
+    if (processed / reportInterval != previous / reportInterval) {
       report();
     }
   }
 
-  public void report() {
-    log.trace("{} {}% - {}/{} - {} in {} ms - total time {} seconds",
-        operationName, percentageDone(), processed, total,
-        processedSinceLastUpdate(),
-        timeSinceLastUpdate(),
-        totalTimeInSeconds());
+  public synchronized void report() {
+    if (logAtInfo ? log.isInfoEnabled() : log.isTraceEnabled()) {
+      String format = "{} {}% - {}/{} - {} in {} ms - {} per second - total time {} seconds{}";
+      Object[] args = {operationName, percentageDone(), processed, total,
+          processedSinceLastUpdate(),
+          timeSinceLastUpdate(),
+          ratePerSecond(),
+          totalTimeInSeconds(),
+          endTime == 0 ? " - ETA " + etaInSeconds() + " seconds" : ""};
+
+      if (logAtInfo) {
+        log.info(format, args);
+      } else {
+        log.trace(format, args);
+      }
+    }
 
     lastUpdateProcessed = processed;
     lastUpdateTime = System.currentTimeMillis();
   }
 
+  /**
+   * Marks operation done and reports final progress.
+   */
+  public synchronized void done() {
+    endTime = System.currentTimeMillis();
+    report();
+  }
+
+  public synchronized Progress getProgress() {
+    return new Progress(operationName, processed, total, percentageDone(), ratePerSecond(),
+        totalTimeInSeconds(), endTime == 0 ? etaInSeconds() : 0, endTime != 0);
+  }
+
   private int percentageDone() {
-    return total > 0 ? ((processed * 100) / total) : 100;
+    return total > 0 ? (int) ((processed * 100L) / total) : 100;
   }
 
   private int processedSinceLastUpdate() {
@@ -59,8 +102,79 @@ public class ProgressReporter {
     return System.currentTimeMillis() - lastUpdateTime;
   }
 
+  private long totalTimeInMillis() {
+    return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+  }
+
   private long totalTimeInSeconds() {
-    return (System.currentTimeMillis() - startTime) / 1000;
+    return totalTimeInMillis() / 1000;
+  }
+
+  private long ratePerSecond() {
+    long millis = totalTimeInMillis();
+    return millis > 0 ? (processed * 1000L) / millis : 0;
+  }
+
+  private long etaInSeconds() {
+    long rate = ratePerSecond();
+    return rate > 0 ? Math.max(total - processed, 0) / rate : -1;
+  }
+
+  public static class Progress {
+
+    private final String operation;
+    private final int processed;
+    private final int total;
+    private final int percentage;
+    private final long ratePerSecond;
+    private final long elapsedSeconds;
+    private final long etaSeconds;
+    private final boolean done;
+
+    Progress(String operation, int processed, int total, int percentage, long ratePerSecond,
+        long elapsedSeconds, long etaSeconds, boolean done) {
+      this.operation = operation;
+      this.processed = processed;
+      this.total = total;
+      this.percentage = percentage;
+      this.ratePerSecond = ratePerSecond;
+      this.elapsedSeconds = elapsedSeconds;
+      this.etaSeconds = etaSeconds;
+      this.done = done;
+    }
+
+    public String getOperation() {
+      return operation;
+    }
+
+    public int getProcessed() {
+      return processed;
+    }
+
+    public int getTotal() {
+      return total;
+    }
+
+    public int getPercentage() {
+      return percentage;
+    }
+
+    public long getRatePerSecond() {
+      return ratePerSecond;
+    }
+
+    public long getElapsedSeconds() {
+      return elapsedSeconds;
+    }
+
+    public long getEtaSeconds() {
+      return etaSeconds;
+    }
+
+    public boolean isDone() {
+      return done;
+    }
+
   }
 
 }
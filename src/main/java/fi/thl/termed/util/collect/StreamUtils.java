@@ -9,6 +9,7 @@ import static java.util.stream.Collectors.toSet;
 import static java.util.stream.StreamSupport.stream;
 
 import com.google.common.collect.ImmutableList;
+import fi.thl.termed.util.concurrent.StreamTimer;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Iterator;
 import java.util.List;
@@ -17,8 +18,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -43,33 +42,20 @@ public final class StreamUtils {
 
   /**
    * Attach repeatedly called {@link Runnable} to Stream until the Stream is closed. Can be used
-   * e.g. to log warnings of unclosed streams.
+   * e.g. to log warnings of unclosed streams. Uses application wide {@link StreamTimer}.
    */
   public static <T> Stream<T> toStreamWithScheduledRepeatingAction(Stream<T> stream,
-      ScheduledExecutorService scheduledExecutorService, int delay, TimeUnit timeUnit,
-      Runnable action) {
-
-    ScheduledFuture<?> scheduledFuture = scheduledExecutorService
-        .scheduleWithFixedDelay(action, delay, delay, timeUnit);
-
-    // cancel scheduledFuture if stream is properly closed on time
-    return stream.onClose(() -> scheduledFuture.cancel(false));
+      int delay, TimeUnit timeUnit, Runnable action) {
+    return StreamTimer.shared().repeatWhileOpen(stream, delay, timeUnit, action);
   }
 
   /**
-   * Set timeout to Stream, i.e. Stream is automatically closed after given time.
+   * Set timeout to Stream, i.e. Stream is automatically closed after given time. Uses application
+   * wide {@link StreamTimer}, timeout message also describes the stream while it's open.
    */
-  public static <T> Stream<T> toStreamWithTimeout(Stream<T> stream,
-      ScheduledExecutorService scheduledExecutorService, int delay, TimeUnit timeUnit,
+  public static <T> Stream<T> toStreamWithTimeout(Stream<T> stream, int delay, TimeUnit timeUnit,
       Supplier<String> timeoutMessageSupplier) {
-    ScheduledFuture<Void> closeOnTimeout = scheduledExecutorService.schedule(() -> {
-      stream.close();
-      log.warn("Stream closed on timeout: {}", timeoutMessageSupplier.get());
-      return null;
-    }, delay, timeUnit);
-
-    // cancel closeOnTimeout if stream is properly closed on time
-    return stream.onClose(() -> closeOnTimeout.cancel(false));
+    return StreamTimer.shared().closeOnTimeout(stream, delay, timeUnit, timeoutMessageSupplier);
   }
 
   public static <T> List<T> toListAndClose(Stream<T> stream) {
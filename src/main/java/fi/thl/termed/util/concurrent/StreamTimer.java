@@ -0,0 +1,182 @@
+package fi.thl.termed.util.concurrent;
+
+import static fi.thl.termed.util.DurationUtils.prettyPrintMillis;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application wide timer for open streams. Instead of scheduling futures for each stream, streams
+ * are registered to a map and a single daemon thread sweeps registered streams once per tick,
+ * closing timed out streams and running due repeating actions. Registering and unregistering (on
+ * stream close) are constant time operations. Registered streams with an owner description are
+ * also reported as open streams e.g. for metrics.
+ */
+public final class StreamTimer {
+
+  private static final Logger log = LoggerFactory.getLogger(StreamTimer.class);
+
+  private static final long KEPT_OPEN_LOG_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final StreamTimer SHARED = new StreamTimer(System::currentTimeMillis)
+      .start(1, TimeUnit.SECONDS);
+
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+  private final LongSupplier clock;
+
+  StreamTimer(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  public static StreamTimer shared() {
+    return SHARED;
+  }
+
+  private StreamTimer start(long tick, TimeUnit unit) {
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "stream-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleWithFixedDelay(this::tick, tick, tick, unit);
+    return this;
+  }
+
+  /**
+   * Closes the stream if it's kept open longer than given timeout. Owner describes the stream
+   * (e.g. the SQL or the index query).
+   */
+  public <T> Stream<T> closeOnTimeout(Stream<T> stream, long timeout, TimeUnit unit,
+      Supplier<String> owner) {
+    long now = clock.getAsLong();
+    return register(stream, new Entry(owner, now, now + unit.toMillis(timeout), stream::close,
+        0, () -> {
+        }));
+  }
+
+  /**
+   * Runs given action repeatedly with given interval until the stream is closed.
+   */
+  public <T> Stream<T> repeatWhileOpen(Stream<T> stream, long interval, TimeUnit unit,
+      Runnable action) {
+    return register(stream, new Entry(null, clock.getAsLong(), Long.MAX_VALUE, () -> {
+    }, unit.toMillis(interval), action));
+  }
+
+  private <T> Stream<T> register(Stream<T> stream, Entry entry) {
+    Long id = sequence.incrementAndGet();
+    entries.put(id, entry);
+    return stream.onClose(() -> entries.remove(id));
+  }
+
+  void tick() {
+    long now = clock.getAsLong();
+
+    entries.forEach((id, entry) -> {
+      try {
+        if (now >= entry.deadline) {
+          entries.remove(id);
+          entry.timeoutAction.run();
+          log.warn("Stream closed on timeout: {}", entry.owner.get());
+          return;
+        }
+        if (entry.repeatInterval > 0 && now >= entry.nextRepeat) {
+          entry.nextRepeat = now + entry.repeatInterval;
+          entry.repeatAction.run();
+        }
+        if (entry.owner != null && log.isDebugEnabled() && now >= entry.nextKeptOpenLog) {
+          entry.nextKeptOpenLog = now + KEPT_OPEN_LOG_INTERVAL_MILLIS;
+          log.debug("Stream for {} kept open for {}",
+              entry.owner.get(), prettyPrintMillis(now - entry.start));
+        }
+      } catch (RuntimeException e) {
+        log.error("Stream timer action failed", e);
+      }
+    });
+  }
+
+  /**
+   * Returns currently open streams that have an owner, oldest first.
+   */
+  public List<OpenStream> openStreams() {
+    long now = clock.getAsLong();
+    return entries.values().stream()
+        .filter(entry -> entry.owner != null)
+        .sorted(comparingLong(entry -> entry.start))
+        .map(entry -> new OpenStream(entry.owner.get(), now - entry.start))
+        .collect(toList());
+  }
+
+  public long openStreamCount() {
+    return entries.values().stream().filter(entry -> entry.owner != null).count();
+  }
+
+  public long oldestOpenStreamAgeMillis() {
+    long now = clock.getAsLong();
+    return entries.values().stream()
+        .filter(entry -> entry.owner != null)
+        .mapToLong(entry -> now - entry.start)
+        .max().orElse(0);
+  }
+
+  private static class Entry {
+
+    private final Supplier<String> owner;
+    private final long start;
+    private final long deadline;
+    private final Runnable timeoutAction;
+    private final long repeatInterval;
+    private final Runnable repeatAction;
+
+    // only accessed by the timer thread
+    private long nextRepeat;
+    private long nextKeptOpenLog;
+
+    Entry(Supplier<String> owner, long start, long deadline, Runnable timeoutAction,
+        long repeatInterval, Runnable repeatAction) {
+      this.owner = owner;
+      this.start = start;
+      this.deadline = deadline;
+      this.timeoutAction = timeoutAction;
+      this.repeatInterval = repeatInterval;
+      this.repeatAction = repeatAction;
+      this.nextRepeat = start + repeatInterval;
+      this.nextKeptOpenLog = start + KEPT_OPEN_LOG_INTERVAL_MILLIS;
+    }
+
+  }
+
+  public static class OpenStream {
+
+    private final String owner;
+    private final long ageMillis;
+
+    OpenStream(String owner, long ageMillis) {
+      this.owner = owner;
+      this.ageMillis = ageMillis;
+    }
+
+    public String getOwner() {
+      return owner;
+    }
+
+    public long getAgeMillis() {
+      return ageMillis;
+    }
+
+  }
+
+}
@@ -0,0 +1,31 @@
+package fi.thl.termed.util.concurrent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes count and age of open streams registered to {@link StreamTimer}.
+ */
+public class StreamTimerMetrics implements MeterBinder {
+
+  private final StreamTimer streamTimer;
+
+  public StreamTimerMetrics(StreamTimer streamTimer) {
+    this.streamTimer = streamTimer;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("termed.streams.open", streamTimer, StreamTimer::openStreamCount)
+        .description("Number of open SQL and index result streams")
+        .register(registry);
+    TimeGauge.builder("termed.streams.oldest.age", streamTimer, TimeUnit.MILLISECONDS,
+        StreamTimer::oldestOpenStreamAgeMillis)
+        .description("Age of the oldest open SQL or index result stream")
+        .register(registry);
+  }
+
+}
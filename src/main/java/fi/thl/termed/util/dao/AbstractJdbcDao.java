@@ -1,7 +1,9 @@
 package fi.thl.termed.util.dao;
 
 import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static java.util.stream.Collectors.toList;
 
+import com.google.common.collect.Iterators;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.MatchAll;
@@ -10,6 +12,7 @@ import fi.thl.termed.util.query.SqlSpecification;
 import fi.thl.termed.util.spring.jdbc.StreamingJdbcTemplate;
 import java.io.Serializable;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
@@ -21,6 +24,8 @@ import org.springframework.jdbc.core.RowMapper;
  */
 public abstract class AbstractJdbcDao<K extends Serializable, V> implements SystemDao<K, V> {
 
+  private static final int STATEMENT_BATCH_SIZE = 1000;
+
   protected final Logger log = LoggerFactory.getLogger(getClass());
 
   protected StreamingJdbcTemplate jdbcTemplate;
@@ -57,6 +62,17 @@ public abstract class AbstractJdbcDao<K extends Serializable, V> implements Syst
     forEachAndClose(keys, this::delete);
   }
 
+  /**
+   * Executes given statement once for each item using JDBC batches. Subclasses may use this to
+   * implement bulk versions of update and delete.
+   */
+  protected <E> void batchUpdate(String sql, Stream<E> items, Function<E, Object[]> toArgs) {
+    try (Stream<E> closeable = items) {
+      Iterators.partition(closeable.iterator(), STATEMENT_BATCH_SIZE).forEachRemaining(batch ->
+          jdbcTemplate.batchUpdate(sql, batch.stream().map(toArgs).collect(toList())));
+    }
+  }
+
   @Override
   public Stream<Tuple2<K, V>> entries(Specification<K, V> specification) {
     if (specification instanceof SqlSpecification) {
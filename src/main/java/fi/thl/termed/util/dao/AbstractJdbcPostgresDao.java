@@ -4,7 +4,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static fi.thl.termed.util.postgresql.CopyManagerUtils.copyInAsCsv;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toList;
 
 import com.google.common.collect.Iterators;
 import fi.thl.termed.util.collect.Tuple2;
@@ -12,7 +11,6 @@ import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import javax.sql.DataSource;
@@ -24,6 +22,10 @@ import org.springframework.jdbc.datasource.DataSourceUtils;
 /**
  * Implements faster bulk insert for Postgres. If backed database is not Postgres, forwards insert
  * to delegate.
+ *
+ * Entries are read from the given stream in batches and each batch is written as CSV directly into
+ * a COPY operation. A batch is collected before the COPY starts as reading the stream may need the
+ * same connection (e.g. for permission checks) which is not possible while COPY is in progress.
  */
 public abstract class AbstractJdbcPostgresDao<K extends Serializable, V> extends
     ForwardingSystemDao<K, V> {
@@ -87,7 +89,8 @@ public abstract class AbstractJdbcPostgresDao<K extends Serializable, V> extends
     try (Stream<Tuple2<K, V>> closeable = entries) {
       Iterators.partition(closeable.iterator(), batchSize).forEachRemaining(batch -> {
         log.trace("Copying {} rows into {}", batch.size(), table);
-        copyInAsCsv(connection, format("COPY %s FROM STDIN CSV", table), toRows(batch));
+        copyInAsCsv(connection, format("COPY %s FROM STDIN CSV", table),
+            batch.stream().map(t -> toRow(t._1, t._2)));
         insertCount.getAndAdd(batch.size());
       });
     }
@@ -97,10 +100,6 @@ public abstract class AbstractJdbcPostgresDao<K extends Serializable, V> extends
     }
   }
 
-  private List<String[]> toRows(List<Tuple2<K, V>> tuples) {
-    return tuples.stream().map(t -> toRow(t._1, t._2)).collect(toList());
-  }
-
   protected abstract String[] toRow(K key, V value);
 
   private void analyzeTable(BaseConnection c) {
@@ -0,0 +1,22 @@
+package fi.thl.termed.util.index;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index writes are numbered with increasing generations. A client that has written to an index can
+ * wait until searches see its writes without forcing a refresh after every write.
+ */
+public interface IndexGenerations {
+
+  /**
+   * Returns generation of the latest completed write.
+   */
+  long writeGeneration();
+
+  /**
+   * Waits until writes up to given generation are visible to searches. Returns false if timeout
+   * elapsed before that.
+   */
+  boolean awaitWriteGeneration(long generation, long timeout, TimeUnit unit);
+
+}
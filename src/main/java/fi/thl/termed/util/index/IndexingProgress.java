@@ -0,0 +1,30 @@
+package fi.thl.termed.util.index;
+
+import fi.thl.termed.util.ProgressReporter;
+import fi.thl.termed.util.ProgressReporter.Progress;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+
+/**
+ * Holds progress of the latest bulk indexing run, e.g. for showing it in admin API. Progress of
+ * bulk runs is logged at info level.
+ */
+public class IndexingProgress {
+
+  private static final int REPORT_INTERVAL = 10_000;
+
+  private final AtomicReference<ProgressReporter> latest = new AtomicReference<>();
+
+  public ProgressReporter start(Logger log, String operationName, int total) {
+    ProgressReporter reporter = new ProgressReporter(log, true, operationName,
+        REPORT_INTERVAL, total);
+    latest.set(reporter);
+    return reporter;
+  }
+
+  public Optional<Progress> getLatest() {
+    return Optional.ofNullable(latest.get()).map(ProgressReporter::getProgress);
+  }
+
+}
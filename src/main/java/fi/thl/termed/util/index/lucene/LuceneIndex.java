@@ -1,21 +1,29 @@
 package fi.thl.termed.util.index.lucene;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static fi.thl.termed.util.collect.FunctionUtils.toUnchecked;
+import static com.google.common.base.Throwables.propagateIfPossible;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
 import static fi.thl.termed.util.collect.StreamUtils.toStreamWithTimeout;
 import static fi.thl.termed.util.index.lucene.LuceneConstants.DOCUMENT_ID;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
 import static java.util.Objects.requireNonNull;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
 import static org.apache.lucene.index.IndexWriterConfig.OpenMode.CREATE_OR_APPEND;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import fi.thl.termed.util.Converter;
 import fi.thl.termed.util.collect.ListUtils;
 import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.concurrent.ExecutorUtils;
 import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.index.IndexGenerations;
 import fi.thl.termed.util.query.LuceneSortField;
 import fi.thl.termed.util.query.LuceneSpecification;
 import fi.thl.termed.util.query.Specification;
@@ -24,26 +32,34 @@ import java.io.Serializable;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
@@ -57,7 +73,13 @@ import org.apache.lucene.store.RAMDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
+public class LuceneIndex<K extends Serializable, V> implements Index<K, V>, IndexGenerations {
+
+  public static final long DEFAULT_QUERY_CACHE_SIZE = 100_000;
+
+  // reopen at least once a second, or sooner (but not more often than this) if someone is waiting
+  private static final double MAX_STALE_SECONDS = 1.0;
+  private static final double MIN_STALE_SECONDS = 0.025;
 
   private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -66,6 +88,10 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
 
   private IndexWriter writer;
   private SearcherManager searcherManager;
+  private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+  // doc ids and hit counts of recent searches, valid only for the reader that produced them
+  private Cache<QueryCacheKey, Object> queryCache;
 
   private ExecutorService indexingExecutor;
   private ScheduledExecutorService scheduledExecutorService;
@@ -73,10 +99,27 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
   public LuceneIndex(String directoryPath,
       Converter<K, String> keyConverter,
       Converter<V, Document> documentConverter) {
+    this(directoryPath, keyConverter, documentConverter, DEFAULT_QUERY_CACHE_SIZE);
+  }
+
+  /**
+   * @param queryCacheSize max number of cached doc ids (each cached count weighs one), zero
+   * disables the query cache
+   */
+  public LuceneIndex(String directoryPath,
+      Converter<K, String> keyConverter,
+      Converter<V, Document> documentConverter,
+      long queryCacheSize) {
 
     this.keyConverter = keyConverter;
     this.documentConverter = documentConverter;
 
+    this.queryCache = CacheBuilder.newBuilder()
+        .maximumWeight(queryCacheSize)
+        .weigher((QueryCacheKey k, Object v) -> v instanceof int[] ? ((int[]) v).length + 1 : 1)
+        .recordStats()
+        .build();
+
     try {
       Analyzer a = new LowerCaseWhitespaceAnalyzer();
       IndexWriterConfig c = new IndexWriterConfig(a)
@@ -84,14 +127,19 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
           .setCodec(new TermedCodec());
       this.writer = new IndexWriter(openDirectory(directoryPath), c);
       this.searcherManager = new SearcherManager(writer, new SearcherFactory());
+      this.searcherManager.addListener(new QueryCacheInvalidator());
+      this.reopenThread = new ControlledRealTimeReopenThread<>(
+          writer, searcherManager, MAX_STALE_SECONDS, MIN_STALE_SECONDS);
+      this.reopenThread.setName("lucene-index-reopen");
+      this.reopenThread.setDaemon(true);
+      this.reopenThread.start();
     } catch (IOException e) {
       throw new LuceneException(e);
     }
 
     this.indexingExecutor = ExecutorUtils.newScheduledThreadPool(1);
-    this.scheduledExecutorService = ExecutorUtils.newScheduledThreadPool(5);
+    this.scheduledExecutorService = ExecutorUtils.newScheduledThreadPool(1);
 
-    this.scheduledExecutorService.scheduleAtFixedRate(this::refresh, 0, 1, TimeUnit.SECONDS);
     this.scheduledExecutorService.scheduleAtFixedRate(this::commit, 0, 10, TimeUnit.SECONDS);
 
     BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
@@ -154,15 +202,35 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     }
   }
 
+  /**
+   * Expert method for streaming ids of matching documents as indexed (i.e. converted keys), e.g.
+   * for building term queries without converting ids back to keys.
+   */
+  public Stream<String> getDocumentIds(Specification<K, V> specification) {
+    IndexSearcher searcher = null;
+    try {
+      searcher = tryAcquire();
+      Query query = ((LuceneSpecification<K, V>) specification).luceneQuery();
+      return query(searcher, query, -1, emptyList(), singleton(DOCUMENT_ID),
+          d -> d.get(DOCUMENT_ID));
+    } catch (IOException e) {
+      tryRelease(searcher);
+      throw new LuceneException(e);
+    }
+  }
+
   @Override
   public long count(Specification<K, V> specification) {
     IndexSearcher searcher = null;
     try {
       searcher = tryAcquire();
-      TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+      IndexSearcher s = searcher;
       Query query = ((LuceneSpecification<K, V>) specification).luceneQuery();
-      searcher.search(query, hitCountCollector);
-      return hitCountCollector.getTotalHits();
+      return cached(QueryCacheKey.count(s, query), () -> {
+        TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+        s.search(query, hitCountCollector);
+        return hitCountCollector.getTotalHits();
+      });
     } catch (IOException e) {
       throw new LuceneException(e);
     } finally {
@@ -185,6 +253,66 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     }
   }
 
+  /**
+   * Returns version of the reader behind current searcher. Version changes each time a refresh
+   * makes new changes visible to searches.
+   */
+  public long searcherGeneration() {
+    IndexSearcher searcher = null;
+    try {
+      searcher = tryAcquire();
+      return ((DirectoryReader) searcher.getIndexReader()).getVersion();
+    } finally {
+      tryRelease(searcher);
+    }
+  }
+
+  @Override
+  public long writeGeneration() {
+    return writer.getMaxCompletedSequenceNumber();
+  }
+
+  /**
+   * Waits for the reopen thread to make given generation searchable. Generations are valid only
+   * within the lifetime of the writer, for an unknown (future) generation a blocking refresh is done
+   * instead.
+   */
+  @Override
+  public boolean awaitWriteGeneration(long generation, long timeout, TimeUnit unit) {
+    if (generation > writer.getMaxCompletedSequenceNumber()) {
+      refreshBlocking();
+      return true;
+    }
+
+    try {
+      return reopenThread.waitForGeneration(generation,
+          (int) Math.min(unit.toMillis(timeout), Integer.MAX_VALUE));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns number of segments seen by current searcher.
+   */
+  public int segmentCount() {
+    IndexSearcher searcher = null;
+    try {
+      searcher = tryAcquire();
+      return searcher.getIndexReader().leaves().size();
+    } finally {
+      tryRelease(searcher);
+    }
+  }
+
+  /**
+   * Returns number of documents buffered in writer and not yet flushed to a segment.
+   */
+  public int pendingDocCount() {
+    return writer.numRamDocs();
+  }
+
   @Override
   public Optional<V> get(K id) {
     IndexSearcher searcher = null;
@@ -211,19 +339,23 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
 
     long start = System.currentTimeMillis();
 
-    Stream<Integer> docs;
+    IntStream docs;
 
     if (ListUtils.isNullOrEmpty(sort) && (max < 0 || max == Integer.MAX_VALUE)) {
-      SimpleAllCollector c = new SimpleAllCollector();
-      searcher.search(query, c);
-      docs = c.getDocs().stream();
+      // unsorted results are streamed lazily as they are matched
+      docs = StreamSupport.intStream(spliteratorUnknownSize(
+          new MatchingDocIdIterator(searcher, query), ORDERED | NONNULL), false);
     } else {
-      TopFieldDocs topDocs = searcher.search(query, max > 0 ? max : Integer.MAX_VALUE, sort(sort));
-      docs = Arrays.stream(topDocs.scoreDocs).map(sd -> sd.doc);
+      int n = max > 0 ? max : Integer.MAX_VALUE;
+      Sort luceneSort = sort(sort);
+      docs = Arrays.stream(cached(QueryCacheKey.topDocs(searcher, query, luceneSort, n), () -> {
+        TopFieldDocs topDocs = searcher.search(query, n, luceneSort);
+        return Arrays.stream(topDocs.scoreDocs).mapToInt(sd -> sd.doc).toArray();
+      }));
     }
 
     return toStreamWithTimeout(docs
-            .map(toUnchecked(doc -> searcher.doc(doc, fieldsToLoad)))
+            .mapToObj(doc -> loadDocument(searcher, doc, fieldsToLoad))
             .map(documentDeserializer)
             .onClose(() -> tryRelease(searcher))
             .onClose(() -> {
@@ -231,7 +363,32 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
                 log.trace("{} in {} ms", query, System.currentTimeMillis() - start);
               }
             }),
-        scheduledExecutorService, 1, TimeUnit.HOURS, query::toString);
+        1, TimeUnit.HOURS, query::toString);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T cached(QueryCacheKey key, Callable<T> loader) throws IOException {
+    try {
+      return (T) queryCache.get(key, loader);
+    } catch (ExecutionException e) {
+      propagateIfPossible(e.getCause(), IOException.class);
+      throw new LuceneException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  Cache<?, ?> queryCache() {
+    return queryCache;
+  }
+
+  private Document loadDocument(IndexSearcher searcher, int doc, Set<String> fieldsToLoad) {
+    try {
+      return searcher.doc(doc, fieldsToLoad);
+    } catch (IOException e) {
+      throw new LuceneException(e);
+    }
   }
 
   private IndexSearcher tryAcquire() {
@@ -297,6 +454,7 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     try {
       indexingExecutor.shutdown();
       scheduledExecutorService.shutdown();
+      reopenThread.close();
       searcherManager.close();
       writer.close();
     } catch (IOException e) {
@@ -304,6 +462,68 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     }
   }
 
+  private class QueryCacheInvalidator implements RefreshListener {
+
+    @Override
+    public void beforeRefresh() {
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+      // entries of old readers can't be hit anymore, drop them eagerly to free space
+      if (didRefresh) {
+        queryCache.invalidateAll();
+      }
+    }
+
+  }
+
+  private static class QueryCacheKey {
+
+    private final Object readerKey;
+    private final Query query;
+    private final Sort sort;
+    private final int max;
+
+    private QueryCacheKey(IndexSearcher searcher, Query query, Sort sort, int max) {
+      IndexReader reader = searcher.getIndexReader();
+      this.readerKey = reader.getReaderCacheHelper() != null
+          ? reader.getReaderCacheHelper().getKey() : reader;
+      this.query = query;
+      this.sort = sort;
+      this.max = max;
+    }
+
+    static QueryCacheKey count(IndexSearcher searcher, Query query) {
+      return new QueryCacheKey(searcher, query, null, -1);
+    }
+
+    static QueryCacheKey topDocs(IndexSearcher searcher, Query query, Sort sort, int max) {
+      return new QueryCacheKey(searcher, query, sort, max);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      QueryCacheKey that = (QueryCacheKey) o;
+      return max == that.max &&
+          readerKey == that.readerKey &&
+          Objects.equals(query, that.query) &&
+          Objects.equals(sort, that.sort);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(readerKey, query, sort, max);
+    }
+
+  }
+
   private class IndexingTask implements Callable<Void> {
 
     private Supplier<Stream<K>> keyStreamProvider;
@@ -0,0 +1,40 @@
+package fi.thl.termed.util.index.lucene;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Publishes searcher generation, segment count, pending document count and query cache
+ * statistics of a {@link LuceneIndex}.
+ */
+public class LuceneIndexMetrics implements MeterBinder {
+
+  private final LuceneIndex<?, ?> index;
+  private final String name;
+
+  public LuceneIndexMetrics(LuceneIndex<?, ?> index, String name) {
+    this.index = index;
+    this.name = name;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("termed.index.searcher.generation", index, LuceneIndex::searcherGeneration)
+        .description("Version of the index reader currently used for searches")
+        .tag("index", name)
+        .register(registry);
+    Gauge.builder("termed.index.segments", index, LuceneIndex::segmentCount)
+        .description("Number of index segments seen by current searcher")
+        .tag("index", name)
+        .register(registry);
+    Gauge.builder("termed.index.pending.docs", index, LuceneIndex::pendingDocCount)
+        .description("Number of documents buffered in index writer and not yet flushed")
+        .tag("index", name)
+        .register(registry);
+    GuavaCacheMetrics.monitor(registry, index.queryCache(), "termed.index.query.cache",
+        "index", name);
+  }
+
+}
@@ -0,0 +1,89 @@
+package fi.thl.termed.util.index.lucene;
+
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Lazily iterates global ids of documents matching a query, one segment at a time. Unlike
+ * collecting all hits before reading any documents, ids are produced only as they are consumed and
+ * they are not boxed.
+ */
+public class MatchingDocIdIterator implements PrimitiveIterator.OfInt {
+
+  private static final int NOT_FETCHED = -1;
+
+  private final Weight weight;
+  private final Iterator<LeafReaderContext> leaves;
+
+  private LeafReaderContext leaf;
+  private DocIdSetIterator leafDocs;
+  private Bits leafLiveDocs;
+
+  private int next = NOT_FETCHED;
+
+  public MatchingDocIdIterator(IndexSearcher searcher, Query query) throws IOException {
+    this.weight = searcher.createWeight(
+        searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1);
+    this.leaves = searcher.getIndexReader().leaves().iterator();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == NOT_FETCHED) {
+      next = fetchNext();
+    }
+    return next != NO_MORE_DOCS;
+  }
+
+  @Override
+  public int nextInt() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    int doc = next;
+    next = NOT_FETCHED;
+    return doc;
+  }
+
+  private int fetchNext() {
+    try {
+      while (true) {
+        if (leafDocs != null) {
+          for (int doc = leafDocs.nextDoc(); doc != NO_MORE_DOCS; doc = leafDocs.nextDoc()) {
+            if (leafLiveDocs == null || leafLiveDocs.get(doc)) {
+              return leaf.docBase + doc;
+            }
+          }
+          leafDocs = null;
+        }
+
+        if (!leaves.hasNext()) {
+          return NO_MORE_DOCS;
+        }
+
+        leaf = leaves.next();
+        Scorer scorer = weight.scorer(leaf);
+
+        if (scorer != null) {
+          leafDocs = scorer.iterator();
+          leafLiveDocs = leaf.reader().getLiveDocs();
+        }
+      }
+    } catch (IOException e) {
+      throw new LuceneException(e);
+    }
+  }
+
+}
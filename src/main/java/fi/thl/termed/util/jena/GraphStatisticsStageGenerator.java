@@ -0,0 +1,84 @@
+package fi.thl.termed.util.jena;
+
+import static org.apache.jena.graph.Node.ANY;
+
+import org.apache.jena.graph.GraphStatisticsHandler;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.main.StageBuilder;
+import org.apache.jena.sparql.engine.main.StageGeneratorGeneric;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternElements;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderFixed;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformationSubstitution;
+import org.apache.jena.sparql.sse.Item;
+
+/**
+ * Orders basic graph patterns by statistics of the active graph. Patterns with bound subject are
+ * evaluated first as they are cheap lookups, other patterns are weighted by the statistic given by
+ * the graph. If graph provides no statistics, default fixed ordering is used.
+ *
+ * Install to a query execution with {@code StageBuilder.setGenerator(qe.getContext(), generator)}.
+ */
+public class GraphStatisticsStageGenerator extends StageGeneratorGeneric {
+
+  // bound objects are assumed to match a fraction of all triples with given predicate
+  private static final long BOUND_OBJECT_SELECTIVITY = 10;
+
+  @Override
+  public QueryIterator execute(BasicPattern pattern, QueryIterator input,
+      ExecutionContext execCxt) {
+    GraphStatisticsHandler statistics = execCxt.getActiveGraph().getStatisticsHandler();
+
+    if (statistics == null) {
+      return super.execute(pattern, input, execCxt);
+    }
+
+    return execute(pattern, new StatisticsReorder(statistics), StageBuilder.executeInline,
+        input, execCxt);
+  }
+
+  private static class StatisticsReorder extends ReorderTransformationSubstitution {
+
+    private final GraphStatisticsHandler statistics;
+    private final ReorderFixed fixed = new ReorderFixed();
+
+    StatisticsReorder(GraphStatisticsHandler statistics) {
+      this.statistics = statistics;
+    }
+
+    @Override
+    protected double weight(PatternTriple pattern) {
+      if (isBound(pattern.subject)) {
+        return 1;
+      }
+
+      long count = statistics.getStatistic(ANY, concrete(pattern.predicate),
+          concrete(pattern.object));
+
+      if (count < 0) {
+        return fixed.weight(pattern);
+      }
+
+      if (isBound(pattern.object) && concrete(pattern.object) == ANY) {
+        return Math.max(1, count / BOUND_OBJECT_SELECTIVITY);
+      }
+
+      return count;
+    }
+
+    private boolean isBound(Item item) {
+      return concrete(item) != ANY || PatternElements.isAnyTerm(item);
+    }
+
+    private Node concrete(Item item) {
+      return item.isNode() && !Var.isVar(item.getNode()) && item.getNode().isConcrete()
+          ? item.getNode() : ANY;
+    }
+
+  }
+
+}
@@ -0,0 +1,63 @@
+package fi.thl.termed.util.json;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+
+/**
+ * Writes values as newline delimited JSON (NDJSON), i.e. each value as compact JSON on its own
+ * line. Values are serialized with given Gson-instance.
+ */
+public class NdjsonWriter implements Closeable {
+
+  private final Gson gson;
+  private final Writer writer;
+  private final JsonWriter jsonWriter;
+
+  public NdjsonWriter(Gson gson, OutputStream out) {
+    this.gson = gson;
+    this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 32 * 1024);
+    this.jsonWriter = new JsonWriter(writer);
+    // allows writing multiple top-level values
+    this.jsonWriter.setLenient(true);
+  }
+
+  public void write(Object value, Type type) throws IOException {
+    gson.toJson(value, type, jsonWriter);
+    writer.write('\n');
+  }
+
+  public <T> void writeAll(Iterator<T> values, Type type) throws IOException {
+    while (values.hasNext()) {
+      write(values.next(), type);
+    }
+  }
+
+  /**
+   * Returns JSON writer for values written without Gson, e.g. with a custom streaming serializer.
+   * Each written value should be ended with {@link #endLine()}.
+   */
+  public JsonWriter jsonWriter() {
+    return jsonWriter;
+  }
+
+  public void endLine() throws IOException {
+    writer.write('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    // JsonWriter can't be closed if no values are written
+    writer.close();
+  }
+
+}
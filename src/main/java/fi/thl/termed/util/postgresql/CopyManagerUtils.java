@@ -1,28 +1,66 @@
 package fi.thl.termed.util.postgresql;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.opencsv.CSVWriter;
-import java.io.CharArrayReader;
-import java.io.CharArrayWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.sql.SQLException;
-import java.util.List;
-import org.postgresql.copy.CopyManager;
+import java.util.stream.Stream;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.postgresql.core.BaseConnection;
 
 public final class CopyManagerUtils {
 
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
   private CopyManagerUtils() {
   }
 
-  public static long copyInAsCsv(BaseConnection pgConnection, String sql, List<String[]> rows) {
-    CharArrayWriter writer = new CharArrayWriter();
-    new CSVWriter(writer).writeAll(rows);
+  /**
+   * Writes rows as CSV directly into a single COPY operation as the stream is consumed. Rows are
+   * not collected in memory, only a small write buffer is kept. If writing fails, the COPY is
+   * cancelled. Given stream is closed.
+   *
+   * @return number of rows copied as reported by the server
+   */
+  public static long copyInAsCsv(BaseConnection pgConnection, String sql, Stream<String[]> rows) {
+    try (Stream<String[]> closeable = rows) {
+      PGCopyOutputStream out = new PGCopyOutputStream(pgConnection, sql, COPY_BUFFER_SIZE);
+
+      try {
+        CSVWriter writer = new CSVWriter(
+            new BufferedWriter(new OutputStreamWriter(out, UTF_8), COPY_BUFFER_SIZE));
+
+        closeable.forEach(writer::writeNext);
 
-    try {
-      return new CopyManager(pgConnection).copyIn(sql, new CharArrayReader(writer.toCharArray()));
-    } catch (SQLException | IOException e) {
+        // flushes to the copy stream and reports any errors swallowed by writeNext
+        if (writer.checkError()) {
+          throw new IOException("Failed to write COPY data");
+        }
+
+        return out.endCopy();
+      } catch (IOException | SQLException e) {
+        cancelQuietly(out, e);
+        throw new RuntimeException(e);
+      } catch (RuntimeException | Error e) {
+        cancelQuietly(out, e);
+        throw e;
+      }
+    } catch (SQLException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static void cancelQuietly(PGCopyOutputStream out, Throwable cause) {
+    if (out.isActive()) {
+      try {
+        out.cancelCopy();
+      } catch (SQLException e) {
+        cause.addSuppressed(e);
+      }
+    }
+  }
+
 }
@@ -1,6 +1,7 @@
 package fi.thl.termed.util.service;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Iterators.partition;
 import static fi.thl.termed.domain.AppRole.SUPERUSER;
 
@@ -14,6 +15,7 @@ import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Specification;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -147,8 +149,11 @@ public abstract class AbstractRepository<K extends Serializable, V extends Ident
     ImmutableList.Builder<Tuple2<K, V>> inserts = ImmutableList.builder();
     ImmutableList.Builder<Tuple2<K, V>> updates = ImmutableList.builder();
 
+    Set<K> existingKeys = existingKeys(
+        list.stream().map(e -> e._1).collect(toImmutableList()), helper);
+
     list.forEach(e -> {
-      if (exists(e._1, helper)) {
+      if (existingKeys.contains(e._1)) {
         updates.add(Tuple.of(e._1, e._2));
       } else {
         inserts.add(Tuple.of(e._1, e._2));
@@ -159,6 +164,15 @@ public abstract class AbstractRepository<K extends Serializable, V extends Ident
     updateBatch(updates.build(), opts, user);
   }
 
+  /**
+   * Returns those of the given keys that exist. Used to split upsert batches into inserts and
+   * updates. Default implementation calls exists for each key, subclasses may override to resolve
+   * existence of the whole batch with one query.
+   */
+  protected Set<K> existingKeys(List<K> keys, User user) {
+    return keys.stream().filter(key -> exists(key, user)).collect(toImmutableSet());
+  }
+
   private void upsertEach(Stream<Tuple2<K, V>> stream, WriteOptions opts, User user) {
     stream.forEach(t -> upsert(t._1, t._2, opts, user));
   }
@@ -0,0 +1,162 @@
+package fi.thl.termed.util.service;
+
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.collect.Identifiable;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Specification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Records duration of each service call to a {@code termed.service} timer tagged with entity,
+ * layer, operation, save mode and user role. Streaming reads are timed until the stream is closed.
+ * Number of elements read or written via streams is counted to {@code termed.service.elements}.
+ * Percentiles and histograms are configured with {@code management.metrics.distribution.*}.
+ */
+public class MetricsService<K extends Serializable, V extends Identifiable<K>>
+    implements Service<K, V> {
+
+  private static final String NONE = "none";
+
+  private final Service<K, V> delegate;
+  private final MeterRegistry registry;
+  private final String entity;
+  private final String layer;
+
+  public MetricsService(Service<K, V> delegate, MeterRegistry registry, String entity,
+      String layer) {
+    this.delegate = delegate;
+    this.registry = registry;
+    this.entity = entity;
+    this.layer = layer;
+  }
+
+  @Override
+  public void save(Stream<V> values, SaveMode mode, WriteOptions opts, User user) {
+    AtomicLong count = new AtomicLong();
+    time("save", mode, user, () -> {
+      delegate.save(values.peek(v -> count.incrementAndGet()), mode, opts, user);
+      return null;
+    });
+    countElements("save", user, count.get());
+  }
+
+  @Override
+  public K save(V value, SaveMode mode, WriteOptions opts, User user) {
+    return time("save", mode, user, () -> delegate.save(value, mode, opts, user));
+  }
+
+  @Override
+  public void delete(Stream<K> keys, WriteOptions opts, User user) {
+    AtomicLong count = new AtomicLong();
+    time("delete", null, user, () -> {
+      delegate.delete(keys.peek(k -> count.incrementAndGet()), opts, user);
+      return null;
+    });
+    countElements("delete", user, count.get());
+  }
+
+  @Override
+  public void delete(K key, WriteOptions opts, User user) {
+    time("delete", null, user, () -> {
+      delegate.delete(key, opts, user);
+      return null;
+    });
+  }
+
+  @Override
+  public void saveAndDelete(Stream<V> saves, Stream<K> deletes, SaveMode mode, WriteOptions opts,
+      User user) {
+    AtomicLong saveCount = new AtomicLong();
+    AtomicLong deleteCount = new AtomicLong();
+    time("saveAndDelete", mode, user, () -> {
+      delegate.saveAndDelete(
+          saves.peek(v -> saveCount.incrementAndGet()),
+          deletes.peek(k -> deleteCount.incrementAndGet()),
+          mode, opts, user);
+      return null;
+    });
+    countElements("save", user, saveCount.get());
+    countElements("delete", user, deleteCount.get());
+  }
+
+  @Override
+  public Stream<K> keys(Query<K, V> query, User user) {
+    return timeStream("keys", user, () -> delegate.keys(query, user));
+  }
+
+  @Override
+  public Stream<V> values(Query<K, V> query, User user) {
+    return timeStream("values", user, () -> delegate.values(query, user));
+  }
+
+  @Override
+  public long count(Specification<K, V> spec, User user) {
+    return time("count", null, user, () -> delegate.count(spec, user));
+  }
+
+  @Override
+  public boolean exists(K key, User user) {
+    return time("exists", null, user, () -> delegate.exists(key, user));
+  }
+
+  @Override
+  public Optional<V> get(K key, User user, Select... selects) {
+    return time("get", null, user, () -> delegate.get(key, user, selects));
+  }
+
+  private <E> E time(String operation, SaveMode mode, User user, Supplier<E> supplier) {
+    long start = System.nanoTime();
+    try {
+      return supplier.get();
+    } finally {
+      timer(operation, mode, user).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private <E> Stream<E> timeStream(String operation, User user, Supplier<Stream<E>> supplier) {
+    long start = System.nanoTime();
+    AtomicLong count = new AtomicLong();
+    return supplier.get()
+        .peek(e -> count.incrementAndGet())
+        .onClose(() -> {
+          timer(operation, null, user).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          countElements(operation, user, count.get());
+        });
+  }
+
+  private Timer timer(String operation, SaveMode mode, User user) {
+    return Timer.builder("termed.service")
+        .description("Service call durations, streams are timed until closed")
+        .tag("entity", entity)
+        .tag("layer", layer)
+        .tag("operation", operation)
+        .tag("mode", mode != null ? mode.name().toLowerCase() : NONE)
+        .tag("role", role(user))
+        .register(registry);
+  }
+
+  private void countElements(String operation, User user, long count) {
+    Counter.builder("termed.service.elements")
+        .description("Number of elements read or written via service streams")
+        .tag("entity", entity)
+        .tag("layer", layer)
+        .tag("operation", operation)
+        .tag("role", role(user))
+        .register(registry)
+        .increment(count);
+  }
+
+  private String role(User user) {
+    return user.getAppRole() != null ? user.getAppRole().name().toLowerCase() : NONE;
+  }
+
+}
@@ -0,0 +1,156 @@
+package fi.thl.termed.util.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.Striped;
+import fi.thl.termed.domain.User;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Allocates values from blocks reserved from the delegate sequence service. Each sequence is
+ * guarded by a lock stripe so allocations from different sequences don't contend. A block is
+ * reserved with a single getAndAdvance call to the delegate; calls to delegate are done one at a
+ * time as they are rare and typically run in serializable transactions. Delegate should commit
+ * each reservation independently of the caller's transaction, as blocks are kept even if the
+ * caller rolls back.
+ *
+ * On close, delegate sequences are backtracked to the next unallocated value of each block and
+ * later allocations are passed directly to the delegate.
+ */
+public class StripedNamedSequenceService<K extends Serializable> implements
+    NamedSequenceService<K> {
+
+  private static final long DEFAULT_BLOCK_SIZE = 1000L;
+  private static final int DEFAULT_STRIPES = 64;
+
+  private final NamedSequenceService<K> delegate;
+  private final long blockSize;
+
+  private final Striped<Lock> sequenceLocks;
+  private final Lock delegateLock = new ReentrantLock();
+
+  private final Map<K, Block> blocks = new ConcurrentHashMap<>();
+  private volatile boolean closed = false;
+
+  public StripedNamedSequenceService(NamedSequenceService<K> delegate) {
+    this(delegate, DEFAULT_BLOCK_SIZE, DEFAULT_STRIPES);
+  }
+
+  public StripedNamedSequenceService(NamedSequenceService<K> delegate, long blockSize,
+      int stripes) {
+    this.delegate = delegate;
+    this.blockSize = blockSize;
+    this.sequenceLocks = Striped.lock(stripes);
+  }
+
+  @Override
+  public Long get(K sequenceId, User user) {
+    return runLocked(sequenceId, () -> {
+      Block block = blocks.get(sequenceId);
+      return block != null ? block.next : delegate.get(sequenceId, user);
+    });
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, User user) {
+    return getAndAdvance(sequenceId, 1L, user);
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, Long count, User user) {
+    checkArgument(count > 0);
+
+    return runLocked(sequenceId, () -> {
+      if (closed) {
+        return callDelegate(() -> delegate.getAndAdvance(sequenceId, count, user));
+      }
+
+      Block block = blocks.get(sequenceId);
+
+      if (block == null || block.next + count > block.limit) {
+        long size = Math.max(count, blockSize);
+        long start = callDelegate(() -> delegate.getAndAdvance(sequenceId, size, user));
+
+        if (block != null && start == block.limit) {
+          // new block continues the current one, keep remaining values
+          block.limit = start + size;
+        } else {
+          block = new Block(start, start + size);
+          blocks.put(sequenceId, block);
+        }
+      }
+
+      long value = block.next;
+      block.next += count;
+      return value;
+    });
+  }
+
+  @Override
+  public void set(K sequenceId, Long value, User user) {
+    runLocked(sequenceId, () -> {
+      blocks.remove(sequenceId);
+      return callDelegate(() -> {
+        delegate.set(sequenceId, value, user);
+        return null;
+      });
+    });
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+
+    User cacheDestructor = User.newAdmin("cache-destructor");
+
+    // backtrack delegate to actual latest value
+    blocks.keySet().forEach(sequenceId -> runLocked(sequenceId, () -> {
+      Block block = blocks.remove(sequenceId);
+      if (block != null) {
+        callDelegate(() -> {
+          delegate.set(sequenceId, block.next, cacheDestructor);
+          return null;
+        });
+      }
+      return null;
+    }));
+  }
+
+  private <E> E runLocked(K sequenceId, Supplier<E> supplier) {
+    Lock lock = sequenceLocks.get(sequenceId);
+    lock.lock();
+    try {
+      return supplier.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private <E> E callDelegate(Supplier<E> supplier) {
+    delegateLock.lock();
+    try {
+      return supplier.get();
+    } finally {
+      delegateLock.unlock();
+    }
+  }
+
+  // mutated only while holding the lock stripe of the sequence
+  private static class Block {
+
+    private long next;
+    private long limit;
+
+    Block(long next, long limit) {
+      this.next = next;
+      this.limit = limit;
+    }
+
+  }
+
+}
@@ -0,0 +1,28 @@
+package fi.thl.termed.util.spring.http;
+
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+public final class GzipAttachments {
+
+  public static final String APPLICATION_GZIP_VALUE = "application/gzip";
+
+  private GzipAttachments() {
+  }
+
+  /**
+   * Sets headers for a gzip compressed attachment and returns a compressing stream for response
+   * body. File name extension ".gz" is appended to given file name.
+   */
+  public static OutputStream gzipAttachment(HttpServletResponse response, String filename)
+      throws IOException {
+    response.setContentType(APPLICATION_GZIP_VALUE);
+    response.setHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + filename + ".gz\"");
+    return new GZIPOutputStream(response.getOutputStream(), 32 * 1024);
+  }
+
+}
@@ -1,24 +1,19 @@
 package fi.thl.termed.util.spring.jdbc;
 
 import static com.google.common.collect.Streams.stream;
-import static fi.thl.termed.util.DurationUtils.prettyPrintMillis;
 import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.resultSetToMappingIterator;
-import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MINUTES;
 
 import fi.thl.termed.util.collect.StreamUtils;
-import fi.thl.termed.util.concurrent.ExecutorUtils;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Stream;
 import javax.sql.DataSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -32,18 +27,18 @@ public class StreamingJdbcTemplate {
 
   private JdbcTemplate jdbcTemplate;
 
-  private Logger log = LoggerFactory.getLogger(getClass());
-  private ScheduledExecutorService executor;
-
   public StreamingJdbcTemplate(DataSource dataSource) {
     this.jdbcTemplate = new JdbcTemplate(dataSource);
-    this.executor = ExecutorUtils.newScheduledThreadPool(5);
   }
 
   public void update(String sql, Object... args) {
     jdbcTemplate.update(sql, args);
   }
 
+  public void batchUpdate(String sql, List<Object[]> batchArgs) {
+    jdbcTemplate.batchUpdate(sql, batchArgs);
+  }
+
   public <T> Stream<T> queryForStream(String sql, RowMapper<T> rowMapper, Object... args)
       throws DataAccessException {
     return queryForStream(sql, args, rowMapper);
@@ -71,22 +66,16 @@ public class StreamingJdbcTemplate {
             DataSourceUtils.releaseConnection(connection, dataSource);
           });
 
-      return withRecurringWarningIfKeptOpen(withTimeout(results, sql), sql, currentTimeMillis());
+      return withTimeout(results, sql);
     } catch (SQLException | RuntimeException | Error e) {
       DataSourceUtils.releaseConnection(connection, dataSource);
       throw new RuntimeException(e);
     }
   }
 
-  private <T> Stream<T> withTimeout(Stream<T> stream, String timeoutMessage) {
-    return StreamUtils.toStreamWithTimeout(stream, executor, STREAM_TIMEOUT_IN_MINUTES, MINUTES,
-        () -> timeoutMessage);
-  }
-
-  private <T> Stream<T> withRecurringWarningIfKeptOpen(Stream<T> stream, String sql, Long start) {
-    return StreamUtils.toStreamWithScheduledRepeatingAction(stream, executor, 1, MINUTES,
-        () -> log.debug("Result stream for {} kept open for {}",
-            sql, prettyPrintMillis(currentTimeMillis() - start)));
+  // shared stream timer also logs streams kept open and reports them as open streams
+  private <T> Stream<T> withTimeout(Stream<T> stream, String sql) {
+    return StreamUtils.toStreamWithTimeout(stream, STREAM_TIMEOUT_IN_MINUTES, MINUTES, () -> sql);
   }
 
   public <T> Optional<T> queryForOptional(String sql, Class<T> requiredType, Object... args) {
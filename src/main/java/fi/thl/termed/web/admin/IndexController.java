@@ -17,9 +17,13 @@ import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.ReindexEvent;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.util.ProgressReporter.Progress;
+import fi.thl.termed.util.index.IndexingProgress;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import fi.thl.termed.util.spring.exception.NotFoundException;
 import java.util.UUID;
 import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +48,18 @@ public class IndexController {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Autowired
+  private IndexingProgress nodeIndexingProgress;
+
+  @GetJsonMapping("/index")
+  public Progress indexingProgress(@AuthenticationPrincipal User user) {
+    if (user.getAppRole() == AppRole.SUPERUSER) {
+      return nodeIndexingProgress.getLatest().orElseThrow(NotFoundException::new);
+    } else {
+      throw new AccessDeniedException("");
+    }
+  }
+
   @DeleteMapping("/index")
   @ResponseStatus(NO_CONTENT)
   public void reindex(@AuthenticationPrincipal User user) {
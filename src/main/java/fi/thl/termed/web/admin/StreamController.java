@@ -0,0 +1,27 @@
+package fi.thl.termed.web.admin;
+
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.StreamTimer;
+import fi.thl.termed.util.concurrent.StreamTimer.OpenStream;
+import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import java.util.List;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api")
+public class StreamController {
+
+  @GetJsonMapping("/streams")
+  public List<OpenStream> openStreams(@AuthenticationPrincipal User user) {
+    if (user.getAppRole() == AppRole.SUPERUSER) {
+      return StreamTimer.shared().openStreams();
+    } else {
+      throw new AccessDeniedException("");
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package fi.thl.termed.web.dump;
+
+import static fi.thl.termed.util.collect.SetUtils.toImmutableSet;
+import static fi.thl.termed.util.spring.http.GzipAttachments.gzipAttachment;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.LocalDate.now;
+
+import com.google.gson.Gson;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.DumpId;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.json.NdjsonWriter;
+import fi.thl.termed.util.query.MatchAll;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.annotation.GetNdjsonMapping;
+import fi.thl.termed.util.spring.exception.NotFoundException;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves dumps as newline delimited JSON. Graphs are written first, then types and then nodes, one
+ * value per line. With gzip=true, dump is returned as a gzip compressed attachment.
+ */
+@RestController
+@RequestMapping("/api")
+public class DumpNdjsonReadController {
+
+  @Autowired
+  private Service<GraphId, Graph> graphService;
+
+  @Autowired
+  private Service<DumpId, Dump> dumpService;
+
+  @Autowired
+  private Gson gson;
+
+  @GetNdjsonMapping("/dump")
+  public void dump(
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    try (Stream<GraphId> graphIds = graphService.keys(new Query<>(new MatchAll<>()), user)) {
+      DumpId dumpId = new DumpId(graphIds.collect(toImmutableSet()));
+      writeNdjson(dumpId, "dump", gzip, user, response);
+    }
+  }
+
+  @GetNdjsonMapping(path = "/dump", params = "graphId")
+  public void dumpByGraphIds(
+      @RequestParam("graphId") List<UUID> ids,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    DumpId dumpId = new DumpId(ids.stream().map(GraphId::new).collect(toImmutableSet()));
+    writeNdjson(dumpId, "dump", gzip, user, response);
+  }
+
+  @GetNdjsonMapping(path = "/graphs/{graphId}/dump")
+  public void dumpByGraphId(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    Graph graph = graphService.get(new GraphId(graphId), user).orElseThrow(NotFoundException::new);
+
+    writeNdjson(new DumpId(graph.identifier()),
+        graph.getCode().orElse(graph.getId().toString()), gzip, user, response);
+  }
+
+  private void writeNdjson(DumpId dumpId, String name, boolean gzip, User user,
+      HttpServletResponse response) throws IOException {
+
+    Dump dump = dumpService.get(dumpId, user).orElseThrow(IllegalStateException::new);
+
+    try (Stream<Graph> graphs = dump.getGraphs();
+        Stream<Type> types = dump.getTypes();
+        Stream<Node> nodes = dump.getNodes();
+        NdjsonWriter writer = new NdjsonWriter(gson, open(response, name, gzip))) {
+      writer.writeAll(graphs.iterator(), Graph.class);
+      writer.writeAll(types.iterator(), Type.class);
+      writer.writeAll(nodes.iterator(), Node.class);
+    }
+  }
+
+  private OutputStream open(HttpServletResponse response, String name, boolean gzip)
+      throws IOException {
+    if (gzip) {
+      return gzipAttachment(response, now() + "-" + name + ".ndjson");
+    }
+    response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+    response.setCharacterEncoding(UTF_8.toString());
+    return response.getOutputStream();
+  }
+
+}
@@ -0,0 +1,267 @@
+package fi.thl.termed.web.dump;
+
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.DumpId;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.service.SaveMode;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Restores JSON and NDJSON dumps without reading the whole dump into memory. Graphs and types are
+ * read and saved first, nodes are then parsed lazily while they are saved. Dump is expected to
+ * list nodes after graphs and types, as in dumps written by {@link DumpReadController}.
+ *
+ * Optionally nodes are saved in checkpoints of given size, each in a separate save. A failed
+ * restore can then be resumed by skipping the nodes of already completed checkpoints.
+ */
+@Component
+class DumpRestorer {
+
+  private static final long PROGRESS_INTERVAL = 10_000;
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  @Autowired
+  private Gson gson;
+
+  @Autowired
+  private Service<DumpId, Dump> dumpService;
+
+  /**
+   * Restores JSON dump from given reader.
+   *
+   * @param resumeFrom number of nodes to skip, graphs and types are not saved again if positive
+   * @param checkpointSize number of nodes per save, or zero to save all nodes in a single save
+   */
+  void restore(Reader reader, long resumeFrom, int checkpointSize, SaveMode mode,
+      WriteOptions opts, User user) throws IOException {
+    try (Dump dump = read(new JsonReader(reader))) {
+      restore(dump, resumeFrom, checkpointSize, mode, opts, user);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Restores newline delimited JSON dump from given reader. Each line is a graph, a type or a
+   * node, with graphs and types listed before nodes.
+   */
+  void restoreNdjson(Reader reader, long resumeFrom, int checkpointSize, SaveMode mode,
+      WriteOptions opts, User user) throws IOException {
+    try (Dump dump = readNdjson(new JsonReader(reader))) {
+      restore(dump, resumeFrom, checkpointSize, mode, opts, user);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void restore(Dump dump, long resumeFrom, int checkpointSize, SaveMode mode,
+      WriteOptions opts, User user) {
+    if (resumeFrom > 0) {
+      log.info("Resuming restore from node {}", resumeFrom);
+    } else {
+      dumpService.save(new Dump(dump.getGraphs(), dump.getTypes(), Stream.empty()),
+          mode, opts, user);
+    }
+
+    Stream<Node> nodes = withProgressLogging(dump.getNodes().skip(resumeFrom), resumeFrom);
+
+    if (checkpointSize > 0) {
+      AtomicLong restored = new AtomicLong(resumeFrom);
+      Iterators.partition(nodes.iterator(), checkpointSize).forEachRemaining(batch -> {
+        dumpService.save(new Dump(Stream.empty(), Stream.empty(), batch.stream()),
+            mode, opts, user);
+        log.info("Checkpoint: restored {} nodes (resume with resumeFrom={})",
+            restored.addAndGet(batch.size()), restored.get());
+      });
+    } else {
+      dumpService.save(new Dump(Stream.empty(), Stream.empty(), nodes), mode, opts, user);
+    }
+  }
+
+  private Stream<Node> withProgressLogging(Stream<Node> nodes, long offset) {
+    AtomicLong count = new AtomicLong(offset);
+    return nodes.peek(node -> {
+      if (count.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+        log.info("Read {} nodes", count.get());
+      }
+    });
+  }
+
+  /**
+   * Reads graphs and types of the dump. Nodes of the returned dump are read lazily from the
+   * reader, and closing the dump closes the reader.
+   */
+  private Dump read(JsonReader in) throws IOException {
+    List<Graph> graphs = new ArrayList<>();
+    List<Type> types = new ArrayList<>();
+
+    in.beginObject();
+
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "graphs":
+          readArray(in, Graph.class, graphs::add);
+          break;
+        case "types":
+          readArray(in, Type.class, types::add);
+          break;
+        case "nodes":
+          if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            break;
+          }
+          log.info("Read {} graphs and {} types", graphs.size(), types.size());
+          return new Dump(graphs.stream(), types.stream(), readNodes(in));
+        default:
+          in.skipValue();
+      }
+    }
+
+    in.endObject();
+    in.close();
+
+    return new Dump(graphs.stream(), types.stream(), Stream.empty());
+  }
+
+  private <T> void readArray(JsonReader in, Class<T> valueType, Consumer<T> consumer)
+      throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return;
+    }
+
+    in.beginArray();
+    while (in.hasNext()) {
+      consumer.accept(gson.fromJson(in, valueType));
+    }
+    in.endArray();
+  }
+
+  private Stream<Node> readNodes(JsonReader in) throws IOException {
+    in.beginArray();
+
+    AbstractIterator<Node> nodes = new AbstractIterator<Node>() {
+      @Override
+      protected Node computeNext() {
+        try {
+          if (in.hasNext()) {
+            return gson.fromJson(in, Node.class);
+          }
+          in.endArray();
+          readRemainingFields(in);
+          return endOfData();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    return toStream(nodes, in);
+  }
+
+  private Stream<Node> toStream(Iterator<Node> nodes, JsonReader in) {
+    return StreamSupport.stream(spliteratorUnknownSize(nodes, ORDERED | NONNULL), false)
+        .onClose(() -> {
+          try {
+            in.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  private void readRemainingFields(JsonReader in) throws IOException {
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (name.equals("graphs") || name.equals("types")) {
+        throw new JsonParseException("Dump should list " + name + " before nodes");
+      }
+      in.skipValue();
+    }
+    in.endObject();
+  }
+
+  /**
+   * Reads graphs and types from the beginning of NDJSON dump. Values are told apart by their
+   * identifying fields: nodes refer to a type and types refer to a graph.
+   */
+  private Dump readNdjson(JsonReader in) throws IOException {
+    List<Graph> graphs = new ArrayList<>();
+    List<Type> types = new ArrayList<>();
+
+    // allows reading multiple top-level values
+    in.setLenient(true);
+
+    while (in.peek() != JsonToken.END_DOCUMENT) {
+      JsonObject value = gson.fromJson(in, JsonObject.class);
+
+      if (value.has("type")) {
+        log.info("Read {} graphs and {} types", graphs.size(), types.size());
+        Stream<Node> rest = readNdjsonNodes(in);
+        return new Dump(graphs.stream(), types.stream(),
+            Stream.concat(Stream.of(gson.fromJson(value, Node.class)), rest));
+      } else if (value.has("graph")) {
+        types.add(gson.fromJson(value, Type.class));
+      } else {
+        graphs.add(gson.fromJson(value, Graph.class));
+      }
+    }
+
+    in.close();
+
+    return new Dump(graphs.stream(), types.stream(), Stream.empty());
+  }
+
+  private Stream<Node> readNdjsonNodes(JsonReader in) {
+    AbstractIterator<Node> nodes = new AbstractIterator<Node>() {
+      @Override
+      protected Node computeNext() {
+        try {
+          if (in.peek() == JsonToken.END_DOCUMENT) {
+            return endOfData();
+          }
+          JsonObject value = gson.fromJson(in, JsonObject.class);
+          if (!value.has("type")) {
+            throw new JsonParseException("Dump should list graphs and types before nodes");
+          }
+          return gson.fromJson(value, Node.class);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    return toStream(nodes, in);
+  }
+
+}
@@ -2,16 +2,21 @@ package fi.thl.termed.web.dump;
 
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
-import fi.thl.termed.domain.Dump;
-import fi.thl.termed.domain.DumpId;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
+import fi.thl.termed.util.spring.annotation.PostNdjsonMapping;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -22,17 +27,43 @@ import org.springframework.web.bind.annotation.RestController;
 public class DumpWriteController {
 
   @Autowired
-  private Service<DumpId, Dump> dumpService;
+  private DumpRestorer dumpRestorer;
 
   @PostJsonMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
-  public void restore(@RequestBody Dump dump,
+  public void restore(HttpServletRequest request,
       @RequestParam(name = "mode", defaultValue = "upsert") String mode,
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
-      @AuthenticationPrincipal User user) {
-    dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+      @RequestParam(name = "checkpointSize", defaultValue = "0") int checkpointSize,
+      @RequestParam(name = "resumeFrom", defaultValue = "0") long resumeFrom,
+      @AuthenticationPrincipal User user) throws IOException {
+    dumpRestorer.restore(requestReader(request),
+        resumeFrom, checkpointSize, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+  }
+
+  @PostNdjsonMapping(produces = {})
+  @ResponseStatus(NO_CONTENT)
+  public void restoreNdjson(HttpServletRequest request,
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      @RequestParam(name = "checkpointSize", defaultValue = "0") int checkpointSize,
+      @RequestParam(name = "resumeFrom", defaultValue = "0") long resumeFrom,
+      @AuthenticationPrincipal User user) throws IOException {
+    dumpRestorer.restoreNdjson(requestReader(request),
+        resumeFrom, checkpointSize, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+  }
+
+  // gzip compressed dumps can be posted with "Content-Encoding: gzip"
+  private Reader requestReader(HttpServletRequest request) throws IOException {
+    InputStream input = request.getInputStream();
+    if ("gzip".equalsIgnoreCase(request.getHeader(CONTENT_ENCODING))) {
+      input = new GZIPInputStream(input, 32 * 1024);
+    }
+    return new InputStreamReader(input, UTF_8);
   }
 
 }
@@ -8,13 +8,9 @@ import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
-import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
-import fi.thl.termed.domain.Dump;
-import fi.thl.termed.domain.DumpId;
 import fi.thl.termed.domain.UrlWithCredentials;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -41,10 +37,7 @@ public class DumpWriteFromRemoteController {
   private Logger log = LoggerFactory.getLogger(getClass());
 
   @Autowired
-  private Gson gson;
-
-  @Autowired
-  private Service<DumpId, Dump> dumpService;
+  private DumpRestorer dumpRestorer;
 
   private CloseableHttpClient httpClient = HttpClientBuilder.create().build();
 
@@ -55,6 +48,8 @@ public class DumpWriteFromRemoteController {
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      @RequestParam(name = "checkpointSize", defaultValue = "0") int checkpointSize,
+      @RequestParam(name = "resumeFrom", defaultValue = "0") long resumeFrom,
       @AuthenticationPrincipal User user) throws IOException {
 
     if (user.getAppRole() == AppRole.ADMIN || user.getAppRole() == AppRole.SUPERUSER) {
@@ -65,12 +60,11 @@ public class DumpWriteFromRemoteController {
       log.info("Downloading {} as {}", remote.getUrl(), remote.getUsername());
 
       try (CloseableHttpResponse response = httpClient.execute(request)) {
-        Dump dump = gson.fromJson(
-            new InputStreamReader(response.getEntity().getContent(), UTF_8), Dump.class);
-
         log.info("Restoring");
 
-        dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+        dumpRestorer.restore(new InputStreamReader(response.getEntity().getContent(), UTF_8),
+            resumeFrom, checkpointSize, saveMode(mode), opts(sync, generateCodes, generateUris),
+            user);
       }
 
       log.info("Done");
@@ -0,0 +1,126 @@
+package fi.thl.termed.web.node;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Longs;
+import fi.thl.termed.util.index.IndexGenerations;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Provides read-your-writes consistency for index backed reads. Responses to writes carry the
+ * index generation of the write in a header. Clients may send the generation with later reads,
+ * which then wait until the generation is searchable (or timeout expires) before reading.
+ * Generations above the current write generation can't come from completed writes (e.g. they are
+ * from before a restart) and are clamped to the current one.
+ *
+ * With asynchronous indexing, writes return before their nodes are indexed, so the header is only
+ * added to responses of writes with sync=true.
+ */
+@Component
+public class IndexGenerationFilter extends OncePerRequestFilter {
+
+  public static final String INDEX_GENERATION = "Termed-Index-Generation";
+
+  private static final Set<String> READ_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS");
+
+  private final IndexGenerations indexGenerations;
+  private final long generationTimeoutMillis;
+  private final boolean asyncIndexing;
+
+  @Autowired
+  public IndexGenerationFilter(IndexGenerations indexGenerations,
+      @Value("${fi.thl.termed.index.generationTimeout:10000}") long generationTimeoutMillis,
+      @Value("${fi.thl.termed.index.async:false}") boolean asyncIndexing) {
+    this.indexGenerations = indexGenerations;
+    this.generationTimeoutMillis = generationTimeoutMillis;
+    this.asyncIndexing = asyncIndexing;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+
+    String generation = request.getHeader(INDEX_GENERATION);
+
+    if (generation != null) {
+      Long parsedGeneration = Longs.tryParse(generation.trim());
+      if (parsedGeneration == null) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "Illegal " + INDEX_GENERATION + " header value: " + generation);
+        return;
+      }
+      indexGenerations.awaitWriteGeneration(
+          Math.min(parsedGeneration, indexGenerations.writeGeneration()),
+          generationTimeoutMillis, MILLISECONDS);
+    }
+
+    if (READ_METHODS.contains(request.getMethod())) {
+      chain.doFilter(request, response);
+    } else {
+      GenerationHeaderResponse generationResponse =
+          new GenerationHeaderResponse(request, response);
+      chain.doFilter(request, generationResponse);
+      generationResponse.setGenerationHeader();
+    }
+  }
+
+  /**
+   * Adds generation header just before response body is written, i.e. after the write has been
+   * done, or after the request if no body is written.
+   */
+  private class GenerationHeaderResponse extends HttpServletResponseWrapper {
+
+    private final HttpServletRequest request;
+    private boolean generationSet = false;
+
+    GenerationHeaderResponse(HttpServletRequest request, HttpServletResponse response) {
+      super(response);
+      this.request = request;
+    }
+
+    // request parameters are read only here, i.e. after the request body has been read
+    void setGenerationHeader() {
+      if (!generationSet && !isCommitted() && isIndexedBeforeResponse()) {
+        setHeader(INDEX_GENERATION, String.valueOf(indexGenerations.writeGeneration()));
+      }
+      generationSet = true;
+    }
+
+    private boolean isIndexedBeforeResponse() {
+      return !asyncIndexing || Boolean.parseBoolean(request.getParameter("sync"));
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      setGenerationHeader();
+      return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      setGenerationHeader();
+      return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      setGenerationHeader();
+      super.flushBuffer();
+    }
+
+  }
+
+}
@@ -7,12 +7,15 @@ import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.LocalDate.now;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toCollection;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
@@ -38,6 +41,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.stream.Stream;
 import javax.servlet.http.HttpServletResponse;
@@ -75,6 +80,8 @@ public class NodeCsvReadController {
       @RequestParam(name = "useLabeledReferences", defaultValue = "false") boolean useLabeledReferences,
       @RequestParam(name = "labelAttribute", defaultValue = "prefLabel") String labelAttribute,
       @RequestParam(name = "labelLang", defaultValue = "") String labelLang,
+      @RequestParam(name = "streaming", defaultValue = "false") boolean streaming,
+      @RequestParam(name = "langs", defaultValue = EMPTY_LIST) List<String> langs,
       @AuthenticationPrincipal User user,
       HttpServletResponse response) throws IOException {
 
@@ -97,20 +104,19 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, types, selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
-      CsvOptions csvOptions = CsvOptions.builder()
-          .delimiter(delimiter)
-          .quoteChar(quoteChar)
-          .escapeChar(quoteChar.value())
-          .recordSeparator(lineBreak)
-          .quoteAll(quoteAll)
-          .charset(charset).build();
-
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+    CsvOptions csvOptions = CsvOptions.builder()
+        .delimiter(delimiter)
+        .quoteChar(quoteChar)
+        .escapeChar(quoteChar.value())
+        .recordSeparator(lineBreak)
+        .quoteAll(quoteAll)
+        .charset(charset).build();
+    NodesToCsv nodesToCsv = new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
+        (id) -> nodeService.get(id, user));
+
+    try (OutputStream out = response.getOutputStream()) {
+      writeCsv(new Query<>(qSelects, spec, sorts, max), types, selects, streaming, langs,
+          nodesToCsv, csvOptions, user, out);
     }
   }
 
@@ -130,6 +136,8 @@ public class NodeCsvReadController {
       @RequestParam(name = "useLabeledReferences", defaultValue = "false") boolean useLabeledReferences,
       @RequestParam(name = "labelAttribute", defaultValue = "prefLabel") String labelAttribute,
       @RequestParam(name = "labelLang", defaultValue = "") String labelLang,
+      @RequestParam(name = "streaming", defaultValue = "false") boolean streaming,
+      @RequestParam(name = "langs", defaultValue = EMPTY_LIST) List<String> langs,
       @AuthenticationPrincipal User user,
       HttpServletResponse response) throws IOException {
 
@@ -158,20 +166,19 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, domains, selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
-      CsvOptions csvOptions = CsvOptions.builder()
-          .delimiter(delimiter)
-          .quoteChar(quoteChar)
-          .escapeChar(quoteChar.value())
-          .recordSeparator(lineBreak)
-          .quoteAll(quoteAll)
-          .charset(charset).build();
-
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+    CsvOptions csvOptions = CsvOptions.builder()
+        .delimiter(delimiter)
+        .quoteChar(quoteChar)
+        .escapeChar(quoteChar.value())
+        .recordSeparator(lineBreak)
+        .quoteAll(quoteAll)
+        .charset(charset).build();
+    NodesToCsv nodesToCsv = new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
+        (id) -> nodeService.get(id, user));
+
+    try (OutputStream out = response.getOutputStream()) {
+      writeCsv(new Query<>(qSelects, spec, sorts, max), domains, selects, streaming, langs,
+          nodesToCsv, csvOptions, user, out);
     }
   }
 
@@ -192,6 +199,8 @@ public class NodeCsvReadController {
       @RequestParam(name = "useLabeledReferences", defaultValue = "false") boolean useLabeledReferences,
       @RequestParam(name = "labelAttribute", defaultValue = "prefLabel") String labelAttribute,
       @RequestParam(name = "labelLang", defaultValue = "") String labelLang,
+      @RequestParam(name = "streaming", defaultValue = "false") boolean streaming,
+      @RequestParam(name = "langs", defaultValue = EMPTY_LIST) List<String> langs,
       @AuthenticationPrincipal User user,
       HttpServletResponse response) throws IOException {
 
@@ -220,20 +229,57 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, of(domain), selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
-      CsvOptions csvOptions = CsvOptions.builder()
-          .delimiter(delimiter)
-          .quoteChar(quoteChar)
-          .escapeChar(quoteChar.value())
-          .recordSeparator(lineBreak)
-          .quoteAll(quoteAll)
-          .charset(charset).build();
-
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+    CsvOptions csvOptions = CsvOptions.builder()
+        .delimiter(delimiter)
+        .quoteChar(quoteChar)
+        .escapeChar(quoteChar.value())
+        .recordSeparator(lineBreak)
+        .quoteAll(quoteAll)
+        .charset(charset).build();
+    NodesToCsv nodesToCsv = new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
+        (id) -> nodeService.get(id, user));
+
+    try (OutputStream out = response.getOutputStream()) {
+      writeCsv(new Query<>(qSelects, spec, sorts, max), of(domain), selects, streaming, langs,
+          nodesToCsv, csvOptions, user, out);
+    }
+  }
+
+  // in streaming mode, columns are derived from domain types and languages before writing any rows
+  private void writeCsv(Query<NodeId, Node> query, List<Type> domains, List<Select> selects,
+      boolean streaming, List<String> langs, NodesToCsv nodesToCsv, CsvOptions csvOptions,
+      User user, OutputStream out) {
+    if (streaming) {
+      List<String> columns = nodesToCsv.columns(domains, selects, langs.isEmpty()
+          ? propertyLangs(query, nodesToCsv.propertySelects(domains, selects), user)
+          : langs);
+
+      try (Stream<Node> nodes = nodeService.values(query, user)) {
+        nodesToCsv.writeAsCsv(nodes, columns, selects, csvOptions, out);
+      }
+    } else {
+      try (Stream<Node> nodes = nodeService.values(query, user)) {
+        nodesToCsv.writeAsCsv(nodes, selects, csvOptions, out);
+      }
+    }
+  }
+
+  // first pass over results to find used languages, only selected properties of nodes are loaded
+  // and only a set of language codes is kept in memory
+  private Set<String> propertyLangs(Query<NodeId, Node> query, List<Select> propertySelects,
+      User user) {
+    if (propertySelects.isEmpty()) {
+      return emptySet();
+    }
+
+    Query<NodeId, Node> propertyQuery = new Query<>(
+        propertySelects, query.getWhere(), query.getSort(), query.getMax());
+
+    try (Stream<Node> nodes = nodeService.values(propertyQuery, user)) {
+      return nodes
+          .flatMap(node -> node.getProperties().values().stream())
+          .map(StrictLangValue::getLang)
+          .collect(toCollection(TreeSet::new));
     }
   }
 
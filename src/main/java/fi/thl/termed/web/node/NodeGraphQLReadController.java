@@ -16,8 +16,12 @@ import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
@@ -25,20 +29,25 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
 import fi.thl.termed.service.node.sort.NodeSorts;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.node.util.IndexedReferenceLoader;
 import fi.thl.termed.service.node.util.IndexedReferrerLoader;
 import fi.thl.termed.service.node.util.TypeToGraphQLType;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.exception.BadRequestException;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.GraphQLError;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.GraphQLType;
@@ -47,6 +56,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import javax.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -64,12 +74,32 @@ public class NodeGraphQLReadController {
 
   private Logger log = LoggerFactory.getLogger(getClass());
 
+  private static final int SCHEMA_CACHE_SIZE = 100;
+  private static final int DOCUMENT_CACHE_SIZE = 1000;
+
   @Autowired
   private Service<GraphId, Graph> graphService;
   @Autowired
   private Service<TypeId, Type> typeService;
   @Autowired
   private Service<NodeId, Node> nodeService;
+  @Autowired
+  private EventBus eventBus;
+
+  // schemas are keyed by domain and the full type model visible to the user, any change in types
+  // yields a new key so stale schemas are never used (and are eventually evicted)
+  private final Cache<Tuple2<TypeId, ImmutableList<Type>>, GraphQL> graphQLCache =
+      CacheBuilder.newBuilder().maximumSize(SCHEMA_CACHE_SIZE).build();
+
+  @PostConstruct
+  public void registerToEventBus() {
+    eventBus.register(this);
+  }
+
+  @Subscribe
+  public void clearCachesOn(InvalidateCachesEvent e) {
+    graphQLCache.invalidateAll();
+  }
 
   @PostMapping(value = "/graphs/{graphId}/types/{typeId}/nodes/graphql", produces = APPLICATION_JSON_UTF8_VALUE)
   public Object queryNodesOfType(
@@ -85,10 +115,35 @@ public class NodeGraphQLReadController {
     ImmutableList<Graph> allGraphs = toImmutableListAndClose(graphService.values(matchAll(), user));
     ImmutableList<Type> allTypes = toImmutableListAndClose(typeService.values(matchAll(), user));
 
+    GraphQL graphQL = graphQLCache.asMap().computeIfAbsent(Tuple.of(domainId, allTypes),
+        key -> buildGraphQL(domainId, allTypes));
+
+    ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+        .query(graphQLQueryString)
+        .context(new ExecutionContext(allGraphs, allTypes, domain, user))
+        .build());
+
+    if (!result.getErrors().isEmpty()) {
+      throw new BadRequestException(result.getErrors().stream()
+          .map(GraphQLError::getMessage)
+          .collect(joining(", ")));
+    }
+
+    if (unwrapResults) {
+      return ((Map<String, Object>) result.toSpecification()
+          .getOrDefault("data", Collections.emptyMap()))
+          .getOrDefault("nodes", Collections.emptyList());
+    } else {
+      return result.toSpecification();
+    }
+  }
+
+  // built schema holds no user specific data, data fetchers read it from the execution context
+  private GraphQL buildGraphQL(TypeId domainId, List<Type> allTypes) {
     Map<String, GraphQLType> graphQLTypesByName = allTypes.stream()
         .map(new TypeToGraphQLType(allTypes,
-            new IndexedReferenceLoader(nodeService, user),
-            new IndexedReferrerLoader(nodeService, user)))
+            env -> env.<ExecutionContext>getContext().referenceLoader,
+            env -> env.<ExecutionContext>getContext().referrerLoader))
         .collect(toMap(GraphQLType::getName, t -> t));
 
     GraphQLObjectType queryGraphQLType = GraphQLObjectType.newObject()
@@ -101,16 +156,19 @@ public class NodeGraphQLReadController {
                 newArgument().name("sort").type(list(GraphQLString)).defaultValue(of()).build(),
                 newArgument().name("max").type(GraphQLInt).defaultValue(-1).build()))
             .dataFetcher(env -> {
+              ExecutionContext ctx = env.getContext();
+
               String where = env.getArgument("where");
               List<String> sort = env.getArgument("sort");
               Integer max = env.getArgument("max");
 
               Specification<NodeId, Node> nodeSpecification = where.isEmpty() ?
-                  and(NodesByGraphId.of(graphId), NodesByTypeId.of(typeId)) :
-                  specifyByQuery(allGraphs, allTypes, domain, where);
+                  and(NodesByGraphId.of(domainId.getGraphId()),
+                      NodesByTypeId.of(domainId.getId())) :
+                  specifyByQuery(ctx.allGraphs, ctx.allTypes, ctx.domain, where);
 
               return toImmutableListAndClose(nodeService.values(
-                  new Query<>(nodeSpecification, NodeSorts.parse(sort), max), user));
+                  new Query<>(nodeSpecification, NodeSorts.parse(sort), max), ctx.user));
             }))
         .build();
 
@@ -123,21 +181,35 @@ public class NodeGraphQLReadController {
       log.trace("GraphQLSchema: {}", new SchemaPrinter().print(graphQLSchema));
     }
 
-    ExecutionResult result = GraphQL.newGraphQL(graphQLSchema).build().execute(graphQLQueryString);
+    // parsed and validated query documents are cached per schema
+    Cache<String, PreparsedDocumentEntry> documentCache =
+        CacheBuilder.newBuilder().maximumSize(DOCUMENT_CACHE_SIZE).build();
 
-    if (!result.getErrors().isEmpty()) {
-      throw new BadRequestException(result.getErrors().stream()
-          .map(GraphQLError::getMessage)
-          .collect(joining(", ")));
-    }
+    return GraphQL.newGraphQL(graphQLSchema)
+        .preparsedDocumentProvider((query, parseAndValidate) ->
+            documentCache.asMap().computeIfAbsent(query, parseAndValidate))
+        .build();
+  }
 
-    if (unwrapResults) {
-      return ((Map<String, Object>) result.toSpecification()
-          .getOrDefault("data", Collections.emptyMap()))
-          .getOrDefault("nodes", Collections.emptyList());
-    } else {
-      return result.toSpecification();
+  private class ExecutionContext {
+
+    private final List<Graph> allGraphs;
+    private final List<Type> allTypes;
+    private final Type domain;
+    private final User user;
+
+    private final IndexedReferenceLoader referenceLoader;
+    private final IndexedReferrerLoader referrerLoader;
+
+    ExecutionContext(List<Graph> allGraphs, List<Type> allTypes, Type domain, User user) {
+      this.allGraphs = allGraphs;
+      this.allTypes = allTypes;
+      this.domain = domain;
+      this.user = user;
+      this.referenceLoader = new IndexedReferenceLoader(nodeService, user);
+      this.referrerLoader = new IndexedReferrerLoader(nodeService, user);
     }
+
   }
 
 }
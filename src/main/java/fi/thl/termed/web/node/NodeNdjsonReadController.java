@@ -0,0 +1,239 @@
+package fi.thl.termed.web.node;
+
+import static com.google.common.collect.ImmutableList.of;
+import static fi.thl.termed.service.node.select.NodeSelects.parse;
+import static fi.thl.termed.service.node.select.NodeSelects.qualify;
+import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByAnyPropertyPrefix;
+import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByQuery;
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.Queries.matchAll;
+import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
+import static fi.thl.termed.util.spring.http.GzipAttachments.gzipAttachment;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.LocalDate.now;
+
+import com.google.gson.Gson;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.sort.NodeSorts;
+import fi.thl.termed.service.node.util.NodeTreeToJsonStream;
+import fi.thl.termed.service.node.util.PrefetchingNodeTreeBuilder;
+import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.json.NdjsonWriter;
+import fi.thl.termed.util.query.MatchAll;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Sort;
+import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.annotation.GetNdjsonMapping;
+import fi.thl.termed.util.spring.exception.NotFoundException;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves nodes and node trees as newline delimited JSON, one node (or tree) per line. With
+ * gzip=true, result is returned as a gzip compressed attachment.
+ */
+@RestController
+@RequestMapping("/api")
+public class NodeNdjsonReadController {
+
+  @Autowired
+  private Service<GraphId, Graph> graphService;
+  @Autowired
+  private Service<TypeId, Type> typeService;
+  @Autowired
+  private Service<NodeId, Node> nodeService;
+  @Autowired
+  private Gson gson;
+
+  @GetNdjsonMapping("/nodes")
+  public void get(
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    Specification<NodeId, Node> spec = or(toListAndClose(
+        typeService.values(new Query<>(new MatchAll<>()), user)
+            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(new Query<>(spec, sorts, max), user, gzip, response);
+  }
+
+  @GetNdjsonMapping("/graphs/{graphId}/nodes")
+  public void get(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    if (!graphService.exists(new GraphId(graphId), user)) {
+      throw new NotFoundException();
+    }
+
+    Specification<NodeId, Node> spec = or(toListAndClose(
+        typeService.values(new Query<>(new TypesByGraphId(graphId)), user)
+            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(new Query<>(spec, sorts, max), user, gzip, response);
+  }
+
+  @GetNdjsonMapping("/graphs/{graphId}/types/{typeId}/nodes")
+  public void get(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    Type type = typeService.get(TypeId.of(typeId, graphId), user)
+        .orElseThrow(NotFoundException::new);
+
+    Specification<NodeId, Node> spec = specifyByAnyPropertyPrefix(type, query);
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(new Query<>(spec, sorts, max), user, gzip, response);
+  }
+
+  @GetNdjsonMapping("/node-trees")
+  public void getTrees(
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, types, where);
+    List<Select> selects = qualify(types, types, parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(new Query<>(selects, spec, sorts, max), user, htmlSafe, gzip, response);
+  }
+
+  @GetNdjsonMapping("/graphs/{graphId}/node-trees")
+  public void getTrees(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    if (!graphService.exists(new GraphId(graphId), user)) {
+      throw new NotFoundException();
+    }
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+    List<Type> domains = toImmutableListAndClose(
+        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domains, where);
+    List<Select> selects = qualify(types, domains, parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(new Query<>(selects, spec, sorts, max), user, htmlSafe, gzip, response);
+  }
+
+  @GetNdjsonMapping("/graphs/{graphId}/types/{typeId}/node-trees")
+  public void getTrees(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+    Type domain = typeService.get(TypeId.of(typeId, graphId), user)
+        .orElseThrow(NotFoundException::new);
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domain, where);
+    List<Select> selects = qualify(types, of(domain), parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(new Query<>(selects, spec, sorts, max), user, htmlSafe, gzip, response);
+  }
+
+  private void writeNodes(Query<NodeId, Node> query, User user, boolean gzip,
+      HttpServletResponse response) throws IOException {
+    try (Stream<Node> nodes = nodeService.values(query, user);
+        NdjsonWriter writer = new NdjsonWriter(gson, open(response, "nodes", gzip))) {
+      writer.writeAll(nodes.iterator(), Node.class);
+    }
+  }
+
+  private void writeTrees(Query<NodeId, Node> query, User user, boolean htmlSafe, boolean gzip,
+      HttpServletResponse response) throws IOException {
+    try (Stream<Node> nodes = nodeService.values(query, user);
+        NdjsonWriter writer = new NdjsonWriter(gson, open(response, "node-trees", gzip))) {
+      writer.jsonWriter().setHtmlSafe(htmlSafe);
+
+      Iterator<NodeTree> trees = new PrefetchingNodeTreeBuilder(nodeService, user,
+          query.getSelect()).toTrees(nodes).iterator();
+
+      while (trees.hasNext()) {
+        NodeTreeToJsonStream.toJson(trees.next(), writer.jsonWriter());
+        writer.endLine();
+      }
+    }
+  }
+
+  private OutputStream open(HttpServletResponse response, String name, boolean gzip)
+      throws IOException {
+    if (gzip) {
+      return gzipAttachment(response, now() + "-" + name + ".ndjson");
+    }
+    response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+    response.setCharacterEncoding(UTF_8.toString());
+    return response.getOutputStream();
+  }
+
+}
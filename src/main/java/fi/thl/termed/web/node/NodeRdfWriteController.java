@@ -3,6 +3,7 @@ package fi.thl.termed.web.node;
 import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
 import fi.thl.termed.domain.Graph;
@@ -13,6 +14,7 @@ import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.service.node.util.RdfModelToNodes;
+import fi.thl.termed.service.node.util.RdfStreamToNodes;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.jena.JenaRdfModel;
@@ -22,14 +24,24 @@ import fi.thl.termed.util.spring.annotation.PatchRdfMapping;
 import fi.thl.termed.util.spring.annotation.PostRdfMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import fi.thl.termed.util.spring.http.HttpPreconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
+import javax.servlet.http.HttpServletRequest;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -79,6 +91,37 @@ public class NodeRdfWriteController {
     nodeService.save(nodes.stream(), saveMode(mode), opts(sync, generateCodes, generateUris), user);
   }
 
+  /**
+   * Imports RDF without reading it into a model. Body is spooled into a temporary file which is
+   * then converted into nodes in a streaming fashion and saved in batches.
+   */
+  @PostRdfMapping(params = "stream=true", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  private void postStream(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "importCodes", defaultValue = "true") boolean importCodes,
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      HttpServletRequest request,
+      @AuthenticationPrincipal User user) throws IOException {
+
+    HttpPreconditions.checkFound(
+        graphService.exists(GraphId.of(graphId), user),
+        "Graph not found.");
+
+    log.info("Importing RDF-stream {} (user: {})", graphId, user.getUsername());
+
+    Path file = spool(request);
+
+    try (Stream<Node> nodes = streamNodes(graphId, file, requestLang(request), importCodes, user)) {
+      nodeService.save(nodes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
   @PatchRdfMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
   private void patch(
@@ -105,7 +148,43 @@ public class NodeRdfWriteController {
     List<Node> nodes = new RdfModelToNodes(types, q -> nodeService.keys(q, user), false)
         .apply(new JenaRdfModel(model));
 
-    Stream<Node> patchedNodesStream = nodes.stream()
+    patchNodes(nodes.stream(), mode, sync, append, lenient, user);
+  }
+
+  @PatchRdfMapping(params = "stream=true", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  private void patchStream(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(name = "mode", defaultValue = "update") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "append", defaultValue = "true") boolean append,
+      @RequestParam(name = "lenient", defaultValue = "false") boolean lenient,
+      HttpServletRequest request,
+      @AuthenticationPrincipal User user) throws IOException {
+
+    HttpPreconditions.checkRequestParam(
+        mode.matches("update|upsert"),
+        "Use mode \"update\" or \"upsert \" when patching existing nodes.");
+
+    HttpPreconditions.checkFound(
+        graphService.exists(GraphId.of(graphId), user),
+        "Graph not found.");
+
+    log.info("Patching RDF-stream {} (user: {})", graphId, user.getUsername());
+
+    Path file = spool(request);
+
+    try (Stream<Node> nodes = streamNodes(graphId, file, requestLang(request), false, user)) {
+      patchNodes(nodes, mode, sync, append, lenient, user);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private void patchNodes(Stream<Node> patches, String mode, boolean sync, boolean append,
+      boolean lenient, User user) {
+
+    Stream<Node> patchedNodesStream = patches
         .map(patch -> Tuple.of(patch, nodeService.get(patch.identifier(), user)))
         .filter(patchAndBaseNode -> {
           Node patch = patchAndBaseNode._1;
@@ -141,4 +220,49 @@ public class NodeRdfWriteController {
     nodeService.save(patchedNodesStream, saveMode(mode), opts(sync), user);
   }
 
+  private Path spool(HttpServletRequest request) throws IOException {
+    Path file = Files.createTempFile("termed-rdf-", ".tmp");
+    try (InputStream input = request.getInputStream()) {
+      Files.copy(input, file, REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return file;
+  }
+
+  private Lang requestLang(HttpServletRequest request) {
+    if (request.getContentType() == null) {
+      return Lang.RDFXML;
+    }
+    MediaType mediaType = MediaType.parseMediaType(request.getContentType());
+    Lang lang = RDFLanguages.contentTypeToLang(
+        mediaType.getType() + "/" + mediaType.getSubtype());
+    return lang != null ? lang : Lang.RDFXML;
+  }
+
+  private Stream<Node> streamNodes(UUID graphId, Path file, Lang lang, boolean importCodes,
+      User user) throws IOException {
+
+    List<Type> types = toImmutableListAndClose(
+        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+
+    Optional<Stream<Node>> nodes = new RdfStreamToNodes(
+        types, q -> nodeService.values(q, user), importCodes).apply(file, lang);
+
+    if (nodes.isPresent()) {
+      return nodes.get();
+    }
+
+    log.info("RDF input is not grouped by subject, reading it into a model");
+
+    Model model = ModelFactory.createDefaultModel();
+    try (InputStream input = Files.newInputStream(file)) {
+      RDFDataMgr.read(model, input, lang);
+    }
+
+    return new RdfModelToNodes(types, q -> nodeService.keys(q, user), importCodes)
+        .apply(new JenaRdfModel(model)).stream();
+  }
+
 }
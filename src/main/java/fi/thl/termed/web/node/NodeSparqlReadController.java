@@ -13,8 +13,10 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.util.NodeRdfGraphStore;
 import fi.thl.termed.service.node.util.NodeRdfGraphWrapper;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.jena.GraphStatisticsStageGenerator;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.rdf.RdfMediaTypes;
@@ -39,6 +41,8 @@ import org.apache.jena.query.ResultSetFormatter;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.engine.main.StageBuilder;
+import org.apache.jena.sparql.engine.main.StageGenerator;
 import org.apache.jena.update.UpdateAction;
 import org.apache.jena.update.UpdateFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -67,19 +71,40 @@ public class NodeSparqlReadController {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Autowired
+  private NodeRdfGraphStore nodeRdfGraphStore;
+
+  // orders triple patterns by graph statistics
+  private final StageGenerator stageGenerator = new GraphStatisticsStageGenerator();
+
   @Value("${fi.thl.termed.defaultNamespace:}")
   private String defaultNamespace;
 
-  private Model buildModelWrapper(UUID graphId, User user) {
+  @Value("${fi.thl.termed.sparql.materialized:false}")
+  private boolean materialized;
+
+  // runs query against in-memory graph if materialized graphs are enabled, otherwise queries
+  // nodes from the node service as triples are requested
+  private <T> T queryModel(UUID graphId, User user, Function<Model, T> query) {
     if (!graphService.exists(new GraphId(graphId), user)) {
       throw new NotFoundException();
     }
 
+    if (materialized) {
+      return nodeRdfGraphStore.query(new GraphId(graphId), user,
+          graph -> query.apply(createModelForGraph(graph)));
+    }
+
+    return query.apply(buildModelWrapper(graphId, user));
+  }
+
+  private Model buildModelWrapper(UUID graphId, User user) {
     List<Type> types = toListAndClose(
         typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
     Function<Specification<NodeId, Node>, Stream<Node>> nodes =
         s -> nodeService.values(new Query<>(s, emptyList(), -1), user);
-    return createModelForGraph(new NodeRdfGraphWrapper(defaultNamespace, types, nodes));
+    Function<Specification<NodeId, Node>, Long> counts = s -> nodeService.count(s, user);
+    return createModelForGraph(new NodeRdfGraphWrapper(defaultNamespace, types, nodes, counts));
   }
 
   @PostMapping(produces = MediaType.TEXT_PLAIN_VALUE)
@@ -87,22 +112,22 @@ public class NodeSparqlReadController {
       @PathVariable("graphId") UUID graphId,
       @RequestParam(value = "timeout", defaultValue = "10") int timeout,
       @RequestBody String sparqlSelect,
-      @AuthenticationPrincipal User user)
-      throws IOException {
-
-    Model model = buildModelWrapper(graphId, user);
-
-    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
-    qe.setTimeout(timeout, TimeUnit.SECONDS);
-    ResultSet results = qe.execSelect();
-
-    try {
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      ResultSetFormatter.out(out, results);
-      return new ResponseEntity<>(out.toString(UTF_8.name()), HttpStatus.OK);
-    } catch (QueryCancelledException e) {
-      return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
-    }
+      @AuthenticationPrincipal User user) {
+
+    return queryModel(graphId, user, model -> {
+      QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
+      qe.setTimeout(timeout, TimeUnit.SECONDS);
+      StageBuilder.setGenerator(qe.getContext(), stageGenerator);
+      ResultSet results = qe.execSelect();
+
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultSetFormatter.out(out, results);
+        return new ResponseEntity<>(new String(out.toByteArray(), UTF_8), HttpStatus.OK);
+      } catch (QueryCancelledException e) {
+        return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
+      }
+    });
   }
 
   @PostMapping(produces = MediaTypes.TEXT_CSV_VALUE)
@@ -110,22 +135,22 @@ public class NodeSparqlReadController {
       @PathVariable("graphId") UUID graphId,
       @RequestParam(value = "timeout", defaultValue = "10") int timeout,
       @RequestBody String sparqlSelect,
-      @AuthenticationPrincipal User user)
-      throws IOException {
-
-    Model model = buildModelWrapper(graphId, user);
-
-    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
-    qe.setTimeout(timeout, TimeUnit.SECONDS);
-    ResultSet results = qe.execSelect();
-
-    try {
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      ResultSetFormatter.outputAsCSV(out, results);
-      return new ResponseEntity<>(out.toString(UTF_8.name()), HttpStatus.OK);
-    } catch (QueryCancelledException e) {
-      return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
-    }
+      @AuthenticationPrincipal User user) {
+
+    return queryModel(graphId, user, model -> {
+      QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
+      qe.setTimeout(timeout, TimeUnit.SECONDS);
+      StageBuilder.setGenerator(qe.getContext(), stageGenerator);
+      ResultSet results = qe.execSelect();
+
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultSetFormatter.outputAsCSV(out, results);
+        return new ResponseEntity<>(new String(out.toByteArray(), UTF_8), HttpStatus.OK);
+      } catch (QueryCancelledException e) {
+        return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
+      }
+    });
   }
 
   @PostMapping(params = "postProcess=true", produces = RdfMediaTypes.TURTLE_VALUE)
@@ -135,7 +160,7 @@ public class NodeSparqlReadController {
       @AuthenticationPrincipal User user,
       HttpServletResponse response) throws IOException {
 
-    Model model = ModelFactory.createDefaultModel().add(buildModelWrapper(graphId, user));
+    Model model = queryModel(graphId, user, m -> ModelFactory.createDefaultModel().add(m));
 
     UpdateAction.execute(UpdateFactory.create(sparqlUpdate), model);
 
@@ -0,0 +1,18 @@
+--
+-- Persisted webhook payloads waiting for (re)delivery
+--
+
+CREATE SEQUENCE webhook_outbox_seq;
+
+CREATE TABLE webhook_outbox (
+  id bigint,
+  webhook_id uuid NOT NULL,
+  payload text NOT NULL,
+  attempts integer NOT NULL,
+  next_attempt timestamp NOT NULL,
+  CONSTRAINT webhook_outbox_pkey PRIMARY KEY (id),
+  CONSTRAINT webhook_outbox_webhook_fkey FOREIGN KEY (webhook_id)
+    REFERENCES webhook(id) ON DELETE CASCADE
+);
+
+CREATE INDEX webhook_outbox_next_attempt_idx ON webhook_outbox(next_attempt);
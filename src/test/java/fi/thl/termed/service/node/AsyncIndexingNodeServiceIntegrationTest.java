@@ -0,0 +1,125 @@
+package fi.thl.termed.service.node;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.Queries.query;
+import static fi.thl.termed.util.query.Specifications.asLucene;
+import static fi.thl.termed.util.query.Specifications.asSql;
+import static fi.thl.termed.util.service.SaveMode.INSERT;
+import static fi.thl.termed.util.service.SaveMode.UPDATE;
+import static fi.thl.termed.util.service.WriteOptions.opts;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runInTransaction;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMultimap;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@TestPropertySource(properties = "fi.thl.termed.index.async=true")
+class AsyncIndexingNodeServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldIndexNodesAndNeighboursBeforeSyncWriteReturns() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+
+    Node john = Node.builder().id(johnId)
+        .addProperty("name", "John")
+        .build();
+    Node jack = Node.builder().id(jackId)
+        .addProperty("name", "Jack")
+        .build();
+
+    nodeService.save(Stream.of(john, jack), INSERT, opts(true), user);
+
+    assertEquals(2, nodeService.count(asLucene(new NodesByGraphId(graphId)), user));
+
+    Node jackKnowsJohn = Node.builderFromCopyOf(jack)
+        .references(ImmutableMultimap.of("knows", johnId))
+        .build();
+
+    nodeService.save(jackKnowsJohn, UPDATE, opts(true), user);
+
+    List<Node> indexedJohn = toListAndClose(nodeService.values(
+        query(asLucene(NodesById.of(johnId.getId()))), user));
+
+    assertEquals(1, indexedJohn.size());
+    assertTrue(indexedJohn.get(0).getReferrers().containsEntry("knows", jackId));
+  }
+
+  @Test
+  void shouldIndexWritesOfEnclosingTransactionAfterCommit() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+
+    runInTransaction(transactionManager, () -> {
+      nodeService.save(Node.builder().id(johnId).addProperty("name", "John").build(),
+          INSERT, opts(true), user);
+      nodeService.save(Node.builder().id(jackId).addProperty("name", "Jack")
+          .references(ImmutableMultimap.of("knows", johnId)).build(), INSERT, opts(true), user);
+
+      assertEquals(0, nodeService.count(asLucene(new NodesByGraphId(graphId)), user));
+      return null;
+    });
+
+    assertEquals(2, nodeService.count(asLucene(new NodesByGraphId(graphId)), user));
+
+    List<Node> indexedJohn = toListAndClose(nodeService.values(
+        query(asLucene(NodesById.of(johnId.getId()))), user));
+
+    assertEquals(1, indexedJohn.size());
+    assertTrue(indexedJohn.get(0).getReferrers().containsEntry("knows", jackId));
+  }
+
+  @Test
+  void shouldNotIndexWritesOfRolledBackTransaction() {
+    NodeId johnId = NodeId.random("Person", graphId);
+
+    nodeService.save(Node.builder().id(johnId).addProperty("name", "John").build(),
+        INSERT, opts(true), user);
+
+    double queueDepth = indexingQueueDepth();
+
+    assertThrows(IllegalStateException.class, () -> runInTransaction(transactionManager, () -> {
+      nodeService.save(Node.builder().id(johnId).addProperty("name", "Jack").build(),
+          UPDATE, opts(true), user);
+      nodeService.save(Node.builder().random(TypeId.of("Person", graphId)).build(),
+          INSERT, opts(true), user);
+      throw new IllegalStateException();
+    }));
+
+    assertEquals(queueDepth, indexingQueueDepth());
+
+    assertEquals(1, nodeService.count(asSql(new NodesByGraphId(graphId)), user));
+    assertEquals(1, nodeService.count(asLucene(new NodesByGraphId(graphId)), user));
+
+    List<Node> indexedJohn = toListAndClose(nodeService.values(
+        query(asLucene(NodesById.of(johnId.getId()))), user));
+
+    assertEquals(1, indexedJohn.size());
+    assertEquals("John", indexedJohn.get(0).getFirstPropertyValue("name")
+        .map(StrictLangValue::getValue).orElse(null));
+  }
+
+  private double indexingQueueDepth() {
+    return meterRegistry.get("termed.index.queue.depth").gauge().value();
+  }
+
+}
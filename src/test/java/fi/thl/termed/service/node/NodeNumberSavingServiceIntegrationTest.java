@@ -1,26 +1,41 @@
 package fi.thl.termed.service.node;
 
 import static fi.thl.termed.util.query.Queries.query;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runInTransaction;
 import static fi.thl.termed.util.service.SaveMode.INSERT;
 import static fi.thl.termed.util.service.SaveMode.UPDATE;
 import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.event.ReindexEvent;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByNumberRange;
+import java.util.HashSet;
+import java.util.List;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
 
 /**
  * Tests that node service generates node numbers correctly.
  */
 class NodeNumberSavingServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
 
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+  @Autowired
+  private EventBus eventBus;
+
   @Test
   void shouldGenerateNodeNumbers() {
     NodeId node0Id = NodeId.random("Person", graphId);
@@ -104,4 +119,34 @@ class NodeNumberSavingServiceIntegrationTest extends BaseNodeServiceIntegrationT
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldNotReuseNumbersAfterRolledBackSave() {
+    NodeId rolledBackId = NodeId.random("Person", graphId);
+
+    assertThrows(IllegalStateException.class, () -> runInTransaction(transactionManager, () -> {
+      nodeService.save(Node.builder().id(rolledBackId).build(), INSERT, defaultOpts(), user);
+      throw new IllegalStateException();
+    }, error -> eventBus.post(new ReindexEvent<>(() -> Stream.of(rolledBackId)))));
+
+    assertFalse(nodeService.exists(rolledBackId, user));
+
+    nodeService.save(Node.builder().random(TypeId.of("Person", graphId)).build(),
+        INSERT, defaultOpts(), user);
+
+    // uses up the block reserved by rolled back save, next block is reserved from the sequence
+    nodeService.save(
+        Stream.generate(() ->
+            Node.builder()
+                .random(TypeId.of("Person", graphId))
+                .build())
+            .limit(1000),
+        INSERT, defaultOpts(), user);
+
+    try (Stream<Node> nodes = nodeService.values(query(NodesByGraphId.of(graphId)), user)) {
+      List<Long> numbers = nodes.map(Node::getNumber).collect(toList());
+      assertEquals(1001, numbers.size());
+      assertEquals(1001, new HashSet<>(numbers).size());
+    }
+  }
+
+}
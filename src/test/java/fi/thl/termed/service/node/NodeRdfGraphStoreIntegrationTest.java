@@ -0,0 +1,84 @@
+package fi.thl.termed.service.node;
+
+import static fi.thl.termed.util.service.SaveMode.UPSERT;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static java.util.UUID.randomUUID;
+import static org.apache.jena.graph.Node.ANY;
+import static org.apache.jena.graph.NodeFactory.createLiteral;
+import static org.apache.jena.graph.NodeFactory.createURI;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.util.NodeRdfGraphStore;
+import org.apache.jena.graph.Triple;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class NodeRdfGraphStoreIntegrationTest extends BaseNodeServiceIntegrationTest {
+
+  @Autowired
+  private NodeRdfGraphStore nodeRdfGraphStore;
+
+  @Test
+  void shouldApplyNodeChangesToMaterializedGraph() {
+    TypeId person = TypeId.of("Person", graphId);
+    NodeId johnId = NodeId.of(randomUUID(), person);
+    NodeId jackId = NodeId.of(randomUUID(), person);
+
+    nodeService.save(Node.builder().id(johnId).uri("http://example.org/john")
+        .addProperty("name", "John").build(), UPSERT, defaultOpts(), user);
+    nodeService.save(Node.builder().id(jackId).uri("http://example.org/jack")
+        .addReference("knows", johnId).build(), UPSERT, defaultOpts(), user);
+
+    assertTrue(containsLiteral("http://example.org/john", "John"));
+    assertTrue(containsReference("http://example.org/jack", "http://example.org/john"));
+
+    // change name and uri of john
+    nodeService.save(Node.builder().id(johnId).uri("http://example.org/johnny")
+        .addProperty("name", "Johnny").build(), UPSERT, defaultOpts(), user);
+
+    assertFalse(containsLiteral("http://example.org/john", "John"));
+    assertTrue(containsLiteral("http://example.org/johnny", "Johnny"));
+    assertTrue(containsReference("http://example.org/jack", "http://example.org/johnny"));
+
+    nodeService.delete(jackId, defaultOpts(), user);
+
+    assertFalse(containsReference("http://example.org/jack", "http://example.org/johnny"));
+  }
+
+  @Test
+  void shouldEstimateCountsOfReadableTriples() {
+    TypeId person = TypeId.of("Person", graphId);
+
+    nodeService.save(Node.builder().id(NodeId.of(randomUUID(), person))
+        .addProperty("name", "John").build(), UPSERT, defaultOpts(), user);
+
+    GraphId rdfGraphId = new GraphId(graphId);
+    User reader = new User("reader", "", AppRole.USER);
+
+    assertTrue(nodeRdfGraphStore.query(rdfGraphId, user,
+        graph -> graph.getStatisticsHandler().getStatistic(ANY, ANY, ANY)) > 0);
+    assertEquals(0, (long) nodeRdfGraphStore.query(rdfGraphId, reader,
+        graph -> graph.getStatisticsHandler().getStatistic(ANY, ANY, ANY)));
+  }
+
+  private boolean containsLiteral(String subject, String literal) {
+    return contains(Triple.create(createURI(subject), ANY, createLiteral(literal)));
+  }
+
+  private boolean containsReference(String subject, String object) {
+    return contains(Triple.create(createURI(subject), ANY, createURI(object)));
+  }
+
+  private boolean contains(Triple triple) {
+    return nodeRdfGraphStore.query(new GraphId(graphId), user, graph -> graph.contains(triple));
+  }
+
+}
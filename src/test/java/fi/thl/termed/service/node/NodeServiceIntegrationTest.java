@@ -1,20 +1,30 @@
 package fi.thl.termed.service.node;
 
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableSetAndClose;
+import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.service.SaveMode.INSERT;
 import static fi.thl.termed.util.service.SaveMode.UPDATE;
 import static fi.thl.termed.util.service.SaveMode.UPSERT;
 import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static java.util.stream.Collectors.toMap;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByReferencePath;
+import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Specifications;
+import java.util.Map;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -65,6 +75,29 @@ class NodeServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
     assertTrue(nodeService.exists(nodeId, user));
   }
 
+  @Test
+  void shouldUpsertBatchOfNewAndExistingNodes() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+
+    nodeService.save(Node.builder().id(johnId).addProperty("name", "John").build(),
+        INSERT, defaultOpts(), user);
+
+    nodeService.save(Stream.of(
+        Node.builder().id(johnId).addProperty("name", "John Doe").build(),
+        Node.builder().id(jackId).addProperty("name", "Jack").build()),
+        UPSERT, defaultOpts(), user);
+
+    assertEquals("John Doe", nodeService.get(johnId, user)
+        .flatMap(n -> n.getFirstPropertyValue("name"))
+        .map(StrictLangValue::getValue)
+        .orElseThrow(AssertionError::new));
+    assertEquals("Jack", nodeService.get(jackId, user)
+        .flatMap(n -> n.getFirstPropertyValue("name"))
+        .map(StrictLangValue::getValue)
+        .orElseThrow(AssertionError::new));
+  }
+
   @Test
   void shouldInsertNodeWithProperties() {
     NodeId nodeId = NodeId.random("Person", graphId);
@@ -192,6 +225,84 @@ class NodeServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
     assertEquals(maryId, saved.getFirstReferenceValue("knows").orElseThrow(AssertionError::new));
   }
 
+  @Test
+  void shouldReadNodesWithValuesFromDatabase() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+    NodeId maryId = NodeId.random("Person", graphId);
+    NodeId groupId = NodeId.random("Group", graphId);
+
+    Node john = Node.builder().id(johnId)
+        .addProperty("name", "John")
+        .addProperty("email", "john@example.org")
+        .addReference("knows", jackId, maryId)
+        .build();
+    Node jack = Node.builder().id(jackId)
+        .addProperty("name", "Jack")
+        .addReference("knows", maryId)
+        .build();
+    Node mary = Node.builder().id(maryId)
+        .addProperty("name", "Mary")
+        .build();
+    Node group = Node.builder().id(groupId)
+        .addProperty("name", "Group")
+        .addReference("member", johnId, maryId)
+        .build();
+
+    nodeService.save(Stream.of(john, jack, mary, group), INSERT, defaultOpts(), user);
+
+    Map<NodeId, Node> dbNodes;
+
+    try (Stream<Node> nodes = nodeService.values(
+        Queries.query(Specifications.asSql(new NodesByGraphId(graphId))), user)) {
+      dbNodes = nodes.collect(toMap(Node::identifier, n -> n));
+    }
+
+    assertEquals(4, dbNodes.size());
+
+    Node dbJohn = dbNodes.get(johnId);
+    assertEquals(ImmutableList.of(jackId, maryId), dbJohn.getReferences().get("knows"));
+    assertEquals(ImmutableList.of(groupId), dbJohn.getReferrers().get("member"));
+    assertEquals("john@example.org", dbJohn.getFirstPropertyValue("email")
+        .map(StrictLangValue::getValue)
+        .orElseThrow(AssertionError::new));
+
+    Node dbMary = dbNodes.get(maryId);
+    assertEquals(ImmutableSet.of(johnId, jackId),
+        ImmutableSet.copyOf(dbMary.getReferrers().get("knows")));
+    assertTrue(dbMary.getReferences().isEmpty());
+
+    assertEquals(ImmutableList.of(johnId, maryId),
+        dbNodes.get(groupId).getReferences().get("member"));
+  }
+
+  @Test
+  void shouldFindNodesByNestedReferencePath() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+    NodeId maryId = NodeId.random("Person", graphId);
+    NodeId groupId = NodeId.random("Group", graphId);
+
+    nodeService.save(Stream.of(
+        Node.builder().id(johnId).addReference("knows", maryId).build(),
+        Node.builder().id(jackId).addReference("knows", maryId).build(),
+        Node.builder().id(maryId).build(),
+        Node.builder().id(groupId).addReference("member", johnId).build()),
+        INSERT, defaultOpts(), user);
+
+    NodesByReferencePath knowsMary =
+        new NodesByReferencePath("knows", NodesById.of(maryId.getId()));
+
+    assertEquals(ImmutableSet.of(johnId, jackId), toImmutableSetAndClose(nodeService.keys(
+        Queries.query(and(NodesByGraphId.of(graphId), knowsMary)), user)));
+
+    NodesByReferencePath hasMemberWhoKnowsMary = new NodesByReferencePath("member",
+        new NodesByReferencePath("knows", NodesById.of(maryId.getId())));
+
+    assertEquals(ImmutableSet.of(groupId), toImmutableSetAndClose(nodeService.keys(
+        Queries.query(and(NodesByGraphId.of(graphId), hasMemberWhoKnowsMary)), user)));
+  }
+
   @Test
   void shouldUpdateNodeWithReferences() {
     NodeId johnId = NodeId.random("Person", graphId);
@@ -230,6 +341,60 @@ class NodeServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
     assertFalse(reSaved.getFirstReferenceValue("knows").isPresent());
   }
 
+  @Test
+  void shouldUpdateBatchOfNodesWithPropertiesAndReferences() {
+    NodeId johnId = NodeId.random("Person", graphId);
+    NodeId jackId = NodeId.random("Person", graphId);
+    NodeId maryId = NodeId.random("Person", graphId);
+
+    Node john = Node.builder().id(johnId)
+        .addProperty("name", "John")
+        .addProperty("email", "john@example.org")
+        .addReference("knows", jackId)
+        .build();
+    Node jack = Node.builder().id(jackId)
+        .addProperty("name", "Jack")
+        .build();
+    Node mary = Node.builder().id(maryId)
+        .addProperty("name", "Mary")
+        .build();
+
+    nodeService.save(Stream.of(john, jack, mary), INSERT, defaultOpts(), user);
+
+    Node johnUpdated = Node.builderFromCopyOf(john)
+        .properties(ImmutableMultimap.of("name", new StrictLangValue("John Doe")))
+        .references(ImmutableMultimap.of("knows", maryId))
+        .build();
+    Node jackUpdated = Node.builderFromCopyOf(jack)
+        .properties(ImmutableMultimap.of(
+            "name", new StrictLangValue("Jack"),
+            "email", new StrictLangValue("jack@example.org")))
+        .references(ImmutableMultimap.of("knows", johnId))
+        .build();
+
+    nodeService.save(Stream.of(johnUpdated, jackUpdated, mary), UPDATE, defaultOpts(), user);
+
+    Node savedJohn = nodeService.get(johnId, user).orElseThrow(AssertionError::new);
+    assertEquals(ImmutableMultimap.of("name", new StrictLangValue("John Doe")),
+        savedJohn.getProperties());
+    assertEquals(ImmutableMultimap.of("knows", maryId), savedJohn.getReferences());
+    assertEquals(ImmutableMultimap.of("knows", jackId), savedJohn.getReferrers());
+
+    Node savedJack = nodeService.get(jackId, user).orElseThrow(AssertionError::new);
+    assertEquals("Jack", savedJack.getFirstPropertyValue("name")
+        .map(StrictLangValue::getValue)
+        .orElseThrow(AssertionError::new));
+    assertEquals("jack@example.org", savedJack.getFirstPropertyValue("email")
+        .map(StrictLangValue::getValue)
+        .orElseThrow(AssertionError::new));
+    assertEquals(ImmutableMultimap.of("knows", johnId), savedJack.getReferences());
+
+    Node savedMary = nodeService.get(maryId, user).orElseThrow(AssertionError::new);
+    assertEquals(ImmutableMultimap.of("name", new StrictLangValue("Mary")),
+        savedMary.getProperties());
+    assertEquals(ImmutableMultimap.of("knows", johnId), savedMary.getReferrers());
+  }
+
   @Test
   void shouldDeleteNodesWithCircularReferences() {
     NodeId johnId = NodeId.random("Person", graphId);
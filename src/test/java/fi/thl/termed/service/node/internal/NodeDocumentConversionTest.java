@@ -0,0 +1,83 @@
+package fi.thl.termed.service.node.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import org.apache.lucene.document.Document;
+import org.junit.jupiter.api.Test;
+
+class NodeDocumentConversionTest {
+
+  private TypeId type = TypeId.of("Concept", UUID.randomUUID());
+
+  private Node node = Node.builder().random(type)
+      .code("example")
+      .uri("http://example.org/example")
+      .number(42L)
+      .createdBy("admin")
+      .createdDate(LocalDateTime.of(2019, 5, 1, 12, 30, 15))
+      .lastModifiedBy("user")
+      .lastModifiedDate(LocalDateTime.of(2019, 6, 2, 8, 0, 1))
+      .addProperty("prefLabel", "fi", "Esimerkki")
+      .addProperty("prefLabel", "en", "Example")
+      .addProperty("note", new StrictLangValue("", "Ääkköset, and commas", "^.*$"))
+      .addReference("broader", NodeId.random(type))
+      .addReference("broader", NodeId.random(type))
+      .addReferrer("narrower", ImmutableList.of(NodeId.random(type)))
+      .build();
+
+  @Test
+  void shouldConvertNodeToJsonDocumentAndBack() {
+    Document doc = stored(new NodeToDocument(NodeDocumentFormat.JSON).apply(node));
+
+    assertNull(doc.getField(NodeToDocument.BINARY_NODE_FIELD));
+    assertEquals(node, new DocumentToNode().apply(doc));
+  }
+
+  @Test
+  void shouldConvertNodeToBinaryDocumentAndBack() {
+    Document doc = stored(new NodeToDocument(NodeDocumentFormat.BINARY).apply(node));
+
+    assertEquals(1, doc.getFields().size());
+    assertEquals(node, new DocumentToNode().apply(doc));
+  }
+
+  @Test
+  void shouldDecodeOnlySelectedFieldsFromBinaryDocument() {
+    Document doc = stored(new NodeToDocument(NodeDocumentFormat.BINARY).apply(node));
+    String qualifier = UUIDs.toString(type.getGraphId()) + "." + type.getId();
+
+    Node decoded = new DocumentToNode(ImmutableSet.of(
+        "id", "type.id", "type.graph.id", "number",
+        qualifier + ".properties.note",
+        qualifier + ".referrers.narrower")).apply(doc);
+
+    assertEquals(node.identifier(), decoded.identifier());
+    assertEquals(node.getNumber(), decoded.getNumber());
+    assertFalse(decoded.getCode().isPresent());
+    assertNull(decoded.getCreatedDate());
+    assertEquals(ImmutableSet.of("note"), decoded.getProperties().keySet());
+    assertEquals(node.getProperties().get("note"), decoded.getProperties().get("note"));
+    assertTrue(decoded.getReferences().isEmpty());
+    assertEquals(node.getReferrers(), decoded.getReferrers());
+  }
+
+  // documents read from the index contain only stored fields
+  private Document stored(Document doc) {
+    Document stored = new Document();
+    doc.getFields().stream().filter(f -> f.fieldType().stored()).forEach(stored::add);
+    return stored;
+  }
+
+}
@@ -0,0 +1,87 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.service.Service;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class ReadAuthorizedNodeServiceTest {
+
+  private UUID graphId = UUID.randomUUID();
+  private TypeId personType = TypeId.of("Person", graphId);
+  private TypeId secretType = TypeId.of("Secret", graphId);
+
+  private User user = new User("user", "", AppRole.USER);
+
+  private AtomicInteger evaluations = new AtomicInteger();
+
+  @SuppressWarnings("unchecked")
+  private Service<NodeId, Node> delegate = mock(Service.class);
+
+  private ReadAuthorizedNodeService service = new ReadAuthorizedNodeService(delegate,
+      (u, typeId, p) -> evaluations.incrementAndGet() > 0 && typeId.equals(personType),
+      (u, attrId, p) -> evaluations.incrementAndGet() > 0 && !attrId.getId().equals("secret"),
+      (u, attrId, p) -> evaluations.incrementAndGet() > 0 && !attrId.getId().equals("secret"));
+
+  @Test
+  void shouldFilterValuesByCompiledPermissions() {
+    NodeId secretNode = NodeId.random(secretType);
+
+    Node john = Node.builder().random(personType)
+        .addProperty("name", "John")
+        .addProperty("secret", "foo")
+        .addReference("secret", NodeId.random(personType))
+        .addReference("knows", secretNode)
+        .build();
+    Node jack = Node.builder().random(personType)
+        .addProperty("name", "Jack")
+        .addProperty("secret", "bar")
+        .build();
+    Node secret = Node.builder().id(secretNode)
+        .addProperty("name", "Secret")
+        .build();
+
+    when(delegate.values(any(), any())).thenReturn(Stream.of(john, jack, secret));
+
+    List<Node> results = toListAndClose(service.values(Queries.matchAll(), user));
+
+    assertEquals(ImmutableList.of(john.identifier(), jack.identifier()),
+        results.stream().map(Node::identifier).collect(ImmutableList.toImmutableList()));
+    assertEquals(ImmutableSet.of("name"), results.get(0).getProperties().keySet());
+    assertEquals(ImmutableSet.of(), results.get(0).getReferences().keySet());
+    assertEquals(ImmutableSet.of("name"), results.get(1).getProperties().keySet());
+
+    // two types, two text attributes and two reference attributes
+    assertEquals(6, evaluations.get());
+  }
+
+  @Test
+  void shouldReturnFullyPermittedNodeAsIs() {
+    Node john = Node.builder().random(personType)
+        .addProperty("name", "John")
+        .addReference("knows", NodeId.random(personType))
+        .build();
+
+    when(delegate.values(any(), any())).thenReturn(Stream.of(john));
+
+    assertSame(john, toListAndClose(service.values(Queries.matchAll(), user)).get(0));
+  }
+
+}
@@ -1,6 +1,8 @@
 package fi.thl.termed.service.node.util;
 
 import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static java.util.Collections.singletonList;
+import static org.apache.jena.graph.Node.ANY;
 import static org.apache.jena.rdf.model.ResourceFactory.createLangLiteral;
 import static org.apache.jena.rdf.model.ResourceFactory.createResource;
 import static org.apache.jena.rdf.model.ResourceFactory.createStatement;
@@ -16,16 +18,24 @@ import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TextAttribute;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByIds;
 import fi.thl.termed.util.dao.MemoryBasedSystemDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.jena.GraphStatisticsStageGenerator;
+import fi.thl.termed.util.query.Specification;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import org.apache.jena.graph.GraphStatisticsHandler;
 import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.engine.main.StageBuilder;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SKOS;
@@ -35,6 +45,7 @@ import org.junit.jupiter.api.Test;
 class NodeRdfGraphWrapperTest {
 
   private Model model;
+  private List<Specification<NodeId, Node>> queriedSpecs;
 
   @BeforeEach
   void setUp() {
@@ -71,7 +82,14 @@ class NodeRdfGraphWrapperTest {
         .build();
     nodeDao.insert(concept2Id, concept2);
 
-    GraphBase graphBase = new NodeRdfGraphWrapper("http://example.org/", types, nodeDao::values);
+    queriedSpecs = new ArrayList<>();
+
+    GraphBase graphBase = new NodeRdfGraphWrapper("http://example.org/", types,
+        spec -> {
+          queriedSpecs.add(spec);
+          return nodeDao.values(spec);
+        },
+        spec -> nodeDao.values(spec).count());
 
     model = ModelFactory.createModelForGraph(graphBase);
   }
@@ -116,4 +134,28 @@ class NodeRdfGraphWrapperTest {
     assertFalse(iterator.hasNext());
   }
 
-}
\ No newline at end of file
+  @Test
+  void wrappedGraphShouldProvideStatisticsByType() {
+    GraphStatisticsHandler statistics = model.getGraph().getStatisticsHandler();
+
+    assertEquals(2, statistics.getStatistic(ANY, RDF.type.asNode(), SKOS.Concept.asNode()));
+    assertEquals(0, statistics.getStatistic(ANY, RDF.type.asNode(), SKOS.Collection.asNode()));
+  }
+
+  @Test
+  void wrappedGraphShouldLoadJoinedSubjectsInBatches() {
+    String sparql = "SELECT ?label WHERE { "
+        + "?c <" + SKOS.broader.getURI() + "> ?b . "
+        + "?b <" + SKOS.prefLabel.getURI() + "> ?label }";
+
+    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparql), model);
+    StageBuilder.setGenerator(qe.getContext(), new GraphStatisticsStageGenerator());
+
+    List<String> labels = new ArrayList<>();
+    qe.execSelect().forEachRemaining(r -> labels.add(r.getLiteral("label").getString()));
+
+    assertEquals(singletonList("Concept 1"), labels);
+    assertTrue(queriedSpecs.stream().anyMatch(spec -> spec instanceof NodesByIds));
+  }
+
+}
@@ -4,12 +4,18 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.google.common.collect.ImmutableList;
 import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.service.node.select.SelectProperty;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Selects;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
@@ -50,4 +56,68 @@ class NodesToCsvTest {
     assertEquals(expectedCsv, csv);
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldStreamNodesToCsvWithColumnsFromTypes() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Person", graphId);
+
+    Type type = Type.builder().id(typeId)
+        .textAttributes(
+            TextAttribute.builder().id("firstName", typeId).regex("^.*$").build(),
+            TextAttribute.builder().id("email", typeId).regex("^.*$").build())
+        .build();
+
+    Node node1 = Node.builder().random(typeId)
+        .code("example-node-1")
+        .addProperty("firstName", "John")
+        .addProperty("email", "john@example.com")
+        .build();
+    Node node2 = Node.builder().random(typeId)
+        .code("example-node-2")
+        .addProperty("firstName", "fi", "Jussi")
+        .build();
+
+    NodesToCsv nodesToCsv = new NodesToCsv();
+    ImmutableList<Select> selects = ImmutableList.of(
+        Selects.field("code"),
+        new SelectProperty("firstName"),
+        new SelectProperty("email"));
+
+    List<String> columns = nodesToCsv.columns(ImmutableList.of(type), selects,
+        ImmutableList.of("", "fi"));
+
+    assertEquals(ImmutableList.of("code",
+        "properties.firstName", "properties.firstName.fi",
+        "properties.email", "properties.email.fi"), columns);
+
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    nodesToCsv.writeAsCsv(Stream.of(node1, node2), columns, selects,
+        CsvOptions.builder().build(), byteArrayOutputStream);
+
+    String expectedCsv =
+        "code,properties.firstName,properties.firstName.fi,properties.email,properties.email.fi\n"
+            + "example-node-1,John,,john@example.com,\n"
+            + "example-node-2,,Jussi,,\n";
+
+    assertEquals(expectedCsv, byteArrayOutputStream.toString("UTF-8"));
+  }
+
+  @Test
+  void shouldSelectOnlySelectedPropertiesOfTypes() {
+    TypeId typeId = TypeId.of("Person", UUID.randomUUID());
+
+    Type type = Type.builder().id(typeId)
+        .textAttributes(
+            TextAttribute.builder().id("firstName", typeId).regex("^.*$").build(),
+            TextAttribute.builder().id("email", typeId).regex("^.*$").build())
+        .build();
+
+    List<Select> propertySelects = new NodesToCsv().propertySelects(ImmutableList.of(type),
+        ImmutableList.of(Selects.field("code"), new SelectProperty("firstName")));
+
+    assertEquals(ImmutableList.of(
+        new SelectTypeQualifiedProperty(new TextAttributeId(typeId, "firstName"))),
+        propertySelects);
+  }
+
+}
@@ -0,0 +1,87 @@
+package fi.thl.termed.service.node.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.select.SelectId;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReference;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.service.Service;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PrefetchingNodeTreeBuilderTest {
+
+  private TypeId type = TypeId.of("Concept", UUID.randomUUID());
+
+  @SuppressWarnings("unchecked")
+  private Service<NodeId, Node> nodeService = mock(Service.class);
+
+  private Map<NodeId, Node> nodes = new HashMap<>();
+
+  private Node save(Node node) {
+    nodes.put(node.identifier(), node);
+    return node;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldLoadEachTreeLevelWithSingleQuery() throws IOException {
+    Node top = save(Node.builder().random(type).build());
+    Node middle1 = save(Node.builder().random(type).addReference("broader", top.identifier())
+        .build());
+    Node middle2 = save(Node.builder().random(type).addReference("broader", top.identifier())
+        .build());
+    Node leaf1 = save(Node.builder().random(type).addReference("broader", middle1.identifier())
+        .build());
+    Node leaf2 = save(Node.builder().random(type).addReference("broader", middle2.identifier())
+        .build());
+
+    when(nodeService.values(any(), any())).thenAnswer(i -> {
+      Query<NodeId, Node> query = i.getArgument(0);
+      return nodes.entrySet().stream()
+          .filter(e -> query.getWhere().test(e.getKey(), e.getValue()))
+          .map(Map.Entry::getValue);
+    });
+
+    List<Select> selects = ImmutableList.of(new SelectId(),
+        new SelectTypeQualifiedReference(new ReferenceAttributeId(type, "broader"), 2));
+
+    StringWriter json = new StringWriter();
+    Stream<NodeTree> trees = new PrefetchingNodeTreeBuilder(nodeService, User.newAdmin("admin"),
+        selects).toTrees(Stream.of(leaf1, leaf2));
+    NodeTreeToJsonStream.toJson(trees.iterator(), new JsonWriter(json));
+
+    // one query for middle level and one for the top level, none while writing trees
+    verify(nodeService, times(2)).values(any(), any());
+
+    JsonArray results = new JsonParser().parse(json.toString()).getAsJsonArray();
+    assertEquals(2, results.size());
+    assertEquals(top.getId().toString(), results.get(0).getAsJsonObject()
+        .getAsJsonObject("references").getAsJsonArray("broader").get(0).getAsJsonObject()
+        .getAsJsonObject("references").getAsJsonArray("broader").get(0).getAsJsonObject()
+        .get("id").getAsString());
+  }
+
+}
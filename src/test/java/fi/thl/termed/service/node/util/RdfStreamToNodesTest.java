@@ -0,0 +1,148 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.query.Specification;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RdfStreamToNodesTest {
+
+  private TypeId conceptId;
+  private NodeId existingId;
+  private List<Specification<NodeId, Node>> queriedSpecs;
+  private RdfStreamToNodes rdfStreamToNodes;
+  private Path file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    SystemDao<NodeId, Node> nodeDao = new MemoryBasedSystemDao<>();
+
+    UUID graphId = nameUUIDFromString("test-graph");
+
+    conceptId = new TypeId("Concept", graphId);
+    Type concept = Type.builder().id(conceptId)
+        .uri(SKOS.Concept.getURI())
+        .textAttributes(TextAttribute.builder().id("prefLabel", conceptId)
+            .regexAll().uri(SKOS.prefLabel.getURI()).build())
+        .referenceAttributes(ReferenceAttribute.builder().id("broader", conceptId)
+            .range(conceptId).uri(SKOS.broader.getURI()).build())
+        .build();
+
+    existingId = new NodeId(UUID.randomUUID(), conceptId);
+    nodeDao.insert(existingId, Node.builder()
+        .id(existingId)
+        .uri("http://example.org/Existing")
+        .build());
+
+    queriedSpecs = new ArrayList<>();
+    rdfStreamToNodes = new RdfStreamToNodes(ImmutableList.of(concept),
+        query -> {
+          queriedSpecs.add(query.getWhere());
+          return nodeDao.values(query.getWhere());
+        }, true);
+
+    file = Files.createTempFile("rdf-stream-to-nodes-test", ".nt");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void shouldConvertGroupedTriplesToNodes() throws IOException {
+    write("<http://example.org/A> a <http://www.w3.org/2004/02/skos/core#Concept> ;\n"
+        + "  <http://www.w3.org/2004/02/skos/core#prefLabel> \"A\"@en ;\n"
+        + "  <http://www.w3.org/2004/02/skos/core#broader> <http://example.org/B> .\n"
+        + "<http://example.org/B> a <http://www.w3.org/2004/02/skos/core#Concept> ;\n"
+        + "  <http://www.w3.org/2004/02/skos/core#broader> <http://example.org/Existing> .\n");
+
+    List<Node> nodes = toListAndClose(rdfStreamToNodes.apply(file, Lang.TURTLE)
+        .orElseThrow(AssertionError::new));
+
+    NodeId aId = new NodeId(nameUUIDFromString("http://example.org/A"), conceptId);
+    NodeId bId = new NodeId(nameUUIDFromString("http://example.org/B"), conceptId);
+
+    assertEquals(2, nodes.size());
+
+    Node a = nodes.get(0);
+    assertEquals(aId, a.identifier());
+    assertEquals(Optional.of("A"), a.getCode());
+    assertEquals(ImmutableList.of(new StrictLangValue("en", "A")),
+        ImmutableList.copyOf(a.getProperties().get("prefLabel")));
+    assertEquals(ImmutableList.of(bId), ImmutableList.copyOf(a.getReferences().get("broader")));
+
+    Node b = nodes.get(1);
+    assertEquals(bId, b.identifier());
+    assertEquals(ImmutableList.of(existingId),
+        ImmutableList.copyOf(b.getReferences().get("broader")));
+  }
+
+  @Test
+  void shouldResolveExistingNodesInBatches() throws IOException {
+    StringBuilder rdf = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      rdf.append("<http://example.org/").append(i).append("> ")
+          .append("<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ")
+          .append("<http://www.w3.org/2004/02/skos/core#Concept> .\n");
+    }
+    rdf.append("<http://example.org/Existing> ")
+        .append("<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ")
+        .append("<http://www.w3.org/2004/02/skos/core#Concept> .\n");
+    write(rdf.toString());
+
+    List<Node> nodes = toListAndClose(rdfStreamToNodes.apply(file, Lang.NTRIPLES)
+        .orElseThrow(AssertionError::new));
+
+    assertEquals(11, nodes.size());
+    assertEquals(existingId, nodes.get(10).identifier());
+    // one query by uris and one by candidate ids
+    assertEquals(2, queriedSpecs.size());
+  }
+
+  @Test
+  void shouldRejectTriplesNotGroupedBySubject() throws IOException {
+    write("<http://example.org/A> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+        + "<http://www.w3.org/2004/02/skos/core#Concept> .\n"
+        + "<http://example.org/B> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+        + "<http://www.w3.org/2004/02/skos/core#Concept> .\n"
+        + "<http://example.org/A> <http://www.w3.org/2004/02/skos/core#prefLabel> \"A\" .\n");
+
+    Optional<Stream<Node>> nodes = rdfStreamToNodes.apply(file, Lang.NTRIPLES);
+
+    assertFalse(nodes.isPresent());
+    assertTrue(queriedSpecs.isEmpty());
+  }
+
+  private void write(String rdf) throws IOException {
+    Files.write(file, rdf.getBytes(UTF_8));
+  }
+
+}
@@ -0,0 +1,224 @@
+package fi.thl.termed.service.webhook.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.ApplicationShutdownEvent;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemSequenceDao;
+import fi.thl.termed.util.service.Service;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeEventPostingServiceTest {
+
+  private TypeId type = TypeId.of("Concept", UUID.randomUUID());
+
+  private HttpServer server;
+  private BlockingQueue<JsonObject> received = new LinkedBlockingQueue<>();
+
+  private Webhook hook;
+
+  @SuppressWarnings("unchecked")
+  private Service<UUID, Webhook> webhookService = mock(Service.class);
+  @SuppressWarnings("unchecked")
+  private SystemDao<Long, WebhookOutboxEntry> outboxDao = mock(SystemDao.class);
+  private SystemSequenceDao outboxSequence = mock(SystemSequenceDao.class);
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private NodeEventPostingService service;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.start();
+
+    hook = new Webhook("http://localhost:" + server.getAddress().getPort() + "/hook");
+
+    when(webhookService.values(any(), any())).thenAnswer(i -> Stream.of(hook));
+    when(outboxSequence.getAndAdvance()).thenReturn(1L);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (service != null) {
+      service.closeOn(new ApplicationShutdownEvent());
+    }
+    server.stop(0);
+  }
+
+  private void respond(int... statuses) {
+    AtomicInteger requestCount = new AtomicInteger();
+    server.createContext("/hook", exchange -> {
+      int i = requestCount.getAndIncrement();
+      received.add(new JsonParser()
+          .parse(new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8))
+          .getAsJsonObject());
+      exchange.sendResponseHeaders(statuses[Math.min(i, statuses.length - 1)], -1);
+      exchange.close();
+    });
+  }
+
+  private NodeEventPostingService newService(int maxAttempts) {
+    return new NodeEventPostingService(webhookService, outboxDao, outboxSequence,
+        new Gson(), meterRegistry, 100, 1, 1000, maxAttempts);
+  }
+
+  private NodeSavedEvent saved(String user, NodeId... nodes) {
+    return new NodeSavedEvent(user, null, false, ImmutableList.copyOf(nodes));
+  }
+
+  private int nodeCount(JsonObject webEvent) {
+    return webEvent.getAsJsonObject("body").getAsJsonArray("nodes").size();
+  }
+
+  @Test
+  void shouldCoalesceEventsQueuedDuringDelivery() throws InterruptedException {
+    CountDownLatch firstRequestReceived = new CountDownLatch(1);
+    CountDownLatch releaseFirstRequest = new CountDownLatch(1);
+
+    AtomicInteger requestCount = new AtomicInteger();
+    server.createContext("/hook", exchange -> {
+      received.add(new JsonParser()
+          .parse(new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8))
+          .getAsJsonObject());
+      if (requestCount.getAndIncrement() == 0) {
+        firstRequestReceived.countDown();
+        try {
+          releaseFirstRequest.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+
+    service = newService(1);
+
+    service.subscribe(saved("admin", NodeId.random(type)));
+    assertTrue(firstRequestReceived.await(10, TimeUnit.SECONDS));
+
+    service.subscribe(saved("admin", NodeId.random(type)));
+    service.subscribe(saved("admin", NodeId.random(type), NodeId.random(type)));
+    service.subscribe(new NodeDeletedEvent("admin", null, false,
+        ImmutableList.of(NodeId.random(type))));
+    releaseFirstRequest.countDown();
+
+    JsonObject first = received.poll(10, TimeUnit.SECONDS);
+    JsonObject second = received.poll(10, TimeUnit.SECONDS);
+    JsonObject third = received.poll(10, TimeUnit.SECONDS);
+
+    assertEquals("NodeSavedEvent", first.get("type").getAsString());
+    assertEquals(1, nodeCount(first));
+    assertEquals("NodeSavedEvent", second.get("type").getAsString());
+    assertEquals(3, nodeCount(second));
+    assertEquals("NodeDeletedEvent", third.get("type").getAsString());
+    assertEquals(1, nodeCount(third));
+  }
+
+  @Test
+  void shouldRetryFailedDelivery() throws InterruptedException {
+    respond(503, 200);
+
+    service = newService(3);
+    service.subscribe(saved("admin", NodeId.random(type)));
+
+    JsonObject first = received.poll(10, TimeUnit.SECONDS);
+    JsonObject second = received.poll(10, TimeUnit.SECONDS);
+
+    assertEquals(first, second);
+    assertEquals(1.0, meterRegistry.counter("termed.webhook.failures",
+        "webhook", hook.getId().toString()).count());
+  }
+
+  @Test
+  void shouldMoveUndeliveredEventsToOutbox() {
+    respond(503);
+
+    service = newService(1);
+    service.subscribe(saved("admin", NodeId.random(type)));
+
+    verify(outboxDao, timeout(10000)).insert(anyLong(), any(WebhookOutboxEntry.class));
+  }
+
+  @Test
+  void shouldWaitForDeliveryOfSyncEvent() {
+    respond(200);
+
+    service = newService(1);
+    service.subscribe(new NodeSavedEvent("admin", null, true,
+        ImmutableList.of(NodeId.random(type))));
+
+    List<JsonObject> delivered = ImmutableList.copyOf(received);
+    assertEquals(1, delivered.size());
+    assertEquals(1.0, meterRegistry.counter("termed.webhook.delivered",
+        "webhook", hook.getId().toString()).count());
+  }
+
+  @Test
+  void shouldReleaseQueueOfRemovedWebhook() throws InterruptedException {
+    CountDownLatch firstRequestReceived = new CountDownLatch(1);
+    CountDownLatch releaseFirstRequest = new CountDownLatch(1);
+
+    server.createContext("/hook", exchange -> {
+      firstRequestReceived.countDown();
+      try {
+        releaseFirstRequest.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+
+    service = newService(1);
+
+    service.subscribe(saved("admin", NodeId.random(type)));
+    assertTrue(firstRequestReceived.await(10, TimeUnit.SECONDS));
+    service.subscribe(saved("admin", NodeId.random(type)));
+
+    Gauge depth = meterRegistry.get("termed.webhook.queue.depth")
+        .tag("webhook", hook.getId().toString()).gauge();
+    assertEquals(1.0, depth.value());
+
+    when(webhookService.values(any(), any())).thenAnswer(i -> Stream.empty());
+    service.subscribe(saved("admin", NodeId.random(type)));
+    releaseFirstRequest.countDown();
+
+    assertEquals(0.0, depth.value());
+  }
+
+}
@@ -0,0 +1,84 @@
+package fi.thl.termed.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class StreamTimerTest {
+
+  private AtomicLong clock = new AtomicLong();
+  private StreamTimer timer = new StreamTimer(clock::get);
+
+  @Test
+  void shouldCloseStreamOnTimeout() {
+    AtomicBoolean closed = new AtomicBoolean();
+
+    timer.closeOnTimeout(Stream.of(1).onClose(() -> closed.set(true)), 10, SECONDS, () -> "q");
+
+    clock.set(9_999);
+    timer.tick();
+    assertFalse(closed.get());
+    assertEquals(1, timer.openStreamCount());
+
+    clock.set(10_000);
+    timer.tick();
+    assertTrue(closed.get());
+    assertEquals(0, timer.openStreamCount());
+  }
+
+  @Test
+  void shouldUnregisterStreamOnClose() {
+    AtomicBoolean closed = new AtomicBoolean();
+
+    Stream<Integer> stream = timer.closeOnTimeout(
+        Stream.of(1).onClose(() -> closed.set(true)), 10, SECONDS, () -> "q");
+    assertEquals("q", timer.openStreams().get(0).getOwner());
+
+    stream.close();
+    assertEquals(0, timer.openStreamCount());
+
+    closed.set(false);
+    clock.set(20_000);
+    timer.tick();
+    assertFalse(closed.get());
+  }
+
+  @Test
+  void shouldRunRepeatingActionWhileOpen() {
+    AtomicInteger counter = new AtomicInteger();
+
+    Stream<Integer> stream = timer.repeatWhileOpen(
+        Stream.of(1), 1, SECONDS, counter::incrementAndGet);
+
+    for (int i = 1; i <= 3; i++) {
+      clock.set(i * 1000);
+      timer.tick();
+    }
+    assertEquals(3, counter.get());
+
+    stream.close();
+    clock.set(4000);
+    timer.tick();
+    assertEquals(3, counter.get());
+  }
+
+  @Test
+  void shouldReportOldestOpenStream() {
+    timer.closeOnTimeout(Stream.empty(), 10, SECONDS, () -> "first");
+    clock.set(2000);
+    timer.closeOnTimeout(Stream.empty(), 10, SECONDS, () -> "second");
+    clock.set(3000);
+
+    assertEquals(3000, timer.oldestOpenStreamAgeMillis());
+    assertEquals("first", timer.openStreams().get(0).getOwner());
+    assertEquals(1000, timer.openStreams().get(1).getAgeMillis());
+  }
+
+}
@@ -1,13 +1,23 @@
 package fi.thl.termed.util.index.lucene;
 
 import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import fi.thl.termed.util.query.LuceneSpecification;
+import fi.thl.termed.util.query.Sort;
+import fi.thl.termed.util.query.SortRelevance;
 import fi.thl.termed.util.query.Specification;
 import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Stream;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.TermQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -64,6 +74,56 @@ class LuceneIndexTest {
     assertEquals(0, index.count(term("body", "horses")));
   }
 
+  @Test
+  void shouldFindWritesAfterAwaitingWriteGeneration() {
+    index.index(4, new TestObject(4, "Fourth", "This is an example body about birds"));
+    long generation = index.writeGeneration();
+
+    assertTrue(index.awaitWriteGeneration(generation, 10, SECONDS));
+    assertEquals(1, index.count(term("body", "birds")));
+  }
+
+  @Test
+  void shouldStreamAllUnsortedMatchesSkippingDeleted() {
+    index.delete(2);
+    index.refreshBlocking();
+
+    Specification<Integer, TestObject> all = new RawLuceneSpecification<>(new MatchAllDocsQuery());
+
+    try (Stream<TestObject> results = index.get(all, null, -1)) {
+      assertEquals(ImmutableSet.of(1, 3), results.map(o -> o.id).collect(toSet()));
+    }
+  }
+
+  @Test
+  void shouldAnswerRepeatedCountsFromCacheUntilRefresh() {
+    assertEquals(1, index.count(term("body", "dogs")));
+    assertEquals(1, index.count(term("body", "dogs")));
+    assertEquals(1, index.queryCache().stats().hitCount());
+
+    index.index(4, new TestObject(4, "Fourth", "This is an example body about dogs"));
+    index.refreshBlocking();
+
+    assertEquals(2, index.count(term("body", "dogs")));
+    assertEquals(1, index.queryCache().stats().hitCount());
+  }
+
+  @Test
+  void shouldCacheDocIdsOfSortedSearches() {
+    Specification<Integer, TestObject> all = new RawLuceneSpecification<>(new MatchAllDocsQuery());
+    List<Sort> byRelevance = ImmutableList.of(new SortRelevance());
+
+    try (Stream<TestObject> results = index.get(all, byRelevance, 2)) {
+      assertEquals(2, results.count());
+    }
+    try (Stream<TestObject> results = index.get(all, byRelevance, 2)) {
+      assertEquals(2, results.count());
+    }
+
+    assertEquals(1, index.queryCache().stats().missCount());
+    assertEquals(1, index.queryCache().stats().hitCount());
+  }
+
   private <K extends Serializable, V> Specification<K, V> term(String field, String value) {
     return new RawLuceneSpecification<>(new TermQuery(new Term(field, value)));
   }
@@ -0,0 +1,74 @@
+package fi.thl.termed.util.service;
+
+import static fi.thl.termed.util.query.Queries.matchAll;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class MetricsServiceTest {
+
+  @SuppressWarnings("unchecked")
+  private Service<GraphId, Graph> delegate = mock(Service.class);
+  private MeterRegistry registry = new SimpleMeterRegistry();
+
+  private Service<GraphId, Graph> service =
+      new MetricsService<>(delegate, registry, "graph", "service");
+
+  private User user = User.newAdmin("admin");
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldTimeSavesByModeAndRole() {
+    doAnswer(i -> ((Stream<Graph>) i.getArgument(0)).count())
+        .when(delegate).save(any(Stream.class), any(), any(), any());
+
+    service.save(Graph.builder().id(GraphId.random()).build(), SaveMode.UPSERT, defaultOpts(),
+        user);
+    service.save(Stream.of(
+        Graph.builder().id(GraphId.random()).build(),
+        Graph.builder().id(GraphId.random()).build()), SaveMode.INSERT, defaultOpts(), user);
+
+    assertEquals(1, registry.get("termed.service")
+        .tags("entity", "graph", "layer", "service", "operation", "save")
+        .tags("mode", "upsert", "role", "admin")
+        .timer().count());
+    assertEquals(1, registry.get("termed.service")
+        .tags("operation", "save", "mode", "insert")
+        .timer().count());
+    assertEquals(2.0, registry.get("termed.service.elements")
+        .tags("operation", "save", "role", "admin")
+        .counter().count());
+  }
+
+  @Test
+  void shouldTimeStreamedReadsWhenClosed() {
+    when(delegate.values(any(), any())).thenAnswer(i -> Stream.of(
+        Graph.builder().id(GraphId.random()).build(),
+        Graph.builder().id(GraphId.random()).build(),
+        Graph.builder().id(GraphId.random()).build()));
+
+    try (Stream<Graph> values = service.values(matchAll(), user)) {
+      assertEquals(0, registry.find("termed.service").tags("operation", "values").meters().size());
+      assertEquals(3, values.count());
+    }
+
+    assertEquals(1, registry.get("termed.service")
+        .tags("operation", "values", "mode", "none")
+        .timer().count());
+    assertEquals(3.0, registry.get("termed.service.elements")
+        .tags("operation", "values")
+        .counter().count());
+  }
+
+}
@@ -0,0 +1,90 @@
+package fi.thl.termed.util.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fi.thl.termed.domain.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class StripedNamedSequenceServiceTest {
+
+  private User user = User.newUser("example");
+
+  @Test
+  void shouldAllocateFromReservedBlocks() {
+    NamedSequenceService<String> actualSeq = new MemoryBasedNamedSequence<>();
+    StripedNamedSequenceService<String> seq = new StripedNamedSequenceService<>(actualSeq, 3, 4);
+
+    assertEquals((Long) 0L, seq.getAndAdvance("A", user));
+    assertEquals((Long) 3L, actualSeq.get("A", user));
+    assertEquals((Long) 1L, seq.get("A", user));
+
+    assertEquals((Long) 1L, seq.getAndAdvance("A", 2L, user));
+    assertEquals((Long) 3L, actualSeq.get("A", user));
+
+    // block is extended if requested range doesn't fit in the current block
+    assertEquals((Long) 3L, seq.getAndAdvance("A", 5L, user));
+    assertEquals((Long) 8L, actualSeq.get("A", user));
+
+    assertEquals((Long) 0L, seq.getAndAdvance("B", user));
+    assertEquals((Long) 3L, actualSeq.get("B", user));
+  }
+
+  @Test
+  void shouldBacktrackOnClose() {
+    NamedSequenceService<String> actualSeq = new MemoryBasedNamedSequence<>();
+    StripedNamedSequenceService<String> seq = new StripedNamedSequenceService<>(actualSeq, 10, 4);
+
+    seq.getAndAdvance("A", user);
+    seq.getAndAdvance("A", user);
+    assertEquals((Long) 10L, actualSeq.get("A", user));
+
+    seq.close();
+    assertEquals((Long) 2L, actualSeq.get("A", user));
+
+    // after close, values are allocated directly from the delegate
+    assertEquals((Long) 2L, seq.getAndAdvance("A", user));
+    assertEquals((Long) 3L, actualSeq.get("A", user));
+  }
+
+  @Test
+  void shouldAllocateUniqueValuesConcurrently() throws Exception {
+    NamedSequenceService<String> actualSeq =
+        new MemoryBasedNamedSequence<>(new ConcurrentHashMap<>());
+    StripedNamedSequenceService<String> seq = new StripedNamedSequenceService<>(actualSeq, 7, 4);
+
+    Set<String> allocated = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int t = 0; t < 8; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1000; i++) {
+          String key = "seq-" + (i % 4);
+          long value = seq.getAndAdvance(key, 2L, user);
+          assertTrue(allocated.add(key + ":" + value));
+          assertTrue(allocated.add(key + ":" + (value + 1)));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    seq.close();
+
+    for (int k = 0; k < 4; k++) {
+      assertEquals((Long) 4000L, actualSeq.get("seq-" + k, user));
+    }
+    assertEquals(16000, allocated.size());
+  }
+
+}
@@ -4,11 +4,20 @@ import static fi.thl.termed.util.json.JsonElementFactory.array;
 import static fi.thl.termed.util.json.JsonElementFactory.object;
 import static fi.thl.termed.util.json.JsonElementFactory.primitive;
 import static io.restassured.RestAssured.given;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
+import com.google.common.io.ByteStreams;
 import com.google.gson.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 
@@ -69,4 +78,101 @@ class DumpApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldRestoreDumpInCheckpointsAndResume() {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Concept";
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive(typeId), "graph", graphIdObject);
+    JsonObject node1IdObject = object(
+        "id", primitive(UUID.randomUUID().toString()), "type", typeIdObject);
+    JsonObject node2IdObject = object(
+        "id", primitive(UUID.randomUUID().toString()), "type", typeIdObject);
+
+    JsonObject dump = object(
+        "graphs", array(graphIdObject),
+        "types", array(typeIdObject),
+        "nodes", array(node1IdObject, node2IdObject));
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(dump.toString())
+        .post("/api/dump?mode=insert&checkpointSize=1")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/dump?graphId=" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(dump.toString())
+            .allowingExtraUnexpectedFields()
+            .allowingAnyArrayOrdering());
+
+    // resuming after all checkpoints inserts nothing, so inserting again does not fail
+    given(adminAuthorizedJsonSaveRequest)
+        .body(dump.toString())
+        .post("/api/dump?mode=insert&checkpointSize=1&resumeFrom=2")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldPostAndGetGzippedNdjsonDump() throws IOException {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Concept";
+    String nodeId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive(typeId), "graph", graphIdObject);
+    JsonObject nodeIdObject = object("id", primitive(nodeId), "type", typeIdObject);
+
+    String ndjson = graphIdObject + "\n" + typeIdObject + "\n" + nodeIdObject + "\n";
+
+    given(adminAuthorizedRequest)
+        .contentType("application/x-ndjson")
+        .header("Content-Encoding", "gzip")
+        .body(gzip(ndjson))
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    byte[] gzippedDump = given(adminAuthorizedRequest)
+        .accept("application/x-ndjson")
+        .get("/api/dump?graphId=" + graphId + "&gzip=true")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType("application/gzip")
+        .extract().asByteArray();
+
+    String[] lines = gunzip(gzippedDump).trim().split("\n");
+
+    assertEquals(3, lines.length);
+    assertThat(lines[0], sameJSONAs(graphIdObject.toString()).allowingExtraUnexpectedFields());
+    assertThat(lines[1], sameJSONAs(typeIdObject.toString()).allowingExtraUnexpectedFields());
+    assertThat(lines[2], sameJSONAs(nodeIdObject.toString()).allowingExtraUnexpectedFields());
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  private byte[] gzip(String value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(value.getBytes(UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  private String gunzip(byte[] bytes) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+
 }
@@ -0,0 +1,80 @@
+package fi.thl.termed.web;
+
+import static fi.thl.termed.web.ApiExampleData.exampleGraph;
+import static fi.thl.termed.web.ApiExampleData.exampleGraphId;
+import static fi.thl.termed.web.ApiExampleData.exampleNode0;
+import static fi.thl.termed.web.ApiExampleData.exampleNode1;
+import static fi.thl.termed.web.ApiExampleData.personType;
+import static io.restassured.RestAssured.given;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IndexApiIntegrationTest extends BaseApiIntegrationTest {
+
+  @BeforeEach
+  void insertExampleData() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(exampleGraph)
+        .post("/api/graphs?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(personType)
+        .post("/api/graphs/{graphId}/types?mode=insert", exampleGraphId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(asList(exampleNode0, exampleNode1))
+        .post("/api/graphs/{graphId}/nodes?batch=true&mode=insert", exampleGraphId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+  }
+
+  @AfterEach
+  void deleteExampleData() {
+    given(adminAuthorizedRequest).delete("/api/graphs/" + exampleGraphId.getId() + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + exampleGraphId.getId() + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + exampleGraphId.getId());
+  }
+
+  @Test
+  void shouldReindexGraphAndReportProgress() {
+    // reindexing processes node ids from both database and index
+    given(superuserAuthorizedRequest)
+        .delete("/api/graphs/{graphId}/index", exampleGraphId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(superuserAuthorizedRequest)
+        .get("/api/index")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("done", equalTo(true))
+        .body("processed", equalTo(4))
+        .body("total", equalTo(4))
+        .body("percentage", equalTo(100));
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/nodes?where=properties.name:*", exampleGraphId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("id", hasItems(
+            exampleNode0.getId().toString(),
+            exampleNode1.getId().toString()));
+  }
+
+  @Test
+  void shouldNotShowIndexingProgressToAdmin() {
+    given(adminAuthorizedRequest)
+        .get("/api/index")
+        .then()
+        .statusCode(HttpStatus.SC_FORBIDDEN);
+  }
+
+}
@@ -7,6 +7,7 @@ import static fi.thl.termed.web.ApiExampleData.exampleNode1;
 import static fi.thl.termed.web.ApiExampleData.personType;
 import static fi.thl.termed.web.ApiExampleData.personTypeId;
 import static io.restassured.RestAssured.given;
+import static java.util.Arrays.asList;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -55,6 +56,39 @@ class NodeCsvApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldStreamNodesInCsvWithLanguagesOfSelectedProperties() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(exampleGraph)
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(personType)
+        .post("/api/graphs/{graphId}/types?mode=insert", exampleGraphId.getId());
+    given(adminAuthorizedJsonSaveRequest)
+        .body(asList(exampleNode0, exampleNode1))
+        .post("/api/graphs/{graphId}/nodes?batch=true&mode=insert", exampleGraphId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // columns of selected properties are derived from languages found in the first pass
+    given(adminAuthorizedRequest)
+        .queryParam("streaming", true)
+        .queryParam("select", "code,properties.name")
+        .queryParam("sort", "properties.name")
+        .get("/api/graphs/{graphId}/types/{typeId}/nodes.csv",
+            exampleGraphId.getId(), personTypeId.getId())
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(equalTo("code,properties.name\n"
+            + "example-node-1,Jane\n"
+            + "example-node-0,John\n"));
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/nodes", exampleGraph.getId());
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/types", exampleGraph.getId());
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}", exampleGraph.getId());
+  }
+
   @Test
   void shouldSaveNodesFromCsv() {
     given(adminAuthorizedJsonSaveRequest)
@@ -16,7 +16,10 @@ import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
+import com.google.common.collect.ImmutableList;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -174,4 +177,45 @@ class NodeGraphQLIntegrationTest extends BaseApiIntegrationTest {
         .statusCode(HttpStatus.SC_BAD_REQUEST);
   }
 
+  @Test
+  void shouldUseUpdatedSchemaAfterTypeChange() {
+    String exampleGraphQLQuery = "{"
+        + " nodes { id, properties { nickname { value } } }"
+        + "}";
+
+    given(adminAuthorizedRequest)
+        .body(exampleGraphQLQuery)
+        .post("/api/graphs/{graphId}/types/{typeId}/nodes/graphql",
+            exampleGraphId.getId(), personType.getId())
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST);
+
+    Type updatedPersonType = Type.builderFromCopyOf(personType)
+        .textAttributes(ImmutableList.<TextAttribute>builder()
+            .addAll(personType.getTextAttributes())
+            .add(TextAttribute.builder()
+                .id("nickname", personType.identifier())
+                .regex("^.*$")
+                .permissions(personType.getPermissions())
+                .build())
+            .build())
+        .build();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(updatedPersonType)
+        .post("/api/graphs/" + exampleGraphId.getId() + "/types?mode=update")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedRequest)
+        .body(exampleGraphQLQuery)
+        .post("/api/graphs/{graphId}/types/{typeId}/nodes/graphql",
+            exampleGraphId.getId(), personType.getId())
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("id", hasItems(
+            exampleNode0.getId().toString(),
+            exampleNode1.getId().toString()));
+  }
+
 }
@@ -2,8 +2,10 @@ package fi.thl.termed.web;
 
 import static fi.thl.termed.util.io.ResourceUtils.resourceToString;
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.startsWith;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
 import java.util.Map;
@@ -127,4 +129,24 @@ class NodeTreeApiIntegrationTest extends BaseApiIntegrationTest {
             .allowingAnyArrayOrdering());
   }
 
+  @Test
+  void shouldReturnTreesAsNdjson() {
+    String ndjson = given(adminAuthorizedRequest)
+        .accept("application/x-ndjson")
+        .get("/api/graphs/{graphId}/types/Concept/node-trees?select=code&max=-1", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(startsWith("application/x-ndjson"))
+        .extract().asString();
+
+    String json = given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types/Concept/node-trees?select=code&max=-1", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString();
+
+    assertThat("[" + String.join(",", ndjson.trim().split("\n")) + "]",
+        sameJSONAs(json).allowingAnyArrayOrdering());
+  }
+
 }
@@ -64,6 +64,21 @@ class AdminApiDocumentingIntegrationTest extends BaseApiDocumentingIntegrationTe
         .statusCode(HttpStatus.SC_FORBIDDEN);
   }
 
+  @Test
+  void documentGetIndexingProgress() {
+    given(adminAuthorizedRequest).filter(
+        document("get-index",
+            operationIntro("Get request to index returns progress of the latest re-indexing "
+                + "including rate (nodes per second) and estimated time remaining."),
+            requestHeaders(
+                headerWithName("Authorization")
+                    .description("Basic authentication credentials"))))
+        .when()
+        .get("/api/index")
+        .then()
+        .statusCode(HttpStatus.SC_FORBIDDEN);
+  }
+
   @Test
   void documentDeleteCaches() {
     given(adminAuthorizedRequest).filter(
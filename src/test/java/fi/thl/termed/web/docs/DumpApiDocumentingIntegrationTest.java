@@ -145,7 +145,15 @@ class DumpApiDocumentingIntegrationTest extends BaseApiDocumentingIntegrationTes
                         + "automatically generated. Default value is `false`."),
                 parameterWithName("generateCodes").optional()
                     .description("Optional parameter to define whether missing codes are "
-                        + "automatically generated. Default value is `false`."))))
+                        + "automatically generated. Default value is `false`."),
+                parameterWithName("checkpointSize").optional()
+                    .description("Optional parameter to save nodes in separate saves of given "
+                        + "size. Each completed save is logged as a checkpoint. Default value is "
+                        + "`0`, i.e. all nodes are saved at once."),
+                parameterWithName("resumeFrom").optional()
+                    .description("Optional parameter to resume a failed restore by skipping given "
+                        + "number of nodes. Graphs and types are not saved when resuming. "
+                        + "Default value is `0`."))))
         .when()
         .body(dump)
         .post("/api/dump")
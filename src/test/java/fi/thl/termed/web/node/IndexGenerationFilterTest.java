@@ -0,0 +1,117 @@
+package fi.thl.termed.web.node;
+
+import static fi.thl.termed.web.node.IndexGenerationFilter.INDEX_GENERATION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fi.thl.termed.util.index.IndexGenerations;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class IndexGenerationFilterTest {
+
+  private StubIndexGenerations generations = new StubIndexGenerations(10);
+
+  @Test
+  void shouldAwaitGenerationSentByClient() throws ServletException, IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/nodes");
+    request.addHeader(INDEX_GENERATION, "7");
+    MockFilterChain chain = new MockFilterChain();
+
+    new IndexGenerationFilter(generations, 1000, false)
+        .doFilter(request, new MockHttpServletResponse(), chain);
+
+    assertEquals(1, generations.awaited.size());
+    assertEquals(7L, (long) generations.awaited.get(0));
+    assertNotNull(chain.getRequest());
+  }
+
+  @Test
+  void shouldClampGenerationAboveCurrentGeneration() throws ServletException, IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/nodes");
+    request.addHeader(INDEX_GENERATION, String.valueOf(Long.MAX_VALUE));
+
+    new IndexGenerationFilter(generations, 1000, false)
+        .doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+    assertEquals(1, generations.awaited.size());
+    assertEquals(10L, (long) generations.awaited.get(0));
+  }
+
+  @Test
+  void shouldRejectIllegalGeneration() throws ServletException, IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/nodes");
+    request.addHeader(INDEX_GENERATION, "latest");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    new IndexGenerationFilter(generations, 1000, false).doFilter(request, response, chain);
+
+    assertEquals(400, response.getStatus());
+    assertNull(chain.getRequest());
+    assertTrue(generations.awaited.isEmpty());
+  }
+
+  @Test
+  void shouldReturnGenerationOfWrite() throws ServletException, IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/nodes");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    new IndexGenerationFilter(generations, 1000, false)
+        .doFilter(request, response, new MockFilterChain());
+
+    assertEquals("10", response.getHeader(INDEX_GENERATION));
+  }
+
+  @Test
+  void shouldReturnGenerationOfAsyncIndexedWriteOnlyIfSync()
+      throws ServletException, IOException {
+    IndexGenerationFilter filter = new IndexGenerationFilter(generations, 1000, true);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/nodes");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertFalse(response.containsHeader(INDEX_GENERATION));
+
+    MockHttpServletRequest syncRequest = new MockHttpServletRequest("POST", "/api/nodes");
+    syncRequest.setParameter("sync", "true");
+    MockHttpServletResponse syncResponse = new MockHttpServletResponse();
+    filter.doFilter(syncRequest, syncResponse, new MockFilterChain());
+
+    assertEquals("10", syncResponse.getHeader(INDEX_GENERATION));
+  }
+
+  private static class StubIndexGenerations implements IndexGenerations {
+
+    private final long writeGeneration;
+    private final List<Long> awaited = new ArrayList<>();
+
+    StubIndexGenerations(long writeGeneration) {
+      this.writeGeneration = writeGeneration;
+    }
+
+    @Override
+    public long writeGeneration() {
+      return writeGeneration;
+    }
+
+    @Override
+    public boolean awaitWriteGeneration(long generation, long timeout, TimeUnit unit) {
+      awaited.add(generation);
+      return true;
+    }
+
+  }
+
+}